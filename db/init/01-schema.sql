@@ -0,0 +1,22 @@
+-- Executed by the MariaDB container the first time its volume is initialized,
+-- inside the database named by MYSQL_DATABASE. The jOOQ classes under org.acm.auth.db
+-- are generated from this schema (gradle generateJooq).
+--
+-- An existing volume never runs it again. The bot creates the missing tables when it starts,
+-- but to add them before that (e.g. to run generateJooq after pulling a new table), apply it by hand,
+-- which leaves the existing tables alone:
+--   docker-compose exec -T mariadb sh -c 'mariadb -u"$MYSQL_USER" -p"$MYSQL_PASSWORD" "$MYSQL_DATABASE"' < db/init/01-schema.sql
+
+-- the Google calendar of each guild, set with the calset command
+CREATE TABLE IF NOT EXISTS calendars (
+    guild_id    VARCHAR(20)  NOT NULL,
+    calendar_id VARCHAR(255) NOT NULL,
+    PRIMARY KEY (guild_id)
+);
+
+-- the command prefix of each guild that doesn't use the default one, set with the prefix command
+CREATE TABLE IF NOT EXISTS prefixes (
+    guild_id VARCHAR(20) NOT NULL,
+    prefix   VARCHAR(5)  NOT NULL,
+    PRIMARY KEY (guild_id)
+);
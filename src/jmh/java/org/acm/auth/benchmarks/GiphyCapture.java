@@ -0,0 +1,58 @@
+package org.acm.auth.benchmarks;
+
+import okhttp3.HttpUrl;
+import org.acm.auth.utils.HttpUtil;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Records the GIPHY responses the benchmarks and the load harness parse, by making the same search and random
+ * requests the gif command makes and saving their bodies byte for byte.
+ * <p>
+ * Runs with {@code ./gradlew captureGiphy -PgiphyKey=<key>}, which overwrites {@code src/jmh/resources/giphy}.
+ * Re-record them whenever GIPHY changes its response format, so that the parsing benchmarks stay representative.
+ */
+public final class GiphyCapture {
+    private static final long TIMEOUT = 10_000; // milliseconds
+
+    private GiphyCapture() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args[0].isEmpty()) {
+            System.err.println("Usage: GiphyCapture <giphy key> [directory] [search terms]");
+            System.exit(1);
+        }
+        String key = args[0];
+        Path directory = Paths.get(args.length > 1 ? args[1] : "src/jmh/resources/giphy");
+        String query = args.length > 2 ? args[2] : "cat";
+
+        // the same parameters as Giphy's requests, so the captures are shaped like what the bot parses
+        capture(directory.resolve("search.json"), giphy("search", key)
+                .addQueryParameter("q", query)
+                .addQueryParameter("limit", "1")
+                .build());
+        capture(directory.resolve("random.json"), giphy("random", key).build());
+    }
+
+    private static HttpUrl.Builder giphy(String endpoint, String key) {
+        return new HttpUrl.Builder()
+                .scheme("https")
+                .host("api.giphy.com")
+                .addPathSegment("v1")
+                .addPathSegment("gifs")
+                .addPathSegment(endpoint)
+                .addQueryParameter("api_key", key);
+    }
+
+    private static void capture(Path file, HttpUrl url) throws IOException {
+        String body = HttpUtil.getAsync(url, TIMEOUT).join();
+        Files.createDirectories(file.getParent());
+        Files.write(file, body.getBytes(StandardCharsets.UTF_8));
+        System.out.printf("Recorded %s (%d bytes)%n", file, body.length());
+    }
+}
@@ -0,0 +1,142 @@
+package org.acm.auth.benchmarks;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.entities.*;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Builds stand-ins for JDA's entities, so that the bot's code can be exercised without a gateway connection.
+ * <p>
+ * Every stub is a dynamic proxy: methods listed in its answers return the given value, and every other method
+ * returns a neutral value (0, false, null) or, for JDA interfaces such as {@code RestAction}, another stub whose
+ * methods do nothing. The stubs themselves allocate an argument array per call, which adds a small constant
+ * to the allocation rate reported by the benchmarks.
+ */
+public final class Stubs {
+    public static final long GUILD_ID = 81384788765712384L;
+    public static final long CHANNEL_ID = 381889648827301889L;
+    public static final long USER_ID = 98457401363025920L;
+
+    private static final Map<Class<?>, Object> DEFAULTS = new ConcurrentHashMap<>();
+
+    private Stubs() {
+    }
+
+    /**
+     * Creates a stub with no answers.
+     * @param type the interface to stub as {@code Class<T>}
+     * @param <T> the stubbed type
+     * @return the stub as {@code T}
+     */
+    public static <T> T stub(Class<T> type) {
+        return stub(type, Collections.emptyMap());
+    }
+
+    /**
+     * Creates a stub.
+     * @param type the interface to stub as {@code Class<T>}
+     * @param answers the return value of each method, by method name, as {@code Map<String, ?>}
+     * @param <T> the stubbed type
+     * @return the stub as {@code T}
+     */
+    public static <T> T stub(Class<T> type, Map<String, ?> answers) {
+        return type.cast(Proxy.newProxyInstance(Stubs.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    String name = method.getName();
+                    if (answers.containsKey(name)) {
+                        return answers.get(name);
+                    }
+                    switch (name) {
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "toString":
+                            return type.getSimpleName() + "Stub";
+                        default:
+                            return defaultValue(method.getReturnType());
+                    }
+                }));
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == double.class) {
+            return 0.0;
+        } else if (type == CompletableFuture.class) {
+            return CompletableFuture.completedFuture(null);
+        } else if (type.isInterface() && type.getName().startsWith("net.dv8tion.")) {
+            // e.g. a RestAction, reused so that calling it doesn't allocate a new proxy every time
+            return DEFAULTS.computeIfAbsent(type, Stubs::stub);
+        }
+        return null;
+    }
+
+    /**
+     * Creates the event of a message sent by a regular user in a guild text channel,
+     * where both the user and the bot have every permission.
+     * @param content the raw content of the message as {@code String}
+     * @return the event as {@link MessageReceivedEvent}
+     */
+    public static MessageReceivedEvent guildMessage(String content) {
+        Map<String, Object> memberAnswers = new HashMap<>();
+        memberAnswers.put("getPermissions", EnumSet.allOf(Permission.class));
+        memberAnswers.put("hasPermission", true);
+        Member member = stub(Member.class, memberAnswers);
+
+        Map<String, Object> guildAnswers = new HashMap<>();
+        guildAnswers.put("getIdLong", GUILD_ID);
+        guildAnswers.put("getSelfMember", member);
+        guildAnswers.put("getTextChannels", Collections.emptyList());
+        Guild guild = stub(Guild.class, guildAnswers);
+
+        Map<String, Object> channelAnswers = new HashMap<>();
+        channelAnswers.put("getIdLong", CHANNEL_ID);
+        channelAnswers.put("getType", ChannelType.TEXT);
+        channelAnswers.put("getGuild", guild);
+        TextChannel channel = stub(TextChannel.class, channelAnswers);
+
+        Map<String, Object> authorAnswers = new HashMap<>();
+        authorAnswers.put("getIdLong", USER_ID);
+        authorAnswers.put("getId", Long.toUnsignedString(USER_ID));
+        authorAnswers.put("getAsMention", "<@" + USER_ID + ">");
+        authorAnswers.put("isBot", false);
+        User author = stub(User.class, authorAnswers);
+
+        Map<String, Object> messageAnswers = new HashMap<>();
+        messageAnswers.put("getContentRaw", content);
+        messageAnswers.put("getAuthor", author);
+        messageAnswers.put("getMember", member);
+        messageAnswers.put("getChannel", channel);
+        messageAnswers.put("getTextChannel", channel);
+        messageAnswers.put("getGuild", guild);
+        messageAnswers.put("getChannelType", ChannelType.TEXT);
+        messageAnswers.put("isFromGuild", true);
+        messageAnswers.put("getIdLong", 1L);
+        Message message = stub(Message.class, messageAnswers);
+
+        return new MessageReceivedEvent(stub(JDA.class), 0, message);
+    }
+
+    /**
+     * Reads a recorded payload from the benchmark resources.
+     * @param path the path of the resource as {@code String}
+     * @return the payload as {@code String}
+     */
+    public static String resource(String path) {
+        try (Scanner scanner = new Scanner(Objects.requireNonNull(Stubs.class.getResourceAsStream(path)), "UTF-8")) {
+            return scanner.useDelimiter("\\A").next();
+        }
+    }
+}
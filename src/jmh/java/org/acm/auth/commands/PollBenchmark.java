@@ -0,0 +1,38 @@
+package org.acm.auth.commands;
+
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import org.acm.auth.benchmarks.Stubs;
+import org.acm.auth.managers.PollManager;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures {@link PollCommand}'s argument extraction and embed building.
+ * Sending the poll and its reactions goes to stubs that do nothing.
+ */
+@State(Scope.Benchmark)
+public class PollBenchmark {
+    private PollCommand poll;
+    private MessageReceivedEvent event;
+    private String[] args;
+
+    @Param({"2", "10", "19"})
+    public int options;
+
+    @Setup
+    public void setup() {
+        poll = new PollCommand(new PollManager(false));
+        event = Stubs.guildMessage("-poll");
+
+        StringBuilder sb = new StringBuilder("\"What should we order for the hackathon?\"");
+        for (int i = 1; i <= options; i++) {
+            sb.append(" \"Option number ").append(i).append('"');
+        }
+        // split the same way the command manager does
+        args = sb.toString().split("\\s+");
+    }
+
+    @Benchmark
+    public void invoke() {
+        poll.invoke(event, args);
+    }
+}
@@ -0,0 +1,33 @@
+package org.acm.auth.config;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Measures {@link ConfigFile#getValue} for a key that is set and for a key that falls back to its default.
+ */
+@State(Scope.Benchmark)
+public class ConfigFileBenchmark {
+    private ConfigFile config;
+
+    @Setup
+    public void setup() throws IOException {
+        Path file = Files.createTempFile("config", ".json");
+        Files.write(file, "{\"token\": \"benchmark\", \"prefix\": \"!\", \"giphy_key\": \"\"}".getBytes());
+        file.toFile().deleteOnExit();
+        config = new ConfigFile(file.toString());
+    }
+
+    @Benchmark
+    public String presentKey() {
+        return config.getValue(ConfigKey.PREFIX);
+    }
+
+    @Benchmark
+    public String defaultedKey() {
+        return config.getValue(ConfigKey.GIPHY_KEY);
+    }
+}
@@ -0,0 +1,68 @@
+package org.acm.auth.managers;
+
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import org.acm.auth.benchmarks.Stubs;
+import org.acm.auth.calendar.EventIndexStore;
+import org.acm.auth.config.ConfigFile;
+import org.acm.auth.config.ConfigKey;
+import org.acm.auth.execution.InlineCommandExecutor;
+import org.acm.auth.repositories.MariaDbGuildRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Measures {@link CommandManager#onMessageReceived} for the kinds of messages a busy guild sees:
+ * mostly chatter, some messages that only look like commands, and a few real commands.
+ */
+@State(Scope.Benchmark)
+public class DispatchBenchmark {
+    private CommandManager manager;
+    private MessageReceivedEvent chatter;
+    private MessageReceivedEvent unknownCommand;
+    private MessageReceivedEvent command;
+    private MessageReceivedEvent commandWithArgs;
+
+    @Setup
+    public void setup() throws IOException {
+        Path config = Files.createTempFile("config", ".json");
+        Files.write(config, "{\"token\": \"benchmark\"}".getBytes());
+        config.toFile().deleteOnExit();
+
+        // run the commands inline, so that the benchmark measures the dispatch and not a thread hand-off
+        // the event sync is never started, so no calendar is ever read
+        MariaDbGuildRepository guilds = new MariaDbGuildRepository();
+        manager = new CommandManager(new ConfigFile(config.toString()), new PrefixManager(guilds, "-"),
+                new CalendarManager(guilds, 16),
+                new EventSyncManager(guilds, new EventIndexStore(Paths.get(ConfigKey.EVENT_INDEX_PATH.getDefaultValue())), 5, 1),
+                new PollManager(false), new PermissionCache(), new ShardMonitor(), new InlineCommandExecutor());
+
+        chatter = Stubs.guildMessage("did anyone else think that the second half of the lecture was way too fast?");
+        unknownCommand = Stubs.guildMessage("-- that's what she said");
+        command = Stubs.guildMessage("-hi");
+        commandWithArgs = Stubs.guildMessage("-BYE  everyone\tsee you\ntomorrow");
+    }
+
+    @Benchmark
+    public void chatter() {
+        manager.onMessageReceived(chatter);
+    }
+
+    @Benchmark
+    public void unknownCommand() {
+        manager.onMessageReceived(unknownCommand);
+    }
+
+    @Benchmark
+    public void command() {
+        manager.onMessageReceived(command);
+    }
+
+    @Benchmark
+    public void commandWithArgs() {
+        manager.onMessageReceived(commandWithArgs);
+    }
+}
@@ -0,0 +1,158 @@
+package org.acm.auth.managers;
+
+import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.GuildChannel;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.TextChannel;
+import org.acm.auth.benchmarks.Stubs;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compares the ways of checking a command's required bot permissions: asking JDA for each permission through a
+ * stream (what {@code CommandManager} used to do), a single raw bitmask computed on every check
+ * ({@link PermissionCache#has}), and the bitmask cached per channel ({@link PermissionCache#selfHas}).
+ * <p>
+ * The bot's member is a stub that works its permissions out the way JDA does: the union of its roles' permissions,
+ * then the channel's overrides for {@code @everyone}, for each of its roles and for the member itself. So the cost
+ * of an uncached check grows with the roles and overrides as it does in a real guild.
+ */
+@State(Scope.Benchmark)
+public class PermissionBenchmark {
+    // the poll command's bot permissions, both channel-level ones
+    private static final Permission[] REQUIRED = {Permission.MESSAGE_EMBED_LINKS, Permission.MESSAGE_MANAGE};
+    private static final long ADMINISTRATOR = Permission.ADMINISTRATOR.getRawValue();
+
+    @Param({"1", "20", "200"})
+    public int roles;       // the roles of the bot's member, the first one being @everyone
+
+    @Param({"0", "10", "50"})
+    public int overrides;   // the overrides of the channel, for the bot's roles first and then for other roles
+
+    private long[] rolePerms;
+    private long[] roleIds;
+    // role or member id -> {allowed, denied}
+    private final Map<Long, long[]> channelOverrides = new HashMap<>();
+
+    private Member self;
+    private TextChannel channel;
+    private long requiredRaw;
+    private PermissionCache cache;
+
+    @Setup
+    public void setup() {
+        Permission[] grantable = Arrays.stream(Permission.values())
+                .filter(permission -> permission != Permission.ADMINISTRATOR)
+                .toArray(Permission[]::new);
+        rolePerms = new long[roles];
+        roleIds = new long[roles];
+        for (int i = 0; i < roles; i++) {
+            roleIds[i] = Stubs.GUILD_ID + i; // @everyone's id is the guild's
+            rolePerms[i] = grantable[i % grantable.length].getRawValue();
+        }
+        // the bot's own role, so that every check passes and a stream has to look at every permission
+        rolePerms[roles - 1] |= Permission.getRaw(REQUIRED);
+
+        for (int i = 0; i < overrides; i++) {
+            long target = i < roles ? roleIds[i] : Stubs.GUILD_ID + roles + i;
+            // allow something and deny something else, never the required permissions
+            channelOverrides.put(target, new long[] {
+                    grantable[i % grantable.length].getRawValue() & ~Permission.getRaw(REQUIRED),
+                    grantable[(i + 1) % grantable.length].getRawValue() & ~Permission.getRaw(REQUIRED)});
+        }
+
+        Map<String, Object> guildAnswers = new HashMap<>();
+        guildAnswers.put("getIdLong", Stubs.GUILD_ID);
+        guildAnswers.put("getTextChannels", Collections.emptyList());
+        Guild guild = Stubs.stub(Guild.class, guildAnswers);
+        self = member();
+        guildAnswers.put("getSelfMember", self);
+        Map<String, Object> channelAnswers = new HashMap<>();
+        channelAnswers.put("getIdLong", Stubs.CHANNEL_ID);
+        channelAnswers.put("getGuild", guild);
+        channel = Stubs.stub(TextChannel.class, channelAnswers);
+
+        requiredRaw = Permission.getRaw(REQUIRED);
+        cache = new PermissionCache();
+    }
+
+    @Benchmark
+    public boolean streamPerPermission() {
+        return Arrays.stream(REQUIRED)
+                .allMatch(p -> p.isChannel() ? self.hasPermission(channel, p) : self.hasPermission(p));
+    }
+
+    @Benchmark
+    public boolean bitmask() {
+        return PermissionCache.has(self, channel, requiredRaw);
+    }
+
+    @Benchmark
+    public boolean cachedBitmask() {
+        return cache.selfHas(channel, requiredRaw);
+    }
+
+    /**
+     * Creates the bot's member, whose permissions are computed from {@link #rolePerms} and {@link #channelOverrides}.
+     */
+    private Member member() {
+        return (Member) Proxy.newProxyInstance(PermissionBenchmark.class.getClassLoader(), new Class<?>[] {Member.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getPermissions":
+                            return Permission.getPermissions(args == null ? guildPerms() : channelPerms());
+                        case "hasPermission":
+                            boolean inChannel = args[0] instanceof GuildChannel;
+                            long perms = inChannel ? channelPerms() : guildPerms();
+                            long required = Permission.getRaw((Permission[]) args[inChannel ? 1 : 0]);
+                            return (perms & required) == required;
+                        case "getIdLong":
+                            return Stubs.USER_ID;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    private long guildPerms() {
+        long perms = 0;
+        for (long role : rolePerms) {
+            perms |= role;
+        }
+        return (perms & ADMINISTRATOR) != 0 ? -1L : perms;
+    }
+
+    private long channelPerms() {
+        long perms = guildPerms();
+        if (perms == -1L) {
+            return perms;
+        }
+        // @everyone's override first, then the union of the roles' overrides, then the member's own
+        long[] everyone = channelOverrides.get(Stubs.GUILD_ID);
+        if (everyone != null) {
+            perms = (perms & ~everyone[1]) | everyone[0];
+        }
+        long allowed = 0;
+        long denied = 0;
+        for (int i = 1; i < roleIds.length; i++) {
+            long[] override = channelOverrides.get(roleIds[i]);
+            if (override != null) {
+                allowed |= override[0];
+                denied |= override[1];
+            }
+        }
+        perms = (perms & ~denied) | allowed;
+        long[] own = channelOverrides.get(Stubs.USER_ID);
+        return own == null ? perms : (perms & ~own[1]) | own[0];
+    }
+}
@@ -0,0 +1,77 @@
+package org.acm.auth.repositories;
+
+import org.acm.auth.config.ConfigFile;
+import org.acm.auth.services.Database;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the latency of the calendar queries on the two storage backends, bypassing the calendar cache.
+ * <p>
+ * The embedded backend needs nothing to run. The MariaDB backend needs the server of {@code docker-compose.yml}
+ * (started with {@code docker-compose up -d}) and the credentials of the {@code .env} file;
+ * point it elsewhere with {@code -Pjmh.params} / {@code -p dbUrl=...}. If the server can't be reached,
+ * only its half of the benchmark fails.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GuildRepositoryBenchmark {
+    private static final int GUILDS = 1_000;
+
+    @Param({"embedded", "mariadb"})
+    public String storage;
+
+    @Param({"jdbc:mariadb://localhost:3306"})
+    public String dbUrl;
+
+    private GuildRepository repository;
+
+    @Setup
+    public void setup() throws IOException {
+        if (storage.equals("embedded")) {
+            Path directory = Files.createTempDirectory("embedded-storage");
+            directory.toFile().deleteOnExit();
+            repository = new EmbeddedGuildRepository(directory.resolve("bot").toString());
+        } else {
+            Path config = Files.createTempFile("config", ".json");
+            Files.write(config, ("{\"token\": \"benchmark\", \"db_url\": \"" + dbUrl + "\"}").getBytes());
+            config.toFile().deleteOnExit();
+            Database.configure(new ConfigFile(config.toString()));
+            repository = new MariaDbGuildRepository();
+        }
+
+        // the ids are far above any real guild's, so that they never clash with real rows
+        for (int i = 0; i < GUILDS; i++) {
+            repository.saveCalendarId(guildId(i), "benchmark" + i + "@group.calendar.google.com")
+                    .toCompletableFuture().join();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        Database.close();
+    }
+
+    @Benchmark
+    public String findCalendarId() {
+        return repository.findCalendarId(guildId(ThreadLocalRandom.current().nextInt(GUILDS)))
+                .toCompletableFuture().join();
+    }
+
+    @Benchmark
+    public Void saveCalendarId() {
+        int i = ThreadLocalRandom.current().nextInt(GUILDS);
+        return repository.saveCalendarId(guildId(i), "benchmark" + i + "@group.calendar.google.com")
+                .toCompletableFuture().join();
+    }
+
+    private static long guildId(int i) {
+        return Long.MAX_VALUE - i;
+    }
+}
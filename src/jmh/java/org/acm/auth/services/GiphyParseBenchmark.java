@@ -0,0 +1,76 @@
+package org.acm.auth.services;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import org.acm.auth.benchmarks.Stubs;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Measures how {@link Giphy} extracts the embed URL out of recorded GIPHY responses,
+ * streaming from the raw bytes like {@code HttpUtil.getJsonAsync} does, against the previous approach
+ * of decoding the whole body into a {@code String} and building an {@code org.json} tree out of it.
+ * Run with the gc profiler (the default in build.gradle) to compare the allocations per response.
+ * <p>
+ * The responses are read from {@code src/jmh/resources/giphy}; record real ones with
+ * {@link org.acm.auth.benchmarks.GiphyCapture} ({@code ./gradlew captureGiphy -PgiphyKey=...}) before comparing numbers.
+ */
+@State(Scope.Benchmark)
+public class GiphyParseBenchmark {
+    private final JsonFactory json = new JsonFactory();
+    private byte[] search;
+    private byte[] random;
+
+    @Setup
+    public void setup() {
+        search = Stubs.resource("/giphy/search.json").getBytes(StandardCharsets.UTF_8);
+        random = Stubs.resource("/giphy/random.json").getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String searchStreaming() throws IOException {
+        return stream(search);
+    }
+
+    @Benchmark
+    public String randomStreaming() throws IOException {
+        return stream(random);
+    }
+
+    @Benchmark
+    public String searchTree() {
+        return tree(search);
+    }
+
+    @Benchmark
+    public String randomTree() {
+        return tree(random);
+    }
+
+    private String stream(byte[] body) throws IOException {
+        try (JsonParser parser = json.createParser(new ByteArrayInputStream(body))) {
+            return Giphy.readEmbedUrl(parser);
+        }
+    }
+
+    /**
+     * The previous extraction: {@code body.string()} followed by a full {@code JSONObject}.
+     */
+    private static String tree(byte[] body) {
+        JSONObject response = new JSONObject(new String(body, StandardCharsets.UTF_8));
+        if (response.getJSONObject("meta").getInt("status") != 200) {
+            return null;
+        }
+        Object data = response.get("data");
+        if (data instanceof JSONArray) {
+            JSONArray results = (JSONArray) data;
+            return results.length() == 0 ? Giphy.NO_RESULTS : results.getJSONObject(0).getString("embed_url");
+        }
+        return ((JSONObject) data).getString("embed_url");
+    }
+}
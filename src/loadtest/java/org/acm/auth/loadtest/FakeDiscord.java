@@ -0,0 +1,231 @@
+package org.acm.auth.loadtest;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.entities.*;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.api.requests.RestAction;
+import net.dv8tion.jda.api.requests.restaction.AuditableRestAction;
+import net.dv8tion.jda.api.requests.restaction.MessageAction;
+import org.acm.auth.metrics.LatencyHistogram;
+import org.acm.auth.metrics.Metrics;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * A fake JDA layer: builds message events for a trace and records every outbound REST call
+ * (messages, reactions, deletions) instead of sending it to Discord.
+ * <p>
+ * Each event gets its own channel object that remembers when the event was dispatched,
+ * so the first reply sent through it yields an exact dispatch-to-reply latency.
+ */
+final class FakeDiscord {
+    final LongAdder messagesSent = new LongAdder();
+    final LongAdder reactionsAdded = new LongAdder();
+    final LongAdder messagesDeleted = new LongAdder();
+    final LongAdder repliedEvents = new LongAdder();
+    final LatencyHistogram replyLatency = Metrics.histogram("loadtest_reply_latency_seconds");
+
+    private final JDA jda = proxy(JDA.class, (method, args) -> null);
+    private final Map<Long, Guild> guilds = new ConcurrentHashMap<>();
+    private final Map<Long, User> users = new ConcurrentHashMap<>();
+    private final Member everyPermission = proxy(Member.class, (method, args) -> {
+        switch (method.getName()) {
+            case "getPermissions":
+                return EnumSet.allOf(Permission.class);
+            case "hasPermission":
+                return true;
+            default:
+                return null;
+        }
+    });
+
+    /**
+     * Builds the event of a trace message, stamped with the current time as its dispatch time.
+     */
+    MessageReceivedEvent event(TraceMessage msg) {
+        long dispatchedAt = System.nanoTime();
+        Guild guild = guilds.computeIfAbsent(msg.guildId, this::guild);
+        User author = users.computeIfAbsent(msg.userId, this::user);
+        TextChannel channel = channel(msg.channelId, guild, dispatchedAt);
+
+        Message message = proxy(Message.class, (method, args) -> {
+            switch (method.getName()) {
+                case "getContentRaw":
+                    return msg.content;
+                case "getAuthor":
+                    return author;
+                case "getMember":
+                    return everyPermission;
+                case "getChannel":
+                case "getTextChannel":
+                    return channel;
+                case "getGuild":
+                    return guild;
+                case "getChannelType":
+                    return ChannelType.TEXT;
+                case "isFromGuild":
+                    return true;
+                case "getIdLong":
+                    return msg.offset + 1;
+                case "delete":
+                    return action(AuditableRestAction.class, () -> messagesDeleted.increment(), null);
+                case "addReaction":
+                    return action(RestAction.class, () -> reactionsAdded.increment(), null);
+                default:
+                    return null;
+            }
+        });
+        return new MessageReceivedEvent(jda, msg.offset, message);
+    }
+
+    private Guild guild(long id) {
+        return proxy(Guild.class, (method, args) -> {
+            switch (method.getName()) {
+                case "getIdLong":
+                    return id;
+                case "getSelfMember":
+                    return everyPermission;
+                case "getTextChannels":
+                    return Collections.emptyList();
+                default:
+                    return null;
+            }
+        });
+    }
+
+    private User user(long id) {
+        return proxy(User.class, (method, args) -> {
+            switch (method.getName()) {
+                case "getIdLong":
+                    return id;
+                case "getId":
+                    return Long.toUnsignedString(id);
+                case "getAsMention":
+                    return "<@" + id + ">";
+                case "getAsTag":
+                    return "user#" + (id % 10000);
+                case "isBot":
+                    return false;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    private TextChannel channel(long id, Guild guild, long dispatchedAt) {
+        boolean[] replied = {false};
+        Runnable onReply = () -> {
+            messagesSent.increment();
+            synchronized (replied) {
+                if (replied[0]) {
+                    return;
+                }
+                replied[0] = true;
+            }
+            repliedEvents.increment();
+            replyLatency.recordSince(dispatchedAt);
+        };
+        return proxy(TextChannel.class, (method, args) -> {
+            switch (method.getName()) {
+                case "getIdLong":
+                    return id;
+                case "getGuild":
+                    return guild;
+                case "getType":
+                    return ChannelType.TEXT;
+                case "sendMessage":
+                    return action(MessageAction.class, onReply, sentMessage());
+                default:
+                    return null;
+            }
+        });
+    }
+
+    /**
+     * The message the fake Discord hands back once a message was "sent", so that callbacks can react to it.
+     */
+    private Message sentMessage() {
+        return proxy(Message.class, (method, args) -> {
+            if (method.getName().equals("addReaction")) {
+                return action(RestAction.class, () -> reactionsAdded.increment(), null);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * A rest action that records itself when it's queued or submitted, and then succeeds immediately.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T action(Class<T> type, Runnable record, Object result) {
+        return proxy(type, (method, args) -> {
+            switch (method.getName()) {
+                case "queue":
+                    record.run();
+                    if (args != null && args.length > 0 && args[0] != null) {
+                        ((Consumer<Object>) args[0]).accept(result);
+                    }
+                    return null;
+                case "submit":
+                    record.run();
+                    return CompletableFuture.completedFuture(result);
+                case "complete":
+                    record.run();
+                    return result;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    private interface Handler {
+        Object handle(Method method, Object[] args);
+    }
+
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return type.cast(Proxy.newProxyInstance(FakeDiscord.class.getClassLoader(), new Class<?>[]{type},
+                (self, method, args) -> {
+                    switch (method.getName()) {
+                        case "equals":
+                            return self == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(self);
+                        case "toString":
+                            return "Fake" + type.getSimpleName();
+                        default:
+                            Object value = handler.handle(method, args);
+                            if (value != null) {
+                                return value;
+                            }
+                            Class<?> returnType = method.getReturnType();
+                            if (returnType != Object.class && returnType.isInstance(self)) {
+                                // builder-style methods (e.g. MessageAction#append) return the object itself
+                                return self;
+                            }
+                            return neutral(returnType);
+                    }
+                }));
+    }
+
+    private static Object neutral(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == double.class) {
+            return 0.0;
+        }
+        return null;
+    }
+}
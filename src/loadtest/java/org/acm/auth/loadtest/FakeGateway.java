@@ -0,0 +1,407 @@
+package org.acm.auth.loadtest;
+
+import okhttp3.*;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * A local stand-in for the Discord gateway and the few REST routes JDA calls while logging in.
+ * <p>
+ * It speaks just enough of the WebSocket protocol to accept one uncompressed gateway connection,
+ * answers IDENTIFY with a READY for a number of simulated guilds and then sends a GUILD_CREATE for each of them.
+ * Like Discord, it only includes the voice states and presences when the matching intents were identified with.
+ */
+final class FakeGateway implements Interceptor, Closeable {
+    private static final MediaType JSON = MediaType.get("application/json");
+    private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final long SELF_ID = 700_000_000_000_000_000L;
+    private static final long FIRST_GUILD_ID = 800_000_000_000_000_000L;
+
+    // the intents that make Discord send additional parts of GUILD_CREATE
+    private static final int GUILD_VOICE_STATES = 1 << 7;
+    private static final int GUILD_PRESENCES = 1 << 8;
+
+    // the shape of each simulated guild, roughly that of a mid-sized community server
+    private static final int ROLES = 12;
+    private static final int TEXT_CHANNELS = 20;
+    private static final int VOICE_CHANNELS = 5;
+    private static final int EMOJIS = 30;
+    private static final int MEMBERS = 25;          // members Discord includes without chunking
+    private static final int IN_VOICE = 5;          // of which are connected to a voice channel
+
+    private final int guilds;
+    private final ServerSocket server;
+    private final Thread acceptor;
+    private volatile int sequence;
+
+    FakeGateway(int guilds) throws IOException {
+        this.guilds = guilds;
+        this.server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        this.acceptor = new Thread(this::accept, "fake-gateway");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    String getUrl() {
+        return "ws://127.0.0.1:" + server.getLocalPort();
+    }
+
+    @Override
+    public Response intercept(Chain chain) {
+        Request request = chain.request();
+        String path = request.url().encodedPath();
+        String body;
+        int code = 200;
+        if (path.endsWith("/gateway") || path.endsWith("/gateway/bot")) {
+            body = new JSONObject()
+                    .put("url", getUrl())
+                    .put("shards", 1)
+                    .put("session_start_limit", new JSONObject()
+                            .put("total", 1000).put("remaining", 1000).put("reset_after", 0).put("max_concurrency", 1))
+                    .toString();
+        } else if (path.endsWith("/users/@me")) {
+            body = selfUser().toString();
+        } else {
+            code = 404;
+            body = new JSONObject().put("message", "Unknown route").put("code", 0).toString();
+        }
+        return new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message(code == 200 ? "OK" : "Not Found")
+                .body(ResponseBody.create(JSON, body))
+                .build();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+
+    private void accept() {
+        while (!server.isClosed()) {
+            try (Socket socket = server.accept()) {
+                serve(socket);
+            } catch (IOException e) {
+                // the connection or the server was closed, JDA reconnects if it wants to
+            }
+        }
+    }
+
+    private void serve(Socket socket) throws IOException {
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+        handshake(in, out);
+        send(out, new JSONObject().put("op", 10).put("d", new JSONObject().put("heartbeat_interval", 41_250)));
+
+        String message;
+        while ((message = receive(in, out)) != null) {
+            JSONObject payload = new JSONObject(message);
+            switch (payload.getInt("op")) {
+                case 1: // heartbeat
+                    send(out, new JSONObject().put("op", 11));
+                    break;
+                case 2: // identify
+                    int intents = payload.getJSONObject("d").optInt("intents", ~0);
+                    sequence = 0;
+                    dispatch(out, "READY", ready());
+                    for (int i = 0; i < guilds; i++) {
+                        dispatch(out, "GUILD_CREATE", guild(FIRST_GUILD_ID + (long) i * 1_000_000, intents));
+                    }
+                    break;
+                default:
+                    // presence updates, member requests and the like aren't needed to fill the caches
+                    break;
+            }
+        }
+    }
+
+    private void dispatch(OutputStream out, String type, JSONObject data) throws IOException {
+        send(out, new JSONObject().put("op", 0).put("t", type).put("s", ++sequence).put("d", data));
+    }
+
+    private JSONObject ready() {
+        JSONArray unavailable = new JSONArray();
+        for (int i = 0; i < guilds; i++) {
+            unavailable.put(new JSONObject().put("id", Long.toString(FIRST_GUILD_ID + (long) i * 1_000_000)).put("unavailable", true));
+        }
+        return new JSONObject()
+                .put("v", 6)
+                .put("user", selfUser())
+                .put("guilds", unavailable)
+                .put("session_id", "footprint")
+                .put("private_channels", new JSONArray())
+                .put("relationships", new JSONArray())
+                .put("presences", new JSONArray())
+                .put("shard", new JSONArray().put(0).put(1))
+                .put("_trace", new JSONArray().put("fake-gateway"));
+    }
+
+    private static JSONObject selfUser() {
+        return user(SELF_ID, "bot", true)
+                .put("verified", true)
+                .put("mfa_enabled", false)
+                .put("flags", 0);
+    }
+
+    private static JSONObject user(long id, String name, boolean bot) {
+        return new JSONObject()
+                .put("id", Long.toString(id))
+                .put("username", name)
+                .put("discriminator", String.format("%04d", id % 10_000))
+                .put("avatar", JSONObject.NULL)
+                .put("bot", bot);
+    }
+
+    private static JSONObject guild(long id, int intents) {
+        // ids inside a guild are derived from the guild id, so that they're unique across guilds
+        long roleIds = id + 1_000;
+        long channelIds = id + 2_000;
+        long emojiIds = id + 3_000;
+        long memberIds = id + 4_000;
+
+        JSONArray roles = new JSONArray();
+        for (int i = 0; i < ROLES; i++) {
+            roles.put(new JSONObject()
+                    .put("id", Long.toString(i == 0 ? id : roleIds + i)) // the @everyone role shares the guild's id
+                    .put("name", i == 0 ? "@everyone" : "role " + i)
+                    .put("color", 0)
+                    .put("hoist", false)
+                    .put("position", i)
+                    .put("permissions", i == 0 ? "104324673" : "2146958847")
+                    .put("managed", false)
+                    .put("mentionable", false));
+        }
+
+        JSONArray channels = new JSONArray();
+        for (int i = 0; i < TEXT_CHANNELS; i++) {
+            channels.put(new JSONObject()
+                    .put("id", Long.toString(channelIds + i))
+                    .put("type", 0)
+                    .put("name", "text-" + i)
+                    .put("position", i)
+                    .put("parent_id", JSONObject.NULL)
+                    .put("topic", "The topic of channel " + i)
+                    .put("nsfw", false)
+                    .put("rate_limit_per_user", 0)
+                    .put("last_message_id", JSONObject.NULL)
+                    .put("permission_overwrites", new JSONArray()));
+        }
+        for (int i = 0; i < VOICE_CHANNELS; i++) {
+            channels.put(new JSONObject()
+                    .put("id", Long.toString(channelIds + TEXT_CHANNELS + i))
+                    .put("type", 2)
+                    .put("name", "voice " + i)
+                    .put("position", i)
+                    .put("parent_id", JSONObject.NULL)
+                    .put("bitrate", 64_000)
+                    .put("user_limit", 0)
+                    .put("permission_overwrites", new JSONArray()));
+        }
+
+        JSONArray emojis = new JSONArray();
+        for (int i = 0; i < EMOJIS; i++) {
+            emojis.put(new JSONObject()
+                    .put("id", Long.toString(emojiIds + i))
+                    .put("name", "emoji_" + i)
+                    .put("roles", new JSONArray())
+                    .put("require_colons", true)
+                    .put("managed", false)
+                    .put("animated", false)
+                    .put("available", true));
+        }
+
+        JSONArray members = new JSONArray().put(member(user(SELF_ID, "bot", true), new JSONArray()));
+        JSONArray voiceStates = new JSONArray();
+        JSONArray presences = new JSONArray();
+        for (int i = 0; i < MEMBERS; i++) {
+            long userId = memberIds + i;
+            members.put(member(user(userId, "member " + i, false), new JSONArray().put(Long.toString(roleIds + 1 + i % (ROLES - 1)))));
+            if (i < IN_VOICE && (intents & GUILD_VOICE_STATES) != 0) {
+                voiceStates.put(new JSONObject()
+                        .put("channel_id", Long.toString(channelIds + TEXT_CHANNELS + i % VOICE_CHANNELS))
+                        .put("user_id", Long.toString(userId))
+                        .put("session_id", "voice-" + userId)
+                        .put("deaf", false)
+                        .put("mute", false)
+                        .put("self_deaf", false)
+                        .put("self_mute", false)
+                        .put("self_video", false)
+                        .put("suppress", false));
+            }
+            if ((intents & GUILD_PRESENCES) != 0) {
+                presences.put(new JSONObject()
+                        .put("user", new JSONObject().put("id", Long.toString(userId)))
+                        .put("status", "online")
+                        .put("activities", new JSONArray())
+                        .put("client_status", new JSONObject().put("desktop", "online")));
+            }
+        }
+
+        return new JSONObject()
+                .put("id", Long.toString(id))
+                .put("name", "guild " + id)
+                .put("icon", JSONObject.NULL)
+                .put("splash", JSONObject.NULL)
+                .put("discovery_splash", JSONObject.NULL)
+                .put("banner", JSONObject.NULL)
+                .put("description", JSONObject.NULL)
+                .put("owner_id", Long.toString(memberIds))
+                .put("region", "europe")
+                .put("afk_channel_id", JSONObject.NULL)
+                .put("afk_timeout", 300)
+                .put("verification_level", 1)
+                .put("default_message_notifications", 0)
+                .put("explicit_content_filter", 0)
+                .put("mfa_level", 0)
+                .put("features", new JSONArray())
+                .put("vanity_url_code", JSONObject.NULL)
+                .put("premium_tier", 0)
+                .put("premium_subscription_count", 0)
+                .put("preferred_locale", "en-US")
+                .put("system_channel_id", Long.toString(channelIds))
+                .put("rules_channel_id", JSONObject.NULL)
+                .put("public_updates_channel_id", JSONObject.NULL)
+                .put("max_members", 250_000)
+                .put("joined_at", "2020-10-01T12:00:00.000000+00:00")
+                .put("large", false)
+                .put("unavailable", false)
+                .put("member_count", MEMBERS + 1)
+                .put("roles", roles)
+                .put("channels", channels)
+                .put("emojis", emojis)
+                .put("members", members)
+                .put("voice_states", voiceStates)
+                .put("presences", presences);
+    }
+
+    private static JSONObject member(JSONObject user, JSONArray roles) {
+        return new JSONObject()
+                .put("user", user)
+                .put("nick", JSONObject.NULL)
+                .put("roles", roles)
+                .put("joined_at", "2020-10-01T12:00:00.000000+00:00")
+                .put("premium_since", JSONObject.NULL)
+                .put("deaf", false)
+                .put("mute", false);
+    }
+
+    private static void handshake(InputStream in, OutputStream out) throws IOException {
+        String key = null;
+        String line;
+        while (!(line = readLine(in)).isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Sec-WebSocket-Key")) {
+                key = line.substring(colon + 1).trim();
+            }
+        }
+        if (key == null) {
+            throw new IOException("Not a WebSocket handshake");
+        }
+        String accept;
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest((key + WEBSOCKET_GUID).getBytes(StandardCharsets.US_ASCII));
+            accept = Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        out.write(("HTTP/1.1 101 Switching Protocols\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Accept: " + accept + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c == -1) {
+                throw new EOFException();
+            }
+            if (c != '\r') {
+                sb.append((char) c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Reads frames until a complete text message arrived, answering pings along the way.
+     * @return the message, or {@code null} once the client closed the connection
+     */
+    private static String receive(InputStream in, OutputStream out) throws IOException {
+        ByteArrayOutputStream message = new ByteArrayOutputStream();
+        while (true) {
+            int first = in.read();
+            int second = in.read();
+            if (first == -1 || second == -1) {
+                return null;
+            }
+            boolean fin = (first & 0x80) != 0;
+            int opcode = first & 0x0F;
+            long length = second & 0x7F;
+            if (length == 126) {
+                length = (in.read() << 8) | in.read();
+            } else if (length == 127) {
+                length = new DataInputStream(in).readLong();
+            }
+            byte[] mask = new byte[4];
+            if ((second & 0x80) != 0) {
+                readFully(in, mask);
+            }
+            byte[] payload = new byte[(int) length];
+            readFully(in, payload);
+            for (int i = 0; i < payload.length; i++) {
+                payload[i] ^= mask[i & 3];
+            }
+
+            if (opcode == 0x8) {
+                // close: echo it back, as the protocol asks
+                writeFrame(out, 0x8, payload);
+                return null;
+            } else if (opcode == 0x9) {
+                writeFrame(out, 0xA, payload);
+            } else if (opcode == 0x0 || opcode == 0x1) {
+                message.write(payload);
+                if (fin) {
+                    return new String(message.toByteArray(), StandardCharsets.UTF_8);
+                }
+            }
+        }
+    }
+
+    private static void readFully(InputStream in, byte[] buffer) throws IOException {
+        new DataInputStream(in).readFully(buffer);
+    }
+
+    private static void send(OutputStream out, JSONObject payload) throws IOException {
+        writeFrame(out, 0x1, payload.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeFrame(OutputStream out, int opcode, byte[] payload) throws IOException {
+        out.write(0x80 | opcode);
+        if (payload.length < 126) {
+            out.write(payload.length);
+        } else if (payload.length <= 0xFFFF) {
+            out.write(126);
+            out.write(payload.length >>> 8);
+            out.write(payload.length & 0xFF);
+        } else {
+            out.write(127);
+            new DataOutputStream(out).writeLong(payload.length);
+        }
+        out.write(payload);
+        out.flush();
+    }
+}
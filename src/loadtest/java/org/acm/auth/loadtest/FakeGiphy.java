@@ -0,0 +1,53 @@
+package org.acm.auth.loadtest;
+
+import okhttp3.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.Scanner;
+
+/**
+ * An OkHttp interceptor that answers every request with a recorded GIPHY payload after a simulated
+ * round trip, so that the gif command can run at full speed without touching the network.
+ */
+final class FakeGiphy implements Interceptor {
+    private static final MediaType JSON = MediaType.get("application/json");
+
+    private final String search = read("/giphy/search.json");
+    private final String random = read("/giphy/random.json");
+    private final long latencyMillis;
+
+    FakeGiphy(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the fake GIPHY", e);
+            }
+        }
+        String payload = request.url().pathSegments().contains("random") ? random : search;
+        return new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .body(ResponseBody.create(JSON, payload))
+                .build();
+    }
+
+    private static String read(String path) {
+        InputStream in = Objects.requireNonNull(FakeGiphy.class.getResourceAsStream(path), path);
+        try (Scanner scanner = new Scanner(in, StandardCharsets.UTF_8.name())) {
+            return scanner.useDelimiter("\\A").next();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package org.acm.auth.loadtest;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.requests.GatewayIntent;
+import net.dv8tion.jda.api.sharding.ShardManager;
+import net.dv8tion.jda.api.utils.Compression;
+import okhttp3.OkHttpClient;
+import org.acm.auth.calendar.EventIndexStore;
+import org.acm.auth.config.ConfigFile;
+import org.acm.auth.config.ConfigKey;
+import org.acm.auth.config.RuntimeProfile;
+import org.acm.auth.managers.CalendarManager;
+import org.acm.auth.managers.CommandManager;
+import org.acm.auth.managers.EventSyncManager;
+import org.acm.auth.managers.PermissionCache;
+import org.acm.auth.managers.PollManager;
+import org.acm.auth.managers.PrefixManager;
+import org.acm.auth.managers.ShardMonitor;
+import org.acm.auth.repositories.MariaDbGuildRepository;
+
+import javax.security.auth.login.LoginException;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Logs a real JDA shard into a {@link FakeGateway} once per runtime profile and guild count,
+ * and reports how much heap the guild state retains after a full GC.
+ * <p>
+ * Options (all optional):
+ * <pre>
+ *   --guilds N,N,...      the guild counts to simulate (default 1000,10000)
+ * </pre>
+ * Run with {@code ./gradlew footprint -PfootprintArgs="--guilds 1000,10000"}.
+ */
+public final class FootprintReport {
+    private FootprintReport() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, LoginException {
+        List<Integer> guildCounts = new ArrayList<>();
+        guildCounts.add(1_000);
+        guildCounts.add(10_000);
+        for (int i = 0; i < args.length; i += 2) {
+            if (args[i].equals("--guilds")) {
+                guildCounts.clear();
+                for (String count : args[i + 1].split(",")) {
+                    guildCounts.add(Integer.parseInt(count.trim()));
+                }
+            } else {
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        // the intents come from the real commands, exactly like in App
+        Path configFile = Files.createTempFile("footprint-config", ".json");
+        Files.write(configFile, "{\"token\": \"footprint\", \"metrics_port\": \"0\"}".getBytes());
+        configFile.toFile().deleteOnExit();
+        MariaDbGuildRepository repository = new MariaDbGuildRepository();
+        // the event sync is never started, so no calendar is ever read
+        EnumSet<GatewayIntent> intents = new CommandManager(new ConfigFile(configFile.toString()),
+                new PrefixManager(repository, "-"), new CalendarManager(repository, 16),
+                new EventSyncManager(repository, new EventIndexStore(Paths.get(ConfigKey.EVENT_INDEX_PATH.getDefaultValue())), 5, 1),
+                new PollManager(false), new PermissionCache(), new ShardMonitor()).getIntents();
+        System.out.printf("Intents of the registered commands: %s%n%n", intents);
+
+        System.out.printf("%-10s %10s %14s %14s%n", "profile", "guilds", "retained heap", "per guild");
+        for (int guilds : guildCounts) {
+            for (RuntimeProfile profile : RuntimeProfile.values()) {
+                long retained = measure(profile, intents, guilds);
+                System.out.printf("%-10s %,10d %,10d KiB %,10d B%n", profile, guilds, retained / 1024, retained / guilds);
+            }
+        }
+        System.exit(0);
+    }
+
+    private static long measure(RuntimeProfile profile, EnumSet<GatewayIntent> intents, int guilds)
+            throws IOException, InterruptedException, LoginException {
+        try (FakeGateway gateway = new FakeGateway(guilds)) {
+            long before = usedHeap();
+            ShardManager shards = profile.createBuilder("footprint", intents)
+                    .setShardsTotal(1)
+                    .setCompression(Compression.NONE)
+                    .setHttpClient(new OkHttpClient.Builder().addInterceptor(gateway).build())
+                    .setEnableShutdownHook(false)
+                    .build();
+            JDA shard;
+            while ((shard = shards.getShardById(0)) == null) {
+                // the shard manager starts its shards asynchronously
+                Thread.sleep(10);
+            }
+            shard.awaitReady();
+            long retained = usedHeap() - before;
+            shards.shutdown();
+            return retained;
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        // a few rounds, so that objects with finalizers or soft references are gone too
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(200);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,195 @@
+package org.acm.auth.loadtest;
+
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import org.acm.auth.calendar.EventIndexStore;
+import org.acm.auth.config.ConfigFile;
+import org.acm.auth.config.ConfigKey;
+import org.acm.auth.managers.CalendarManager;
+import org.acm.auth.managers.CommandManager;
+import org.acm.auth.managers.EventSyncManager;
+import org.acm.auth.managers.PermissionCache;
+import org.acm.auth.managers.PollManager;
+import org.acm.auth.managers.PrefixManager;
+import org.acm.auth.managers.ShardMonitor;
+import org.acm.auth.metrics.LatencyHistogram;
+import org.acm.auth.metrics.Metrics;
+import org.acm.auth.repositories.MariaDbGuildRepository;
+import org.acm.auth.utils.HttpUtil;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a message trace against the real {@link CommandManager} and commands, on top of a fake JDA layer,
+ * and reports the sustained dispatch rate, the dispatch-to-reply latency and the heap/GC behaviour.
+ * Nothing leaves the machine: Discord is replaced by {@link FakeDiscord} and GIPHY by {@link FakeGiphy}.
+ * <p>
+ * Options (all optional):
+ * <pre>
+ *   --trace FILE          replay a recorded trace instead of generating one
+ *   --write-trace FILE    write the generated trace to a file, to replay it again later
+ *   --messages N          amount of generated messages (default 500000)
+ *   --guilds N            amount of distinct guilds in the generated trace (default 5000)
+ *   --rate N              messages per second to replay at, 0 for as fast as possible (default 0)
+ *   --giphy-latency MS    simulated GIPHY round trip (default 80)
+ *   --config FILE         the bot config to use, e.g. to try other executor limits (default: built-in)
+ * </pre>
+ * Run with {@code ./gradlew replay -PreplayArgs="--guilds 20000 --rate 20000"}.
+ */
+public final class ReplayHarness {
+    private ReplayHarness() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path traceFile = null;
+        Path writeTrace = null;
+        Path configFile = null;
+        int messages = 500_000;
+        int guilds = 5_000;
+        int rate = 0;
+        long giphyLatency = 80;
+        for (int i = 0; i < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--trace": traceFile = Paths.get(value); break;
+                case "--write-trace": writeTrace = Paths.get(value); break;
+                case "--config": configFile = Paths.get(value); break;
+                case "--messages": messages = Integer.parseInt(value); break;
+                case "--guilds": guilds = Integer.parseInt(value); break;
+                case "--rate": rate = Integer.parseInt(value); break;
+                case "--giphy-latency": giphyLatency = Long.parseLong(value); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        List<TraceMessage> trace;
+        if (traceFile != null) {
+            trace = new ArrayList<>();
+            for (String line : Files.readAllLines(traceFile, StandardCharsets.UTF_8)) {
+                if (!line.isEmpty()) {
+                    trace.add(TraceMessage.parse(line));
+                }
+            }
+        } else {
+            // offsets are only used for pacing, so space them at the requested rate (or 10k/s when unthrottled)
+            trace = TraceGenerator.generate(messages, guilds, rate > 0 ? rate : 10_000, 42);
+            if (writeTrace != null) {
+                List<String> lines = new ArrayList<>(trace.size());
+                for (TraceMessage msg : trace) {
+                    lines.add(msg.format());
+                }
+                Files.write(writeTrace, lines, StandardCharsets.UTF_8);
+            }
+        }
+
+        if (configFile == null) {
+            configFile = Files.createTempFile("replay-config", ".json");
+            Files.write(configFile, "{\"token\": \"replay\", \"giphy_key\": \"replay\", \"metrics_port\": \"0\"}".getBytes());
+            configFile.toFile().deleteOnExit();
+        }
+
+        HttpUtil.useClient(HttpUtil.newClientBuilder().addInterceptor(new FakeGiphy(giphyLatency)).build());
+        FakeDiscord discord = new FakeDiscord();
+        MariaDbGuildRepository repository = new MariaDbGuildRepository();
+        // the event sync is never started, so no calendar is ever read
+        CommandManager manager = new CommandManager(new ConfigFile(configFile.toString()),
+                new PrefixManager(repository, "-"), new CalendarManager(repository, 16),
+                new EventSyncManager(repository, new EventIndexStore(Paths.get(ConfigKey.EVENT_INDEX_PATH.getDefaultValue())), 5, 1),
+                new PollManager(false), new PermissionCache(), new ShardMonitor());
+
+        run(trace, rate, discord, manager);
+    }
+
+    private static void run(List<TraceMessage> trace, int rate, FakeDiscord discord, CommandManager manager)
+            throws InterruptedException {
+        LatencyHistogram dispatch = Metrics.histogram("loadtest_dispatch_seconds");
+        long gcCountBefore = gcCount();
+        long gcTimeBefore = gcTime();
+
+        System.out.printf("Replaying %d messages%s%n", trace.size(), rate > 0 ? " at " + rate + " msg/s" : "");
+        long start = System.nanoTime();
+        for (TraceMessage msg : trace) {
+            if (rate > 0) {
+                // pace the messages according to their offsets, like the gateway would deliver them
+                long due = start + TimeUnit.MILLISECONDS.toNanos(msg.offset);
+                long early = due - System.nanoTime();
+                if (early > 0) {
+                    LockSupport.parkNanos(early);
+                }
+            }
+            MessageReceivedEvent event = discord.event(msg);
+            long before = System.nanoTime();
+            manager.onMessageReceived(event);
+            dispatch.recordSince(before);
+        }
+        long dispatched = System.nanoTime();
+
+        // give the commands that are still running a chance to reply
+        long previous = -1;
+        while (discord.messagesSent.sum() != previous) {
+            previous = discord.messagesSent.sum();
+            Thread.sleep(1_000);
+        }
+
+        double seconds = (dispatched - start) / 1e9;
+        System.out.printf("%nDispatch%n");
+        System.out.printf("  sustained rate         %,.0f msg/s over %.1fs%n", trace.size() / seconds, seconds);
+        System.out.printf("  gateway thread time    p50 %s, p99 %s, max %s%n",
+                micros(dispatch.getPercentile(0.5)), micros(dispatch.getPercentile(0.99)), micros(dispatch.getMax()));
+        System.out.printf("%nReplies (dispatch to first reply)%n");
+        System.out.printf("  replied events         %,d%n", discord.repliedEvents.sum());
+        System.out.printf("  latency                p50 %s, p99 %s, max %s%n",
+                micros(discord.replyLatency.getPercentile(0.5)), micros(discord.replyLatency.getPercentile(0.99)),
+                micros(discord.replyLatency.getMax()));
+        System.out.printf("  messages sent          %,d%n", discord.messagesSent.sum());
+        System.out.printf("  reactions added        %,d%n", discord.reactionsAdded.sum());
+        System.out.printf("  messages deleted       %,d%n", discord.messagesDeleted.sum());
+        System.out.printf("%nHeap and GC%n");
+        System.out.printf("  peak heap used         %,d MiB%n", peakHeap() / (1024 * 1024));
+        System.out.printf("  collections            %,d (%,d ms total)%n",
+                gcCount() - gcCountBefore, gcTime() - gcTimeBefore);
+        System.out.printf("%nAll metrics%n%s", Metrics.renderPrometheus());
+        System.exit(0);
+    }
+
+    private static String micros(long micros) {
+        return micros < 1_000 ? micros + "us" : String.format("%.1fms", micros / 1_000.0);
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return time;
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
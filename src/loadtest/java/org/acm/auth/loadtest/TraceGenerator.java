@@ -0,0 +1,104 @@
+package org.acm.auth.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates a synthetic trace that resembles the traffic of many guilds:
+ * mostly chatter, a few messages that start with the prefix without being commands,
+ * a trickle of cheap commands, and occasional bursts of polls and GIFs in a single channel.
+ */
+final class TraceGenerator {
+    private static final long FIRST_GUILD_ID = 700000000000000000L;
+    private static final int CHANNELS_PER_GUILD = 4;
+    private static final int USERS_PER_GUILD = 50;
+
+    private static final String[] CHATTER = {
+            "lol",
+            "did anyone start the assignment yet?",
+            "that's exactly what I was thinking, the second half of the lecture went way too fast",
+            "https://example.com/some/article?id=42",
+            "good morning everyone",
+            "can someone send me the notes from yesterday",
+            "-_-",
+            "--- meeting notes ---\n1. budget\n2. schedule",
+    };
+    private static final String[] COMMANDS = {
+            "-hi", "-cointoss", "-bye everyone", "-coin-flip", "-hello",
+    };
+    private static final String[] GIF_TERMS = {
+            "cats", "happy dance", "mind blown", "", "coffee", "friday",
+    };
+
+    private TraceGenerator() {
+    }
+
+    /**
+     * Generates a trace.
+     * @param messages the amount of messages as {@code int}
+     * @param guilds the amount of distinct guilds as {@code int}
+     * @param rate the average messages per second, used to space out the offsets, as {@code int}
+     * @param seed the random seed, so that runs can be compared as {@code long}
+     * @return the trace as {@code List<TraceMessage>}
+     */
+    static List<TraceMessage> generate(int messages, int guilds, int rate, long seed) {
+        Random random = new Random(seed);
+        List<TraceMessage> trace = new ArrayList<>(messages);
+        double millisPerMessage = 1000.0 / rate;
+
+        int i = 0;
+        while (i < messages) {
+            long offset = (long) (i * millisPerMessage);
+            long guild = FIRST_GUILD_ID + random.nextInt(guilds);
+            long channel = guild * 10 + random.nextInt(CHANNELS_PER_GUILD);
+
+            if (random.nextInt(1000) < 3) {
+                // a burst: a bunch of users in one channel fire polls or GIFs within a few milliseconds
+                int burst = Math.min(messages - i, 10 + random.nextInt(30));
+                boolean polls = random.nextBoolean();
+                for (int b = 0; b < burst; b++) {
+                    String content = polls ? poll(random) : gif(random);
+                    trace.add(new TraceMessage(offset + b, guild, channel, user(guild, random), content));
+                }
+                i += burst;
+                continue;
+            }
+
+            int kind = random.nextInt(100);
+            String content;
+            if (kind < 92) {
+                content = CHATTER[random.nextInt(CHATTER.length)];
+            } else if (kind < 95) {
+                content = "-" + CHATTER[random.nextInt(CHATTER.length)];  // looks like a command, isn't one
+            } else if (kind < 98) {
+                content = COMMANDS[random.nextInt(COMMANDS.length)];
+            } else if (kind < 99) {
+                content = gif(random);
+            } else {
+                content = poll(random);
+            }
+            trace.add(new TraceMessage(offset, guild, channel, user(guild, random), content));
+            i++;
+        }
+        return trace;
+    }
+
+    private static long user(long guild, Random random) {
+        return guild * 100 + random.nextInt(USERS_PER_GUILD);
+    }
+
+    private static String gif(Random random) {
+        String term = GIF_TERMS[random.nextInt(GIF_TERMS.length)];
+        return term.isEmpty() ? "-gif" : "-gif " + term;
+    }
+
+    private static String poll(Random random) {
+        StringBuilder sb = new StringBuilder("-poll \"Where should we meet?\"");
+        int options = 2 + random.nextInt(6);
+        for (int o = 1; o <= options; o++) {
+            sb.append(" \"Place ").append(o).append('"');
+        }
+        return sb.toString();
+    }
+}
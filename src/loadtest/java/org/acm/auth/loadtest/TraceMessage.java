@@ -0,0 +1,39 @@
+package org.acm.auth.loadtest;
+
+/**
+ * A single message of a replay trace.
+ */
+final class TraceMessage {
+    final long offset;      // when the message arrives, in milliseconds since the start of the trace
+    final long guildId;
+    final long channelId;
+    final long userId;
+    final String content;
+
+    TraceMessage(long offset, long guildId, long channelId, long userId, String content) {
+        this.offset = offset;
+        this.guildId = guildId;
+        this.channelId = channelId;
+        this.userId = userId;
+        this.content = content;
+    }
+
+    /**
+     * Parses a trace line: offset, guild id, channel id, user id and content, separated by tabs.
+     * Tabs and newlines inside the content are escaped as {@code \t} and {@code \n}.
+     */
+    static TraceMessage parse(String line) {
+        String[] fields = line.split("\t", 5);
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("Malformed trace line: " + line);
+        }
+        String content = fields[4].replace("\\n", "\n").replace("\\t", "\t");
+        return new TraceMessage(Long.parseLong(fields[0]), Long.parseLong(fields[1]),
+                Long.parseLong(fields[2]), Long.parseLong(fields[3]), content);
+    }
+
+    String format() {
+        String escaped = content.replace("\t", "\\t").replace("\n", "\\n");
+        return offset + "\t" + guildId + "\t" + channelId + "\t" + userId + "\t" + escaped;
+    }
+}
@@ -1,24 +1,101 @@
 package org.acm.auth;
 
-import net.dv8tion.jda.api.JDABuilder;
+import net.dv8tion.jda.api.sharding.ShardManager;
+import org.acm.auth.calendar.EventIndexStore;
 import org.acm.auth.config.ConfigFile;
 import org.acm.auth.config.ConfigKey;
+import org.acm.auth.config.RuntimeProfile;
+import org.acm.auth.config.Storage;
+import org.acm.auth.managers.CalendarManager;
 import org.acm.auth.managers.CommandManager;
+import org.acm.auth.managers.EventSyncManager;
+import org.acm.auth.managers.PermissionCache;
+import org.acm.auth.managers.PollManager;
+import org.acm.auth.managers.PrefixManager;
+import org.acm.auth.managers.ReminderManager;
+import org.acm.auth.managers.ShardMonitor;
+import org.acm.auth.metrics.MetricsServer;
+import org.acm.auth.repositories.GuildRepository;
+import org.acm.auth.services.Database;
+import org.acm.auth.services.GoogleCalendar;
+import org.acm.auth.utils.HttpUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import javax.security.auth.login.LoginException;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 
 public class App {
     private static final Logger LOGGER = LogManager.getLogger(App.class);
 
     public static void main(String[] args) throws LoginException, IOException {
         LOGGER.info("Initializing bot!");
-        ConfigFile config = new ConfigFile("config.json");
-        JDABuilder
-                .createDefault(config.getValue(ConfigKey.TOKEN))
-                .addEventListeners(new CommandManager(config))
-                .build();
+        Bootstrap bootstrap = new Bootstrap();
+        ConfigFile config = bootstrap.run("config", () -> new ConfigFile("config.json"));
+        // the prefix, dev_id and giphy_key can be changed without restarting, the other keys need a restart
+        config.watch();
+
+        // nothing below needs these to start logging in, they're only warmed up ahead of their first use
+        int metricsPort = Integer.parseInt(config.getValue(ConfigKey.METRICS_PORT));
+        if (metricsPort > 0) {
+            // a port of 0 disables the endpoint
+            bootstrap.runInBackground("metrics", () -> {
+                try {
+                    new MetricsServer(metricsPort);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        Storage storage = Storage.fromConfig(config);
+        LOGGER.info("Storing the guild data in {}", storage);
+        Database.configure(config);
+        if (storage == Storage.MARIADB) {
+            bootstrap.runInBackground("database", Database::warmUp);
+        }
+        bootstrap.runInBackground("google calendar", GoogleCalendar::warmUp);
+        bootstrap.runInBackground("http client", HttpUtil::warmUp);
+
+        GuildRepository guilds = bootstrap.run("storage", () -> storage.createRepository(config));
+        // until the custom prefixes are loaded, every guild answers to the default one
+        PrefixManager prefixes = new PrefixManager(guilds, config.getValue(ConfigKey.PREFIX));
+        bootstrap.runInBackground("prefixes", prefixes::load);
+        // until the calendars are loaded, each guild's calendar is loaded the first time it's looked up
+        CalendarManager calendars = new CalendarManager(guilds,
+                Integer.parseInt(config.getValue(ConfigKey.CALENDAR_CACHE_SIZE)));
+        bootstrap.runInBackground("calendars", calendars::load);
+        // until the saved events are loaded, the upcoming command asks to try again in a minute
+        EventSyncManager events = new EventSyncManager(guilds,
+                new EventIndexStore(Paths.get(config.getValue(ConfigKey.EVENT_INDEX_PATH))),
+                Long.parseLong(config.getValue(ConfigKey.CALENDAR_SYNC_INTERVAL)),
+                Integer.parseInt(config.getValue(ConfigKey.CALENDAR_SYNC_PARALLELISM)));
+        bootstrap.runInBackground("events", events::start);
+        long reminderLead = Long.parseLong(config.getValue(ConfigKey.REMINDER_LEAD));
+        ReminderManager reminders = new ReminderManager(events, reminderLead);
+
+        PollManager polls = new PollManager(Boolean.parseBoolean(config.getValue(ConfigKey.POLL_SINGLE_VOTE)));
+        config.subscribe(polls);
+
+        PermissionCache permissions = new PermissionCache();
+        ShardMonitor shards = new ShardMonitor();
+        CommandManager commandManager = bootstrap.run("commands",
+                () -> new CommandManager(config, prefixes, calendars, events, polls, permissions, shards));
+
+        // every listener is registered once and shared by all shards.
+        // the shards log in one after the other, since JDA's default session controller
+        // spaces out their IDENTIFYs to respect Discord's login rate limit
+        RuntimeProfile profile = RuntimeProfile.fromConfig(config);
+        LOGGER.info("Using the {} runtime profile", profile);
+        ShardManager shardManager = bootstrap.run("login", () -> profile.createBuilder(config.getValue(ConfigKey.TOKEN), commandManager.getIntents())
+                .setShardsTotal(Integer.parseInt(config.getValue(ConfigKey.SHARD_COUNT))) // -1: Discord's recommended count
+                .addEventListeners(bootstrap, prefixes, calendars, polls, permissions, shards, commandManager)
+                .build());
+
+        if (reminderLead > 0) {
+            // a lead of 0 disables the reminders
+            reminders.start(shardManager);
+        }
     }
 }
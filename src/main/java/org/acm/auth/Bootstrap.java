@@ -0,0 +1,136 @@
+package org.acm.auth;
+
+import net.dv8tion.jda.api.events.ReadyEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import net.dv8tion.jda.api.sharding.ShardManager;
+import org.acm.auth.metrics.Metrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the startup phases, the independent ones in the background while the shards log in,
+ * and logs how long each phase took once every shard is ready.
+ * Each phase's duration is also exported as {@code startup_phase_seconds}.
+ */
+public class Bootstrap extends ListenerAdapter {
+    private static final Logger LOGGER = LogManager.getLogger(Bootstrap.class);
+
+    /**
+     * A startup phase that returns a value and may fail with a checked exception.
+     */
+    public interface Phase<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    private final long start = System.nanoTime();
+    private final List<Timing> timings = new ArrayList<>();
+    private final List<CompletableFuture<Void>> background = new ArrayList<>();
+    private final AtomicInteger readyShards = new AtomicInteger();
+    private final ExecutorService workers = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "bootstrap");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Runs a phase on the calling thread, for phases that the next ones depend on.
+     * @param name the name of the phase as {@code String}
+     * @param phase the phase as {@link Phase}
+     * @return the value returned by the phase
+     * @throws E if the phase fails
+     */
+    public <T, E extends Exception> T run(String name, Phase<T, E> phase) throws E {
+        long phaseStart = System.nanoTime();
+        try {
+            return phase.run();
+        } finally {
+            record(name, phaseStart, System.nanoTime());
+        }
+    }
+
+    /**
+     * Runs a phase in the background. A phase that fails is logged and doesn't stop the startup,
+     * since whatever it initializes is initialized again on first use.
+     * @param name the name of the phase as {@code String}
+     * @param phase the phase as {@link Runnable}
+     */
+    public void runInBackground(String name, Runnable phase) {
+        CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
+            long phaseStart = System.nanoTime();
+            try {
+                phase.run();
+            } catch (RuntimeException e) {
+                LOGGER.warn("Startup phase {} failed: {}", name, e.getMessage());
+            } finally {
+                record(name, phaseStart, System.nanoTime());
+            }
+        }, workers);
+        synchronized (background) {
+            background.add(future);
+        }
+    }
+
+    @Override
+    public void onReady(@NotNull ReadyEvent event) {
+        int shardId = event.getJDA().getShardInfo().getShardId();
+        record("shard " + shardId + " ready", start, System.nanoTime());
+
+        ShardManager shardManager = event.getJDA().getShardManager();
+        int shardsTotal = shardManager == null ? 1 : shardManager.getShardsTotal();
+        if (readyShards.incrementAndGet() == shardsTotal) {
+            long ready = System.nanoTime();
+            CompletableFuture<?>[] pending;
+            synchronized (background) {
+                pending = background.toArray(new CompletableFuture<?>[0]);
+            }
+            // the report waits for the phases that are still warming up, but the time-to-ready doesn't
+            CompletableFuture.allOf(pending).whenComplete((ignored, e) -> {
+                report(ready);
+                workers.shutdown();
+            });
+        }
+    }
+
+    private void record(String name, long phaseStart, long phaseEnd) {
+        Metrics.histogram("startup_phase_seconds", "phase", name).record(phaseEnd - phaseStart);
+        synchronized (timings) {
+            timings.add(new Timing(name, phaseStart - start, phaseEnd - phaseStart));
+        }
+    }
+
+    private void report(long ready) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Ready after %dms%n", TimeUnit.NANOSECONDS.toMillis(ready - start)));
+        synchronized (timings) {
+            timings.sort((a, b) -> Long.compare(a.offset, b.offset));
+            for (Timing timing : timings) {
+                sb.append(String.format("  %-24s %6dms  (started at %dms)%n",
+                        timing.name,
+                        TimeUnit.NANOSECONDS.toMillis(timing.duration),
+                        TimeUnit.NANOSECONDS.toMillis(timing.offset)));
+            }
+        }
+        LOGGER.info(sb.toString().trim());
+    }
+
+    private static final class Timing {
+        private final String name;
+        private final long offset;      // nanoseconds between the start of the bootstrap and the start of the phase
+        private final long duration;    // nanoseconds the phase took
+
+        private Timing(String name, long offset, long duration) {
+            this.name = name;
+            this.offset = offset;
+            this.duration = duration;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package org.acm.auth.calendar;
+
+import com.google.api.client.util.DateTime;
+import com.google.api.services.calendar.model.Event;
+import com.google.api.services.calendar.model.EventDateTime;
+
+import java.util.Comparator;
+
+/**
+ * An event of a Google calendar, reduced to what the bot shows about it.
+ * Keeping only these fields (instead of the API's {@link Event}) keeps the event index small.
+ */
+public final class CalendarEvent {
+    // the order of the event index: by start time, and by id for events that start at the same time
+    static final Comparator<CalendarEvent> BY_START =
+            Comparator.comparingLong(CalendarEvent::getStart).thenComparing(CalendarEvent::getId);
+
+    private final String id;
+    private final String summary;
+    private final String location;
+    private final String link;
+    private final long start;        // epoch millis
+    private final long end;          // epoch millis
+    private final boolean allDay;    // whether start and end are dates, at midnight UTC
+
+    /**
+     * Constructs an event.
+     * @param id the event's id as {@code String}
+     * @param summary the event's title as {@code String}, or {@code null}
+     * @param location the event's location as {@code String}, or {@code null}
+     * @param link the link to the event in Google Calendar as {@code String}, or {@code null}
+     * @param start when the event starts, in epoch millis, as {@code long}
+     * @param end when the event ends, in epoch millis, as {@code long}
+     * @param allDay whether the event lasts whole days as {@code boolean}
+     */
+    public CalendarEvent(String id, String summary, String location, String link, long start, long end, boolean allDay) {
+        this.id = id;
+        this.summary = summary;
+        this.location = location;
+        this.link = link;
+        this.start = start;
+        this.end = end;
+        this.allDay = allDay;
+    }
+
+    /**
+     * Converts an event returned by the Events API.
+     * @param event the event as {@link Event}
+     * @return the event as {@link CalendarEvent}, or {@code null} if it has no start or end time
+     */
+    public static CalendarEvent from(Event event) {
+        DateTime start = toDateTime(event.getStart());
+        DateTime end = toDateTime(event.getEnd());
+        if (start == null || end == null) {
+            return null;
+        }
+        return new CalendarEvent(event.getId(), event.getSummary(), event.getLocation(), event.getHtmlLink(),
+                start.getValue(), end.getValue(), start.isDateOnly());
+    }
+
+    private static DateTime toDateTime(EventDateTime time) {
+        if (time == null) {
+            return null;
+        }
+        // all-day events only have a date
+        return time.getDateTime() != null ? time.getDateTime() : time.getDate();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getSummary() {
+        return summary;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public String getLink() {
+        return link;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public boolean isAllDay() {
+        return allDay;
+    }
+}
@@ -0,0 +1,190 @@
+package org.acm.auth.calendar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The events of one Google calendar, ordered by start time.
+ * <p>
+ * The sync applies the changes it reads from the Events API one by one, but readers only see them once it
+ * {@link #publish publishes} them all at once, as a new sorted array. Looking the upcoming events up is thus
+ * a lock-free scan of the head of that array, and never sees a sync that's half done.
+ */
+public final class EventIndex {
+    private static final CalendarEvent[] EMPTY = {};
+
+    private final String calendarId;
+
+    // event id -> event, only touched by the sync
+    private final Map<String, CalendarEvent> events = new HashMap<>();
+    private String syncToken;    // where the next incremental sync resumes from, or null for a full sync
+    private long fullSyncAt;     // epoch millis of the last full sync
+
+    // what readers see, replaced as a whole
+    private volatile CalendarEvent[] sorted = EMPTY;
+    private volatile long syncedAt;  // epoch millis of the last sync that was published, 0 if none
+
+    /**
+     * Constructs an empty index, which will be filled by a full sync.
+     * @param calendarId the id of the calendar as {@code String}
+     */
+    public EventIndex(String calendarId) {
+        this.calendarId = calendarId;
+    }
+
+    /**
+     * Restores an index that was saved by an {@link EventIndexStore}, so that syncing it resumes where it left off.
+     * @param calendarId the id of the calendar as {@code String}
+     * @param syncToken the sync token the index was saved with as {@code String}, or {@code null}
+     * @param fullSyncAt when the saved index was last fully synced, in epoch millis, as {@code long}
+     * @param syncedAt when the saved index was last synced, in epoch millis, as {@code long}
+     * @param saved the saved events as {@link Collection} of {@link CalendarEvent}
+     * @return the index as {@link EventIndex}
+     */
+    static EventIndex restore(String calendarId, String syncToken, long fullSyncAt, long syncedAt,
+                              Collection<CalendarEvent> saved) {
+        EventIndex index = new EventIndex(calendarId);
+        for (CalendarEvent event : saved) {
+            index.events.put(event.getId(), event);
+        }
+        index.syncToken = syncToken;
+        index.fullSyncAt = fullSyncAt;
+        index.publish(syncedAt);
+        return index;
+    }
+
+    public String getCalendarId() {
+        return calendarId;
+    }
+
+    public synchronized String getSyncToken() {
+        return syncToken;
+    }
+
+    public synchronized long getFullSyncAt() {
+        return fullSyncAt;
+    }
+
+    /**
+     * Returns when the events readers see were synced.
+     * @return the time of the last published sync, in epoch millis, as {@code long}, or {@code 0} if there was none
+     */
+    public long getSyncedAt() {
+        return syncedAt;
+    }
+
+    /**
+     * Returns the amount of events readers see.
+     * @return the amount of events as {@code int}
+     */
+    public int size() {
+        return sorted.length;
+    }
+
+    /**
+     * Adds an event, or replaces the event with the same id.
+     * @param event the event as {@link CalendarEvent}
+     */
+    public synchronized void put(CalendarEvent event) {
+        events.put(event.getId(), event);
+    }
+
+    /**
+     * Removes an event, e.g. because it was cancelled.
+     * @param eventId the id of the event as {@code String}
+     */
+    public synchronized void remove(String eventId) {
+        events.remove(eventId);
+    }
+
+    /**
+     * Forgets every event and the sync token, ahead of a full sync.
+     * Readers keep seeing the previous events until the full sync is published.
+     */
+    public synchronized void clear() {
+        events.clear();
+        syncToken = null;
+    }
+
+    /**
+     * Publishes the events applied so far to the readers, dropping the ones that have already ended.
+     * @param now the current time, in epoch millis, as {@code long}
+     */
+    private synchronized void publish(long now) {
+        events.values().removeIf(event -> event.getEnd() <= now);
+        CalendarEvent[] published = events.values().toArray(EMPTY);
+        Arrays.sort(published, CalendarEvent.BY_START);
+        sorted = published;
+        syncedAt = now;
+    }
+
+    /**
+     * Publishes the events of a successful sync, along with the token the next sync resumes from.
+     * @param nextSyncToken the sync token returned by the last page as {@code String}
+     * @param full whether this was a full sync as {@code boolean}
+     * @param now the current time, in epoch millis, as {@code long}
+     */
+    public synchronized void publish(String nextSyncToken, boolean full, long now) {
+        syncToken = nextSyncToken;
+        if (full) {
+            fullSyncAt = now;
+        }
+        publish(now);
+    }
+
+    /**
+     * Returns the next events that haven't ended yet, including the ones happening right now.
+     * @param now the current time, in epoch millis, as {@code long}
+     * @param limit the maximum amount of events as {@code int}
+     * @return the events as {@link List} of {@link CalendarEvent}, ordered by start time
+     */
+    public List<CalendarEvent> upcoming(long now, int limit) {
+        CalendarEvent[] snapshot = sorted;
+        List<CalendarEvent> upcoming = new ArrayList<>(Math.min(limit, snapshot.length));
+        // ended events are dropped on every sync, so only the few that ended since are skipped
+        for (int i = 0; i < snapshot.length && upcoming.size() < limit; i++) {
+            if (snapshot[i].getEnd() > now) {
+                upcoming.add(snapshot[i]);
+            }
+        }
+        return upcoming;
+    }
+
+    /**
+     * Returns the events that start within a window, e.g. to remind the guilds of them.
+     * @param from the start of the window (exclusive), in epoch millis, as {@code long}
+     * @param to the end of the window (inclusive), in epoch millis, as {@code long}
+     * @return the events as {@link List} of {@link CalendarEvent}, ordered by start time
+     */
+    public List<CalendarEvent> startingBetween(long from, long to) {
+        CalendarEvent[] snapshot = sorted;
+        // the first event that starts after the window's start
+        int low = 0, high = snapshot.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (snapshot[middle].getStart() <= from) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        List<CalendarEvent> starting = new ArrayList<>(0);
+        for (int i = low; i < snapshot.length && snapshot[i].getStart() <= to; i++) {
+            starting.add(snapshot[i]);
+        }
+        return starting;
+    }
+
+    /**
+     * Returns every event readers see, e.g. to save them.
+     * @return the events as {@link List} of {@link CalendarEvent}, ordered by start time
+     */
+    public List<CalendarEvent> getEvents() {
+        return Collections.unmodifiableList(Arrays.asList(sorted));
+    }
+}
@@ -0,0 +1,221 @@
+package org.acm.auth.calendar;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Saves each {@link EventIndex} to a JSON file of its own, so that a restart resumes syncing from the saved
+ * sync token instead of fully syncing every calendar again, and can answer from the saved events right away.
+ * <p>
+ * Files are written to a temporary file first and then moved over the previous one,
+ * so a crash while saving leaves the previous file intact.
+ */
+public class EventIndexStore {
+    private static final Logger LOGGER = LogManager.getLogger(EventIndexStore.class);
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final String EXTENSION = ".json";
+
+    private final Path directory;
+
+    /**
+     * Constructs a store.
+     * @param directory the directory the files are kept in as {@link Path}, created if it doesn't exist
+     */
+    public EventIndexStore(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Loads every saved index. Files that can't be read are skipped, and their calendars will be fully synced.
+     * @return the indexes as {@link List} of {@link EventIndex}
+     */
+    public List<EventIndex> loadAll() {
+        List<EventIndex> indexes = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return indexes;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path file : files) {
+                try (InputStream in = Files.newInputStream(file)) {
+                    indexes.add(read(in));
+                } catch (IOException | RuntimeException exception) {
+                    LOGGER.warn("Could not load the saved events in {}: {}", file, exception.getMessage());
+                }
+            }
+        } catch (IOException exception) {
+            LOGGER.error("Could not list the saved events in {}: {}", directory, exception.getMessage());
+        }
+        return indexes;
+    }
+
+    /**
+     * Saves an index, replacing its previous file.
+     * @param index the index as {@link EventIndex}
+     * @throws IOException if the file couldn't be written
+     */
+    public void save(EventIndex index) throws IOException {
+        Files.createDirectories(directory);
+        Path file = fileOf(index.getCalendarId());
+        Path temporary = Files.createTempFile(directory, "events", ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temporary)) {
+                write(index, out);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Deletes the file of a calendar no guild uses anymore.
+     * @param calendarId the id of the calendar as {@code String}
+     * @throws IOException if the file couldn't be deleted
+     */
+    public void delete(String calendarId) throws IOException {
+        Files.deleteIfExists(fileOf(calendarId));
+    }
+
+    private Path fileOf(String calendarId) throws IOException {
+        // calendar ids are e-mail like, encoding them keeps them a single valid file name
+        // (the String overload, since the Charset one needs Java 10)
+        return directory.resolve(URLEncoder.encode(calendarId, StandardCharsets.UTF_8.name()) + EXTENSION);
+    }
+
+    private static void write(EventIndex index, OutputStream out) throws IOException {
+        try (JsonGenerator json = JSON_FACTORY.createGenerator(out)) {
+            json.writeStartObject();
+            json.writeStringField("calendar_id", index.getCalendarId());
+            if (index.getSyncToken() != null) {
+                json.writeStringField("sync_token", index.getSyncToken());
+            }
+            json.writeNumberField("full_sync_at", index.getFullSyncAt());
+            json.writeNumberField("synced_at", index.getSyncedAt());
+            json.writeArrayFieldStart("events");
+            for (CalendarEvent event : index.getEvents()) {
+                json.writeStartObject();
+                json.writeStringField("id", event.getId());
+                writeOptional(json, "summary", event.getSummary());
+                writeOptional(json, "location", event.getLocation());
+                writeOptional(json, "link", event.getLink());
+                json.writeNumberField("start", event.getStart());
+                json.writeNumberField("end", event.getEnd());
+                json.writeBooleanField("all_day", event.isAllDay());
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+        }
+    }
+
+    private static void writeOptional(JsonGenerator json, String field, String value) throws IOException {
+        if (value != null) {
+            json.writeStringField(field, value);
+        }
+    }
+
+    private static EventIndex read(InputStream in) throws IOException {
+        String calendarId = null;
+        String syncToken = null;
+        long fullSyncAt = 0;
+        long syncedAt = 0;
+        List<CalendarEvent> events = new ArrayList<>();
+
+        try (JsonParser json = JSON_FACTORY.createParser(in)) {
+            expect(json.nextToken(), JsonToken.START_OBJECT);
+            while (json.nextToken() == JsonToken.FIELD_NAME) {
+                String field = json.getCurrentName();
+                JsonToken value = json.nextToken();
+                switch (field) {
+                    case "calendar_id":
+                        calendarId = json.getText();
+                        break;
+                    case "sync_token":
+                        syncToken = json.getText();
+                        break;
+                    case "full_sync_at":
+                        fullSyncAt = json.getLongValue();
+                        break;
+                    case "synced_at":
+                        syncedAt = json.getLongValue();
+                        break;
+                    case "events":
+                        expect(value, JsonToken.START_ARRAY);
+                        while (json.nextToken() == JsonToken.START_OBJECT) {
+                            events.add(readEvent(json));
+                        }
+                        break;
+                    default:
+                        // written by a newer version, ignore it
+                        json.skipChildren();
+                }
+            }
+        }
+
+        if (calendarId == null) {
+            throw new IOException("missing calendar_id");
+        }
+        return EventIndex.restore(calendarId, syncToken, fullSyncAt, syncedAt, events);
+    }
+
+    private static CalendarEvent readEvent(JsonParser json) throws IOException {
+        String id = null, summary = null, location = null, link = null;
+        long start = 0, end = 0;
+        boolean allDay = false;
+        while (json.nextToken() == JsonToken.FIELD_NAME) {
+            String field = json.getCurrentName();
+            json.nextToken();
+            switch (field) {
+                case "id":
+                    id = json.getText();
+                    break;
+                case "summary":
+                    summary = json.getText();
+                    break;
+                case "location":
+                    location = json.getText();
+                    break;
+                case "link":
+                    link = json.getText();
+                    break;
+                case "start":
+                    start = json.getLongValue();
+                    break;
+                case "end":
+                    end = json.getLongValue();
+                    break;
+                case "all_day":
+                    allDay = json.getBooleanValue();
+                    break;
+                default:
+                    json.skipChildren();
+            }
+        }
+        if (id == null) {
+            throw new IOException("event without an id");
+        }
+        return new CalendarEvent(id, summary, location, link, start, end, allDay);
+    }
+
+    private static void expect(JsonToken actual, JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new IOException("expected " + expected + " but found " + actual);
+        }
+    }
+}
@@ -1,33 +1,30 @@
 package org.acm.auth.commands;
 
 import com.vdurmont.emoji.EmojiParser;
-import io.github.cdimascio.dotenv.Dotenv;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
-import org.acm.auth.db.Tables;
+import org.acm.auth.managers.CalendarManager;
+import org.acm.auth.resilience.DependencyUnavailableException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.jooq.DSLContext;
-import org.jooq.SQLDialect;
-import org.jooq.impl.DSL;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class CalendarSetCommand extends Command {
     private static final Logger LOGGER = LogManager.getLogger(CalendarViewCommand.class);
-    private static final Dotenv env = Dotenv.load();
-    private static final String url = "jdbc:mariadb://localhost:3306";
-    private static final String username = env.get("MYSQL_USER");
-    private static final String password = env.get("MYSQL_PASSWORD");
+
+    private final CalendarManager calendars; // stores the calendar of each guild
 
     /**
      * Constructs a CalendarSet command
+     * @param calendars the calendar manager as {@link CalendarManager}
      */
-    public CalendarSetCommand() {
+    public CalendarSetCommand(CalendarManager calendars) {
         super(
         "calset", // name
         "Sets the calendar id that corresponds to the guild the command was executed.", // description
@@ -38,13 +35,23 @@ public class CalendarSetCommand extends Command {
         1, // maxArgs
         "", // usage
         new Permission[] { Permission.MESSAGE_MANAGE }, // botPerms
-        new Permission[] { Permission.ADMINISTRATOR, Permission.MANAGE_CHANNEL, Permission.MANAGE_SERVER }); // usrPerms
+        new Permission[] { Permission.ADMINISTRATOR, Permission.MANAGE_CHANNEL, Permission.MANAGE_SERVER }, // usrPerms
+        4, // maxConcurrency
+        15_000, // timeout
+        new RateLimit(1, 2, 30_000)); // rateLimit
+
+        this.calendars = calendars;
     }
 
     @Override
     public void invoke(MessageReceivedEvent event, String[] args) {
+        invokeAsync(event, args).toCompletableFuture().join();
+    }
+
+    @Override
+    public CompletionStage<?> invokeAsync(MessageReceivedEvent event, String[] args) {
         if(event.getAuthor().isBot())
-            return;
+            return CompletableFuture.completedFuture(null);
 
         String calendarId = args[0];
         calendarId = calendarId.replaceAll("\"","");
@@ -54,33 +61,36 @@ public class CalendarSetCommand extends Command {
                     "the calendar id and try executing again this command. "
                     + EmojiParser.parseToUnicode(":pray:"))
                     .queue();
-            return;
+            return CompletableFuture.completedFuture(null);
         }
 
         // the provided calendar id is valid so execute the insertion in the db
-        try (Connection conn = DriverManager.getConnection(url, username, password)) {
-            DSLContext create = DSL.using(conn, SQLDialect.MARIADB);
+        // (on a database thread, this one is free as soon as the write is submitted)
+        String newCalendarId = calendarId;
+        return calendars.setCalendarId(event.getGuild().getIdLong(), newCalendarId)
+                .thenRun(() -> {
+                    // notify the user that the insertion was successful
+                    event.getChannel().sendMessage("Server's calendar was successfully updated to **" + newCalendarId + "** " +
+                            EmojiParser.parseToUnicode(":tada:")).queue();
 
-            // if the guild id already exists update the corresponding calendar id
-            create.insertInto(Tables.CALENDARS, Tables.CALENDARS.GUILD_ID, Tables.CALENDARS.CALENDAR_ID)
-                    .values(event.getGuild().getId(), calendarId)
-                    .onDuplicateKeyUpdate()
-                    .set(Tables.CALENDARS.CALENDAR_ID, calendarId)
-                    .execute();
-
-            // notify the user that the insertion was successful
-            event.getChannel().sendMessage("Server's calendar was successfully updated to **" + calendarId + "** " +
-                    EmojiParser.parseToUnicode(":tada:")).queue();
-
-            // delete original message
-            event.getMessage().delete().queue();
-
-        } catch (SQLException e) { // a database access error occurred or the url is null
-            LOGGER.error(e.getMessage());
-            event.getChannel().sendMessage("There is an error with our database. Please try again later. " +
-                    EmojiParser.parseToUnicode(":innocent:"))
-                    .queue();
-        }
+                    // delete original message
+                    event.getMessage().delete().queue();
+                })
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                    if (cause instanceof DependencyUnavailableException || cause instanceof RejectedExecutionException) {
+                        // the database has been failing or is swamped, so we didn't even try
+                        event.getChannel().sendMessage("Our database isn't responding right now. Please try again in a bit. " +
+                                EmojiParser.parseToUnicode(":innocent:"))
+                                .queue();
+                    } else { // something went wrong while executing the SQL statement
+                        LOGGER.error(cause.getMessage());
+                        event.getChannel().sendMessage("There is an error with our database. Please try again later. " +
+                                EmojiParser.parseToUnicode(":innocent:"))
+                                .queue();
+                    }
+                    return null;
+                });
     }
 
     /**
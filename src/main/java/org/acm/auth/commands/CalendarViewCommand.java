@@ -1,26 +1,27 @@
 package org.acm.auth.commands;
 
-import com.google.api.services.calendar.Calendar;
 import com.vdurmont.emoji.EmojiParser;
-import io.github.cdimascio.dotenv.Dotenv;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
-import org.acm.auth.db.Tables;
+import org.acm.auth.managers.CalendarManager;
+import org.acm.auth.resilience.DependencyUnavailableException;
 import org.acm.auth.services.GoogleCalendar;
+import org.acm.auth.utils.HttpUtil;
+import org.acm.auth.utils.SingleFlight;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.jooq.*;
-import org.jooq.exception.DataAccessException;
-import org.jooq.exception.NoDataFoundException;
-import org.jooq.impl.DSL;
-import java.sql.Connection;
-import java.sql.DriverManager;
 
 import java.awt.*;
 import java.io.IOException;
-import java.sql.SQLException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Represents a command that displays the description of the calendar that corresponds to the guild
@@ -28,15 +29,23 @@ import java.sql.SQLException;
  */
 public class CalendarViewCommand extends Command {
     private static final Logger LOGGER = LogManager.getLogger(CalendarViewCommand.class);
-    private static final Dotenv env = Dotenv.load();
-    private static final String url = "jdbc:mariadb://localhost:3306";
-    private static final String username = env.get("MYSQL_USER");
-    private static final String password = env.get("MYSQL_PASSWORD");
+    // the calendar lookups in flight, by calendar id
+    private static final SingleFlight<String, com.google.api.services.calendar.model.Calendar> CALENDARS =
+            new SingleFlight<>("google_calendar");
+    // the threads that fetch the calendars, as many as the command may have invocations in flight
+    private static final ExecutorService FETCHERS = Executors.newFixedThreadPool(4, runnable -> {
+        Thread thread = new Thread(runnable, "calview-fetcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final CalendarManager calendars; // resolves the calendar of each guild, from memory whenever it can
 
     /**
      * Constructs a CalendarView command
+     * @param calendars the calendar manager as {@link CalendarManager}
      */
-    public CalendarViewCommand() {
+    public CalendarViewCommand(CalendarManager calendars) {
         super(
         "calview", // name
         "Displays the description of the calendar that corresponds to the guild the command was executed.", // description
@@ -47,63 +56,128 @@ public class CalendarViewCommand extends Command {
         0, // maxArgs
         "", // usage
         new Permission[] { Permission.MESSAGE_EMBED_LINKS }, // botPerms
-        new Permission[] {}); // usrPerms
+        new Permission[] {}, // usrPerms
+        4, // maxConcurrency
+        15_000, // timeout
+        new RateLimit(2, 10, 30_000)); // rateLimit
+
+        this.calendars = calendars;
     }
 
     @Override
     public void invoke(MessageReceivedEvent event, String[] args) {
+        invokeAsync(event, args).toCompletableFuture().join();
+    }
+
+    @Override
+    public CompletionStage<?> invokeAsync(MessageReceivedEvent event, String[] args) {
         if(event.getAuthor().isBot())
-            return;
+            return CompletableFuture.completedFuture(null);
 
         if(!GoogleCalendar.utilityObjectsInitialized(event, args))
-            return;
+            return CompletableFuture.completedFuture(null);
+
+        // completes once the command has replied, or gets cancelled if the command takes too long
+        CompletableFuture<Void> reply = new CompletableFuture<>();
+        // the query (if the guild isn't cached) runs on a database thread, and the calendar is fetched on one
+        // of ours, so no thread waits for the other
+        calendars.getCalendarId(event.getGuild().getIdLong())
+                .thenCompose(calendarId -> replyWithCalendar(event, args, calendarId, reply))
+                .exceptionally(e -> {
+                    if (reply.isCancelled()) {
+                        // the command took too long and was aborted, the user has already been told
+                        return null;
+                    }
+                    Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                    if (cause instanceof DependencyUnavailableException || cause instanceof RejectedExecutionException) {
+                        // the database has been failing or is swamped, so we didn't even try
+                        event.getChannel().sendMessage("Our database isn't responding right now. Please try again in a bit. " +
+                                EmojiParser.parseToUnicode(":innocent:"))
+                                .queue();
+                    } else { // something went wrong while executing a SQL statement from jOOQ
+                        LOGGER.error(cause.getMessage());
+                        event.getChannel().sendMessage("There is an error with our database. Please try again later. " +
+                                EmojiParser.parseToUnicode(":innocent:"))
+                                .queue();
+                    }
+                    return null;
+                })
+                .thenRun(() -> reply.complete(null));
+        return reply;
+    }
 
-        Record calendarRecord;
-        try {
-            calendarRecord = fetchCalendarId(event,args);
+    private CompletionStage<Void> replyWithCalendar(MessageReceivedEvent event, String[] args, String calendarId,
+                                                    CompletableFuture<Void> reply) {
+        if (reply.isCancelled()) {
+            // aborted while the calendar id was looked up
+            return CompletableFuture.completedFuture(null);
+        }
 
-        } catch (NoDataFoundException e) { // the query returned no rows
+        if (calendarId == null) { // the guild hasn't set a calendar
             event.getChannel().sendMessage("There is no calendar associated with the current server! Please set the " +
                     "server's calendar with the **calset** command and then try again executing this command. "
                     + EmojiParser.parseToUnicode(":blush:"))
                     .queue();
-            return;
-
-        } catch (SQLException|DataAccessException e) {  // something went wrong while executing a SQL statement from jOOQ ( DataAccessException )
-                                                        // a database access error occurred or the url is null ( SQLException )
-            LOGGER.error(e.getMessage());
-            event.getChannel().sendMessage("There is an error with our database. Please try again later. " +
-                    EmojiParser.parseToUnicode(":innocent:"))
-                    .queue();
-            return;
+            return CompletableFuture.completedFuture(null);
         }
 
-        // the query returned successfully the calendar id
-        String CALENDAR_ID = calendarRecord.get(Tables.CALENDARS.CALENDAR_ID);
-        Calendar service = GoogleCalendar.getCalendarService();
-
-        try {
-            // get the calendar that corresponds to the guild from which the command was executed
-            com.google.api.services.calendar.model.Calendar calendar = service
-                .calendars()
-                .get(CALENDAR_ID)
-                .execute();
-
-            MessageEmbed message = buildMessageEmbed(calendar,event,args);
-
-            // send the message in the channel the command was invoked
-            event.getChannel()
-                .sendMessage(message)
-                .queue();
-
-        } catch (IOException exception) {
-            LOGGER.warn(exception.getMessage());
-            event.getChannel()
-                .sendMessage("Could not retrieve the information about calendar. I can't" +
-                        " execute the command. Maybe the server's calendar id is not valid. Also don't forget sharing " +
-                        "the calendar with me and giving me access to managing events! " + EmojiParser.parseToUnicode(":spiral_calendar_pad:"))
-                .queue();
-        }
+        // get the calendar that corresponds to the guild from which the command was executed
+        // (guilds sharing a calendar, or users spamming the command, share a single request)
+        CompletableFuture<com.google.api.services.calendar.model.Calendar> lookup =
+                CALENDARS.execute(calendarId, () -> fetchCalendar(calendarId));
+        // cancelling the reply (e.g. when the command times out) has to cancel the lookup it waits on
+        HttpUtil.linkCancellation(reply, lookup);
+
+        return lookup
+                .thenAccept(calendar -> {
+                    if (reply.isCancelled()) {
+                        // too late, the user has already been told that the command took too long
+                        return;
+                    }
+                    MessageEmbed message = buildMessageEmbed(calendar,event,args);
+
+                    // send the message in the channel the command was invoked
+                    event.getChannel()
+                        .sendMessage(message)
+                        .queue();
+                })
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                    if (reply.isCancelled() || cause instanceof CancellationException) {
+                        // the command took too long and was aborted, the user has already been told
+                        return null;
+                    }
+                    if (cause instanceof DependencyUnavailableException) {
+                        // Google has been failing, so we didn't even try
+                        event.getChannel()
+                            .sendMessage("Google Calendar isn't responding right now. Please try again in a bit. " +
+                                    EmojiParser.parseToUnicode(":spiral_calendar_pad:"))
+                            .queue();
+                        return null;
+                    }
+                    LOGGER.warn(cause.getMessage());
+                    event.getChannel()
+                        .sendMessage("Could not retrieve the information about calendar. I can't" +
+                                " execute the command. Maybe the server's calendar id is not valid. Also don't forget sharing " +
+                                "the calendar with me and giving me access to managing events! " + EmojiParser.parseToUnicode(":spiral_calendar_pad:"))
+                        .queue();
+                    return null;
+                });
+    }
+
+    /**
+     * Fetches a calendar through {@link GoogleCalendar#getCalendar(String)}, on one of the fetcher threads.
+     * @param calendarId the id of the calendar as {@code String}
+     * @return the calendar as {@link CompletableFuture}
+     */
+    private static CompletableFuture<com.google.api.services.calendar.model.Calendar> fetchCalendar(String calendarId) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return GoogleCalendar.getCalendar(calendarId);
+            } catch (IOException exception) {
+                throw new CompletionException(exception);
+            }
+        }, FETCHERS);
     }
 
     /**
@@ -132,19 +206,4 @@ public class CalendarViewCommand extends Command {
                         calendar.getId(),true,true))
                 .build();
     }
-
-    /**
-     * Returns the calendar id of the guild the command was executed.
-     * @return the record of the table CALENDARS as {@link org.jooq.Record}
-     * @throws SQLException if a database access error occurred or the url is null
-     * @throws DataAccessException if something went wrong while executing a SQL statement from jOOQ
-     */
-    private Record fetchCalendarId(MessageReceivedEvent event, String[] args) throws SQLException, DataAccessException{
-        try (Connection conn = DriverManager.getConnection(url, username, password)) {
-            DSLContext create = DSL.using(conn, SQLDialect.MARIADB);
-
-            // fetch guild's corresponding calendar
-            return create.fetchSingle(Tables.CALENDARS, Tables.CALENDARS.GUILD_ID.eq(event.getGuild().getId()));
-        }
-    }
 }
@@ -0,0 +1,39 @@
+package org.acm.auth.commands;
+
+import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import org.acm.auth.resilience.CircuitBreaker;
+import org.acm.auth.resilience.Dependency;
+import org.acm.auth.resilience.DependencyUnavailableException;
+
+public class CircuitsCommand extends Command {
+    private static final Permission[] EMPTY_PERMS = {};
+
+    public CircuitsCommand() {
+        super("circuits", "Shows the circuit breaker and bulkhead of each upstream service", false, true, new String[]{"breakers"}, 0, 0, "", EMPTY_PERMS, EMPTY_PERMS);
+    }
+
+    @Override
+    public void invoke(MessageReceivedEvent event, String[] args) {
+        StringBuilder sb = new StringBuilder("```\n");
+        sb.append(String.format("%-16s %-10s %7s %7s %6s %9s %9s %9s%n",
+                "dependency", "state", "failed", "slow", "calls", "in flight", "rej/open", "rej/full"));
+        for (Dependency dependency : Dependency.all()) {
+            CircuitBreaker breaker = dependency.getBreaker();
+            CircuitBreaker.State state = breaker.getState();
+            long remaining = breaker.getRemainingOpenMillis();
+            sb.append(String.format("%-16s %-10s %6d%% %6d%% %6d %9s %9d %9d%n",
+                    dependency.getName(),
+                    // show when an open circuit starts probing again
+                    state == CircuitBreaker.State.OPEN ? state + " " + (remaining + 999) / 1000 + "s" : state,
+                    breaker.getFailureRate(),
+                    breaker.getSlowRate(),
+                    breaker.getRecordedCalls(),
+                    dependency.getBulkhead().getInFlight() + "/" + dependency.getBulkhead().getMaxConcurrent(),
+                    dependency.getRejections(DependencyUnavailableException.Reason.CIRCUIT_OPEN),
+                    dependency.getRejections(DependencyUnavailableException.Reason.BULKHEAD_FULL)));
+        }
+        sb.append("```");
+        event.getChannel().sendMessage(sb.toString()).queue();
+    }
+}
@@ -2,6 +2,11 @@ package org.acm.auth.commands;
 
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.api.requests.GatewayIntent;
+
+import java.util.EnumSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 public abstract class Command {
     private final String name;              // the command's name/label
@@ -14,10 +19,19 @@ public abstract class Command {
     private final String usage;             // a template for the command's usage, explaining what each parameter means
     private final Permission[] botPerms;    // an array with the required permission that the bot has to have
     private final Permission[] usrPerms;    // an array with the required permission that the user has to have
+    private final long botPermsRaw;         // the required bot perms as a raw bitmask, precomputed for dispatch
+    private final long usrPermsRaw;         // the required user perms as a raw bitmask, precomputed for dispatch
+    private final int maxConcurrency;       // the maximum amount of invocations of this command that may run at once
+    private final long timeout;             // the time (in milliseconds) after which a running invocation is aborted
+    private final RateLimit rateLimit;      // how often users and guilds may invoke the command
 
     // static object for empty perms to be used in the default constructor
     private static final Permission[] EMPTY_PERMS = {};
 
+    // defaults for commands that don't specify their own execution limits
+    private static final int DEFAULT_MAX_CONCURRENCY = 16;
+    private static final long DEFAULT_TIMEOUT = 10_000;
+
     public Command(String name, String description, boolean guildOnly, String[] alias) {
         this.name = name;
         this.description = description;
@@ -29,9 +43,19 @@ public abstract class Command {
         this.usage = "";                    // default: no usage (this means the command doesn't need any parameters)
         this.botPerms = EMPTY_PERMS;        // default: no required permissions for the bot
         this.usrPerms = EMPTY_PERMS;        // default: no required permissions for the user
+        this.botPermsRaw = 0;
+        this.usrPermsRaw = 0;
+        this.maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+        this.timeout = DEFAULT_TIMEOUT;
+        this.rateLimit = RateLimit.NONE;    // default: cmd can be used as often as users want
     }
 
     public Command(String name, String description, boolean guildOnly, boolean devOnly, String[] alias, int minArgs, int maxArgs, String usage, Permission[] botPerms, Permission[] usrPerms) {
+        this(name, description, guildOnly, devOnly, alias, minArgs, maxArgs, usage, botPerms, usrPerms,
+                DEFAULT_MAX_CONCURRENCY, DEFAULT_TIMEOUT, RateLimit.NONE);
+    }
+
+    public Command(String name, String description, boolean guildOnly, boolean devOnly, String[] alias, int minArgs, int maxArgs, String usage, Permission[] botPerms, Permission[] usrPerms, int maxConcurrency, long timeout, RateLimit rateLimit) {
         this.name = name;
         this.description = description;
         this.guildOnly = guildOnly;
@@ -42,10 +66,29 @@ public abstract class Command {
         this.usage = usage;
         this.botPerms = botPerms;
         this.usrPerms = usrPerms;
+        this.botPermsRaw = Permission.getRaw(botPerms);
+        this.usrPermsRaw = Permission.getRaw(usrPerms);
+        this.maxConcurrency = maxConcurrency;
+        this.timeout = timeout;
+        this.rateLimit = rateLimit;
     }
 
     public abstract void invoke(MessageReceivedEvent event, String[] args);
 
+    /**
+     * Invokes the command without waiting for the I/O it starts.
+     * The returned stage completes once the command is done, and may be cancelled if it takes too long.
+     * By default the command runs through {@link #invoke} and is already done when this method returns;
+     * commands that wait on remote services override it, so that no thread is held while waiting.
+     * @param event the event that triggered the command as {@link MessageReceivedEvent}
+     * @param args the command's arguments as {@code String[]}
+     * @return the completion of the command as {@link CompletionStage}
+     */
+    public CompletionStage<?> invokeAsync(MessageReceivedEvent event, String[] args) {
+        invoke(event, args);
+        return CompletableFuture.completedFuture(null);
+    }
+
     public String getName() {
         return name;
     }
@@ -85,4 +128,33 @@ public abstract class Command {
     public Permission[] getUsrPerms() {
         return usrPerms;
     }
+
+    public long getBotPermsRaw() {
+        return botPermsRaw;
+    }
+
+    public long getUsrPermsRaw() {
+        return usrPermsRaw;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public RateLimit getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * Returns the gateway intents this command needs, on top of receiving the messages that invoke it.
+     * Commands that only reply through REST calls (e.g. sending messages or adding reactions) need none.
+     * @return the required intents as {@link EnumSet} of {@link GatewayIntent}
+     */
+    public EnumSet<GatewayIntent> getIntents() {
+        return EnumSet.noneOf(GatewayIntent.class);
+    }
 }
@@ -3,13 +3,24 @@ package org.acm.auth.commands;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.MessageChannel;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
-import okhttp3.HttpUrl;
+import org.acm.auth.config.ConfigFile;
+import org.acm.auth.config.ConfigKey;
+import org.acm.auth.resilience.DependencyUnavailableException;
+import org.acm.auth.services.Giphy;
+import org.acm.auth.utils.HttpException;
 import org.acm.auth.utils.HttpUtil;
-import org.json.JSONArray;
-import org.json.JSONObject;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
-public class GifCommand extends Command {
-    private final String key; // the key used to query the GIPHY API
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+public class GifCommand extends Command implements ConfigFile.Listener {
+    private static final Logger LOGGER = LogManager.getLogger(GifCommand.class);
+
+    private final Giphy giphy; // looks up the GIFs, from memory whenever it can
 
     private static final Permission[] NO_PERMS = {};
 
@@ -34,94 +45,66 @@ public class GifCommand extends Command {
                 // botPerms:
                 NO_PERMS,
                 // usrPerms:
-                NO_PERMS
+                NO_PERMS,
+                // maxConcurrency: (every invocation holds a GIPHY request)
+                8,
+                // timeout:
+                10_000,
+                // rateLimit: (GIPHY's daily quota is shared by everyone)
+                new RateLimit(3, 20, 60_000)
         );
 
-        this.key = key;
+        this.giphy = new Giphy(key);
     }
 
     @Override
-    public void invoke(MessageReceivedEvent event, String[] args) {
-                                                            // build the URL endpoint we need
-        HttpUrl url = buildUrl(
-                args.length > 0                             // if the user supplied some keywords
-                        ? String.join(" ", args)    // then combine them with a space between each one
-                        : null                              // otherwise default to null, which means random gif
-        );
-
-        String response = HttpUtil.get(url);        // perform a GET request
-        if (response == null) {                     // if the server failed to reply
-            showErrorMessage(event.getChannel());   // show a generic error message
-            return;                                 // and stop the command's execution
-        }
-
-        JSONObject json = new JSONObject(response);
-        JSONObject meta = json.getJSONObject("meta");
-        int statusCode = meta.getInt("status");
-        if (statusCode == 429) {
-            // we got rate limited! no more GIFs for today
-            event.getChannel().sendMessage("I've reached my limit for today :(").queue();
-            return;
-        } else if (statusCode != 200) {
-            // something went wrong unexpectedly!
-            // we need to check if we did something wrong and fix it by reviewing the logs,
-            // or if it was simply an error on the API's side which we can ignore
-            System.err.printf("statusCode != 200: %s (%d)%n", meta.getString("msg"), statusCode);
-            showErrorMessage(event.getChannel());
-            return;
-        }
-
-        String embedUrl;
-        if (json.get("data") instanceof JSONArray) {
-            // when searching based on a keyword, the API returns an array of responses
-            JSONArray data = json.getJSONArray("data");
-            if (data.length() == 0) {
-                // if the array is empty, it means that the query had no results
-                event.getChannel().sendMessage("There are no results for your query!").queue();
-                return;
-            }
-            // otherwise, get the first result and retrieve its embed URL
-            embedUrl = data.getJSONObject(0).getString("embed_url");
-        } else if (json.get("data") instanceof JSONObject) {
-            // when polling for a random GIF, then we get a single result
-            // which we can retrieve the embed URL from straight away
-            embedUrl = json.getJSONObject("data").getString("embed_url");
-        } else {
-            // if the data object is neither a JSONArray nor a JSONObject,
-            // then something must've gone wrong since it's an unexpected type.
-            System.err.println("Expected JSONArray/JSONObject, found: " + json.get("data"));
-            showErrorMessage(event.getChannel());
-            return;
-        }
+    public void onConfigReload(ConfigFile.Snapshot previous, ConfigFile.Snapshot current) {
+        // a rotated key is used by the next invocation, without restarting the bot
+        giphy.setKey(current.getValue(ConfigKey.GIPHY_KEY));
+    }
 
-        // if all went well, we can reply with the embed URL
-        event.getChannel().sendMessage(embedUrl).queue();
+    @Override
+    public void invoke(MessageReceivedEvent event, String[] args) {
+        invokeAsync(event, args).toCompletableFuture().join();
     }
 
-    private HttpUrl buildUrl(String query) {
-        // build a new HttpUrl according to the following resource:
-        // https://square.github.io/okhttp/4.x/okhttp/okhttp3/-http-url/
-        HttpUrl.Builder builder = new HttpUrl.Builder()
-                .scheme("https")
-                .host("api.giphy.com")
-                .addPathSegment("v1")
-                .addPathSegment("gifs")
-                .addPathSegment(
-                        query == null       // if the user supplied no arguments
-                                ? "random"  // then search for a random GIF
-                                : "search"  // otherwise perform a query search
-                )
-                .addQueryParameter("api_key", key);
+    @Override
+    public CompletionStage<?> invokeAsync(MessageReceivedEvent event, String[] args) {
+        CompletableFuture<String> lookup = args.length > 0              // if the user supplied some keywords
+                ? giphy.search(String.join(" ", args))          // then combine them with a space between each one
+                : giphy.random();                                       // otherwise get a random gif
 
-        if (query != null) {
-            builder // if we have a query string
-                    // pass it to the URL's query parameters
-                    .addQueryParameter("q", query)
-                    // and limit the results to 1 (we don't need more)
-                    .addQueryParameter("limit", "1");
-        }
+        MessageChannel channel = event.getChannel();
+        CompletableFuture<Void> reply = lookup
+                .thenAccept(embedUrl -> {
+                    if (embedUrl.equals(Giphy.NO_RESULTS)) {
+                        // the query had no results
+                        channel.sendMessage("There are no results for your query!").queue();
+                    } else {
+                        // if all went well, we can reply with the embed URL
+                        channel.sendMessage(embedUrl).queue();
+                    }
+                })
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                    if (cause instanceof DependencyUnavailableException) {
+                        // GIPHY has been failing, so we didn't even try
+                        channel.sendMessage("GIPHY isn't responding right now, try again in a bit!").queue();
+                    } else if (cause instanceof HttpException && ((HttpException) cause).getStatusCode() == 429) {
+                        // we got rate limited! no more GIFs for today
+                        channel.sendMessage("I've reached my limit for today :(").queue();
+                    } else if (!(cause instanceof CancellationException)) {
+                        // something went wrong unexpectedly! we need to check if we did something wrong
+                        // and fix it by reviewing the logs, or if it was simply an error on the API's side
+                        // (a cancelled lookup was aborted, and the user has already been told)
+                        LOGGER.warn("GIPHY lookup failed: {}", cause.getMessage());
+                        showErrorMessage(channel);
+                    }
+                    return null;
+                });
 
-        return builder.build();
+        // cancelling the reply (e.g. when the command times out) has to cancel the lookup it waits on
+        return HttpUtil.linkCancellation(reply, lookup);
     }
 
     private void showErrorMessage(MessageChannel channel) {
@@ -1,12 +1,14 @@
 package org.acm.auth.commands;
 
-import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.api.requests.GatewayIntent;
+import org.acm.auth.managers.PollManager;
 import org.acm.auth.utils.Emoji;
 
-import java.awt.*;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -16,7 +18,9 @@ public class PollCommand extends Command {
     private static final Permission[] BOT_PERMS = {Permission.MESSAGE_EMBED_LINKS, Permission.MESSAGE_MANAGE};
     private static final Permission[] USER_PERMS = {};
 
-    public PollCommand() {
+    private final PollManager polls; // tallies the votes of the posted polls
+
+    public PollCommand(PollManager polls) {
         super(
                 "poll",
                 "Creates a poll",
@@ -27,8 +31,19 @@ public class PollCommand extends Command {
                 20, // Maximum Number of Reactions is 20, and it is kinda overkill to have more than 20 options
                 "\"Question\" \"Option1\" \"Option2\" ... \"OptionN\"",
                 BOT_PERMS,
-                USER_PERMS
+                USER_PERMS,
+                4, // maxConcurrency
+                10_000, // timeout
+                new RateLimit(2, 10, 60_000) // rateLimit: every poll costs up to 21 REST calls
         );
+
+        this.polls = polls;
+    }
+
+    @Override
+    public EnumSet<GatewayIntent> getIntents() {
+        // the votes are tallied from the reactions members add and remove
+        return EnumSet.of(GatewayIntent.GUILD_MESSAGE_REACTIONS);
     }
 
     @Override
@@ -49,28 +64,18 @@ public class PollCommand extends Command {
         }
 
         String question = args.get(0);
-
-        // Create the EmbedBuilder instance
-        EmbedBuilder eb = new EmbedBuilder();
-
-        eb.setTitle(question, null);
-        eb.setColor(Color.CYAN);
-
-        // REGIONAL_INDICATORS[i-1] since we start the loop from 1 and not 0
-        StringBuilder sb = new StringBuilder();
-        for (int i = 1; i < args.size(); i++) {
-            sb.append(Emoji.REGIONAL_INDICATORS[i - 1]).append("\t").append(args.get(i)).append("\n");
-        }
-
-        eb.setDescription(sb.toString());
+        // the answers are everything after the question
+        String[] options = args.subList(1, args.size()).toArray(new String[0]);
+        boolean singleVote = polls.isSingleVote();
 
         // Delete the message that asked for the poll
         event.getMessage().delete().queue();
 
-        // length = number of answers so we reduce 1 that corresponds to the question
-        int length = args.size() - 1;
-        event.getChannel().sendMessage(eb.build()).queue(message -> {
-            for (int i = 0; i < length; i++) {
+        // the embed starts without votes, and is edited as they come in
+        MessageEmbed embed = PollManager.buildEmbed(question, options, new int[options.length], singleVote);
+        event.getChannel().sendMessage(embed).queue(message -> {
+            polls.track(message, question, options, singleVote);
+            for (int i = 0; i < options.length; i++) {
                 message.addReaction(Emoji.REGIONAL_INDICATORS[i]).queue();
             }
         });
@@ -0,0 +1,93 @@
+package org.acm.auth.commands;
+
+import com.vdurmont.emoji.EmojiParser;
+import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import org.acm.auth.managers.PrefixManager;
+import org.acm.auth.resilience.DependencyUnavailableException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+
+
+/**
+ * Represents a command that displays or changes the command prefix of the guild it was invoked from.
+ */
+public class PrefixCommand extends Command {
+    private static final Logger LOGGER = LogManager.getLogger(PrefixCommand.class);
+
+    private final PrefixManager prefixes;
+
+    /**
+     * Constructs a Prefix command
+     * @param prefixes the manager that stores the guild prefixes as {@link PrefixManager}
+     */
+    public PrefixCommand(PrefixManager prefixes) {
+        super(
+        "prefix", // name
+        "Displays or changes the command prefix of the guild the command was executed.", // description
+        true, // guildOnly
+        false, // devOnly
+        new String[] {"setprefix"}, // alias
+        0, // minArgs
+        1, // maxArgs
+        "(new prefix | reset)", // usage
+        new Permission[] {}, // botPerms
+        new Permission[] { Permission.MANAGE_SERVER }, // usrPerms
+        2, // maxConcurrency
+        10_000, // timeout
+        new RateLimit(1, 2, 30_000)); // rateLimit
+
+        this.prefixes = prefixes;
+    }
+
+    @Override
+    public void invoke(MessageReceivedEvent event, String[] args) {
+        invokeAsync(event, args).toCompletableFuture().join();
+    }
+
+    @Override
+    public CompletionStage<?> invokeAsync(MessageReceivedEvent event, String[] args) {
+        long guildId = event.getGuild().getIdLong();
+
+        if (args.length == 0) {
+            event.getChannel().sendMessage("The prefix of this server is **"
+                    + prefixes.getPrefix(guildId) + "**").queue();
+            return CompletableFuture.completedFuture(null);
+        }
+
+        String prefix = args[0];
+        if (prefix.length() > PrefixManager.MAX_PREFIX_LENGTH) {
+            event.getChannel().sendMessage("A prefix can be at most " + PrefixManager.MAX_PREFIX_LENGTH
+                    + " characters long!").queue();
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // the write runs on a database thread, this one is free as soon as it's submitted
+        CompletionStage<Void> write = prefix.equalsIgnoreCase("reset")
+                ? prefixes.resetPrefix(guildId)
+                : prefixes.setPrefix(guildId, prefix);
+        return write
+                .thenRun(() -> event.getChannel().sendMessage("The prefix of this server is now **" +
+                        prefixes.getPrefix(guildId) + "** " + EmojiParser.parseToUnicode(":tada:")).queue())
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                    if (cause instanceof DependencyUnavailableException || cause instanceof RejectedExecutionException) {
+                        // the database has been failing or is swamped, so we didn't even try
+                        event.getChannel().sendMessage("Our database isn't responding right now. Please try again in a bit. " +
+                                EmojiParser.parseToUnicode(":innocent:"))
+                                .queue();
+                    } else { // something went wrong while executing the SQL statement
+                        LOGGER.error(cause.getMessage());
+                        event.getChannel().sendMessage("There is an error with our database. Please try again later. " +
+                                EmojiParser.parseToUnicode(":innocent:"))
+                                .queue();
+                    }
+                    return null;
+                });
+    }
+}
@@ -0,0 +1,43 @@
+package org.acm.auth.commands;
+
+/**
+ * Describes how often a command may be used, both by a single user and by a whole guild.
+ * Each limit allows a burst of up to that many invocations, after which invocations are
+ * allowed again at an even pace over the window.
+ */
+public final class RateLimit {
+    // no limits at all, used by cheap commands that don't hit any upstream service
+    public static final RateLimit NONE = new RateLimit(0, 0, 0);
+
+    private final int userLimit;    // the invocations allowed per user within the window (0 = unlimited)
+    private final int guildLimit;   // the invocations allowed per guild within the window (0 = unlimited)
+    private final long window;      // the window's length in milliseconds
+
+    /**
+     * Constructs a rate limit.
+     * @param userLimit the invocations allowed per user within the window as {@code int}, 0 for unlimited
+     * @param guildLimit the invocations allowed per guild within the window as {@code int}, 0 for unlimited
+     * @param window the window's length in milliseconds as {@code long}
+     */
+    public RateLimit(int userLimit, int guildLimit, long window) {
+        this.userLimit = userLimit;
+        this.guildLimit = guildLimit;
+        this.window = window;
+    }
+
+    public int getUserLimit() {
+        return userLimit;
+    }
+
+    public int getGuildLimit() {
+        return guildLimit;
+    }
+
+    public long getWindow() {
+        return window;
+    }
+
+    public boolean isUnlimited() {
+        return userLimit <= 0 && guildLimit <= 0;
+    }
+}
@@ -0,0 +1,46 @@
+package org.acm.auth.commands;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.api.sharding.ShardManager;
+import org.acm.auth.managers.ShardMonitor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+public class ShardsCommand extends Command {
+    private static final Permission[] EMPTY_PERMS = {};
+
+    private final ShardMonitor monitor;
+
+    public ShardsCommand(ShardMonitor monitor) {
+        super("shards", "Shows the status, gateway ping and event rate of each shard", false, true, new String[]{}, 0, 0, "", EMPTY_PERMS, EMPTY_PERMS);
+        this.monitor = monitor;
+    }
+
+    @Override
+    public void invoke(MessageReceivedEvent event, String[] args) {
+        ShardManager shardManager = event.getJDA().getShardManager();
+        List<JDA> shards = shardManager == null
+                ? Collections.singletonList(event.getJDA())
+                : new ArrayList<>(shardManager.getShards());
+        shards.sort(Comparator.comparingInt(jda -> jda.getShardInfo().getShardId()));
+
+        StringBuilder sb = new StringBuilder("```\n");
+        sb.append(String.format("%-6s %-26s %8s %8s %10s%n", "shard", "status", "ping", "guilds", "events/s"));
+        for (JDA jda : shards) {
+            int shardId = jda.getShardInfo().getShardId();
+            sb.append(String.format("%-6d %-26s %6dms %8d %10.1f%n",
+                    shardId,
+                    jda.getStatus(),
+                    jda.getGatewayPing(),
+                    jda.getGuildCache().size(),
+                    monitor.getEventRate(shardId)));
+        }
+        sb.append("```");
+        event.getChannel().sendMessage(sb.toString()).queue();
+    }
+}
@@ -0,0 +1,63 @@
+package org.acm.auth.commands;
+
+import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import org.acm.auth.metrics.Counter;
+import org.acm.auth.metrics.LatencyHistogram;
+import org.acm.auth.metrics.Metric;
+import org.acm.auth.metrics.Metrics;
+
+public class StatsCommand extends Command {
+    private static final Permission[] EMPTY_PERMS = {};
+
+    public StatsCommand() {
+        super("stats", "Shows latency percentiles and rejection counts", false, true, new String[]{}, 0, 0, "", EMPTY_PERMS, EMPTY_PERMS);
+    }
+
+    @Override
+    public void invoke(MessageReceivedEvent event, String[] args) {
+        StringBuilder sb = new StringBuilder("```\n");
+
+        sb.append(String.format("%-28s %8s %8s %8s %8s%n", "command (outcome)", "p50", "p99", "max", "count"));
+        appendHistograms(sb, Metrics.named(Metrics.COMMAND_LATENCY), "command");
+
+        sb.append(String.format("%n%-28s %8s %8s %8s %8s%n", "upstream (outcome)", "p50", "p99", "max", "count"));
+        appendHistograms(sb, Metrics.named(Metrics.UPSTREAM_LATENCY), "upstream");
+
+        sb.append(String.format("%n%-28s %8s%n", "rejection", "count"));
+        for (Metric metric : Metrics.named(Metrics.COMMAND_REJECTIONS)) {
+            sb.append(String.format("%-28s %8d%n", metric.getLabel("reason"), ((Counter) metric).get()));
+        }
+
+        // keep room for the closing backticks
+        String stats = sb.length() > Message.MAX_CONTENT_LENGTH - 4
+                ? sb.substring(0, Message.MAX_CONTENT_LENGTH - 4)
+                : sb.toString();
+        event.getChannel().sendMessage(stats + "```").queue();
+    }
+
+    private static void appendHistograms(StringBuilder sb, Iterable<Metric> metrics, String label) {
+        for (Metric metric : metrics) {
+            LatencyHistogram histogram = (LatencyHistogram) metric;
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            String name = metric.getLabel(label) + " (" + metric.getLabel("outcome") + ")";
+            sb.append(String.format("%-28s %8s %8s %8s %8d%n", name,
+                    formatMicros(histogram.getPercentile(0.5)),
+                    formatMicros(histogram.getPercentile(0.99)),
+                    formatMicros(histogram.getMax()),
+                    histogram.getCount()));
+        }
+    }
+
+    private static String formatMicros(long micros) {
+        if (micros < 1_000) {
+            return micros + "us";
+        } else if (micros < 1_000_000) {
+            return String.format("%.1fms", micros / 1_000.0);
+        }
+        return String.format("%.2fs", micros / 1_000_000.0);
+    }
+}
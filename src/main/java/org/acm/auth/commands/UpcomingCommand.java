@@ -0,0 +1,181 @@
+package org.acm.auth.commands;
+
+import com.vdurmont.emoji.EmojiParser;
+import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import org.acm.auth.calendar.CalendarEvent;
+import org.acm.auth.calendar.EventIndex;
+import org.acm.auth.managers.CalendarManager;
+import org.acm.auth.managers.EventSyncManager;
+import org.acm.auth.resilience.DependencyUnavailableException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.awt.*;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Represents a command that lists the next events of the calendar of the guild it was invoked from.
+ * The events are read from the calendar's {@link EventIndex}, so the command never calls Google.
+ */
+public class UpcomingCommand extends Command {
+    private static final Logger LOGGER = LogManager.getLogger(UpcomingCommand.class);
+
+    private static final int DEFAULT_COUNT = 5;
+    private static final int MAX_COUNT = 10;
+    // all-day events are dates at midnight UTC, so they're shown as dates instead of as times in the reader's zone
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("EEE d MMM yyyy").withZone(ZoneOffset.UTC);
+
+    private final CalendarManager calendars; // resolves the calendar of each guild
+    private final EventSyncManager events;   // keeps the events of each calendar
+
+    /**
+     * Constructs an Upcoming command
+     * @param calendars the calendar manager as {@link CalendarManager}
+     * @param events the event sync manager as {@link EventSyncManager}
+     */
+    public UpcomingCommand(CalendarManager calendars, EventSyncManager events) {
+        super(
+        "upcoming", // name
+        "Lists the next events of the calendar that corresponds to the guild the command was executed.", // description
+        true, // guildOnly
+        false, // devOnly
+        new String[] {"events", "next"}, // alias
+        0, // minArgs
+        1, // maxArgs
+        "[count]", // usage
+        new Permission[] { Permission.MESSAGE_EMBED_LINKS }, // botPerms
+        new Permission[] {}, // usrPerms
+        16, // maxConcurrency
+        10_000, // timeout
+        new RateLimit(3, 10, 30_000)); // rateLimit
+
+        this.calendars = calendars;
+        this.events = events;
+    }
+
+    @Override
+    public void invoke(MessageReceivedEvent event, String[] args) {
+        invokeAsync(event, args).toCompletableFuture().join();
+    }
+
+    @Override
+    public CompletionStage<?> invokeAsync(MessageReceivedEvent event, String[] args) {
+        if(event.getAuthor().isBot())
+            return CompletableFuture.completedFuture(null);
+
+        int count = DEFAULT_COUNT;
+        if (args.length > 0) {
+            try {
+                count = Integer.parseInt(args[0]);
+            } catch (NumberFormatException e) {
+                count = 0;
+            }
+            if (count < 1 || count > MAX_COUNT) {
+                event.getChannel().sendMessage("Please ask for 1 to " + MAX_COUNT + " events. " +
+                        EmojiParser.parseToUnicode(":pray:")).queue();
+                return CompletableFuture.completedFuture(null);
+            }
+        }
+
+        int limit = count;
+        // the calendar id is almost always cached, and the events are in memory, so this rarely waits for anything
+        return calendars.getCalendarId(event.getGuild().getIdLong())
+                .thenAccept(calendarId -> reply(event, calendarId, limit))
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                    if (cause instanceof DependencyUnavailableException || cause instanceof RejectedExecutionException) {
+                        // the database has been failing or is swamped, so we didn't even try
+                        event.getChannel().sendMessage("Our database isn't responding right now. Please try again in a bit. " +
+                                EmojiParser.parseToUnicode(":innocent:")).queue();
+                    } else {
+                        LOGGER.error(cause.getMessage());
+                        event.getChannel().sendMessage("There is an error with our database. Please try again later. " +
+                                EmojiParser.parseToUnicode(":innocent:")).queue();
+                    }
+                    return null;
+                });
+    }
+
+    private void reply(MessageReceivedEvent event, String calendarId, int limit) {
+        if (calendarId == null) { // the guild hasn't set a calendar
+            event.getChannel().sendMessage("There is no calendar associated with the current server! Please set the " +
+                    "server's calendar with the **calset** command and then try again executing this command. "
+                    + EmojiParser.parseToUnicode(":blush:")).queue();
+            return;
+        }
+
+        EventIndex index = events.getIndex(calendarId);
+        if (index == null) {
+            // e.g. the calendar was just set, so don't wait for the next round to read it
+            events.requestSync(calendarId);
+            event.getChannel().sendMessage("I'm still reading the server's calendar, please try again in a minute. " +
+                    "If this keeps happening, make sure the calendar is shared with me! "
+                    + EmojiParser.parseToUnicode(":spiral_calendar_pad:")).queue();
+            return;
+        }
+
+        List<CalendarEvent> upcoming = index.upcoming(System.currentTimeMillis(), limit);
+        event.getChannel().sendMessage(buildMessageEmbed(upcoming, index, event)).queue();
+    }
+
+    /**
+     * Builds the embed message
+     * @param upcoming the events to list
+     * @param index the index the events were read from
+     * @return the embed message as {@link MessageEmbed}
+     */
+    private static MessageEmbed buildMessageEmbed(List<CalendarEvent> upcoming, EventIndex index,
+                                                  MessageReceivedEvent event) {
+        EmbedBuilder embed = new EmbedBuilder()
+                .setTitle(EmojiParser.parseToUnicode(":spiral_calendar_pad:") + " Upcoming Events "
+                        + EmojiParser.parseToUnicode(":spiral_calendar_pad:"))
+                .setFooter(EmojiParser.parseToUnicode(":robot_face:") +
+                        " Powered by ACM Auth Bot Development team " +
+                        EmojiParser.parseToUnicode(":robot_face:"))
+                .setColor(Color.decode("#309ECF"))
+                .setThumbnail(event.getGuild().getIconUrl())
+                .setTimestamp(Instant.ofEpochMilli(index.getSyncedAt())); // how fresh the list is
+
+        if (upcoming.isEmpty()) {
+            embed.setDescription("Nothing planned yet! " + EmojiParser.parseToUnicode(":sleeping:"));
+        }
+        for (CalendarEvent calendarEvent : upcoming) {
+            StringBuilder value = new StringBuilder(when(calendarEvent));
+            if (calendarEvent.getLocation() != null) {
+                value.append("\n").append(EmojiParser.parseToUnicode(":round_pushpin:")).append(' ')
+                        .append(calendarEvent.getLocation());
+            }
+            if (calendarEvent.getLink() != null) {
+                value.append("\n[Open in Google Calendar](").append(calendarEvent.getLink()).append(')');
+            }
+            String title = calendarEvent.getSummary() == null ? "(no title)" : calendarEvent.getSummary();
+            embed.addField(new MessageEmbed.Field(title, value.toString(), false, true));
+        }
+        return embed.build();
+    }
+
+    private static String when(CalendarEvent calendarEvent) {
+        if (calendarEvent.isAllDay()) {
+            // the end date is exclusive
+            long lastDay = calendarEvent.getEnd() - TimeUnit.DAYS.toMillis(1);
+            String first = DATE.format(Instant.ofEpochMilli(calendarEvent.getStart()));
+            return lastDay <= calendarEvent.getStart() ? first
+                    : first + " - " + DATE.format(Instant.ofEpochMilli(lastDay));
+        }
+        // Discord shows timestamps in each reader's own time zone
+        long start = TimeUnit.MILLISECONDS.toSeconds(calendarEvent.getStart());
+        long end = TimeUnit.MILLISECONDS.toSeconds(calendarEvent.getEnd());
+        return String.format("<t:%d:f> - <t:%d:t> (<t:%d:R>)", start, end, start);
+    }
+}
@@ -2,22 +2,42 @@ package org.acm.auth.config;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.file.*;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Handles a configuration file.
+ * <p>
+ * The file is parsed into an immutable {@link Snapshot}, so reading a value is a plain array access.
+ * Once {@link #watch()} is called, every change to the file is validated and, if valid, swapped in atomically,
+ * after which the subscribed {@link Listener}s are notified.
  */
 public class ConfigFile {
     private static final Logger LOGGER = LogManager.getLogger(ConfigFile.class);
 
     private final ConfigKey[] requiredKeys;
     private final File cfgFile;
-    private JSONObject json;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile Snapshot snapshot;
+
+    /**
+     * Gets notified whenever the config file is reloaded.
+     */
+    public interface Listener {
+        /**
+         * Called on the watcher thread after a new snapshot was swapped in.
+         * @param previous the snapshot that was replaced as {@link Snapshot}
+         * @param current the snapshot that is now in use as {@link Snapshot}
+         */
+        void onConfigReload(Snapshot previous, Snapshot current);
+    }
 
     /**
      * Construct a config file handler.
@@ -40,31 +60,35 @@ public class ConfigFile {
             System.exit(0);
         } else { // createNewFile() returns false when the file already exists
             // read the file
-            readFile();
-            // and then verify it
-            verifyFile();
+            JSONObject json = readFile();
+            // then verify it
+            verifyFile(json);
+            // and keep its values
+            this.snapshot = new Snapshot(json);
         }
     }
 
     /**
-     * Reads the config file and saves the key-value pairs to the JSON Object instance.
+     * Reads the config file and returns its key-value pairs.
+     * @return the key-value pairs as {@link JSONObject}
      * @throws IOException If an error occurs when reading the file
      */
-    private void readFile() throws IOException {
+    private JSONObject readFile() throws IOException {
         LOGGER.info("Reading config file");
         // read the lines of the config file and save each line in a list
         List<String> lines = Files.readAllLines(cfgFile.toPath());
         // combine the elements of the list to a single String
         String fileContent = String.join("", lines);
         // and then convert this single String to a JSON Object
-        json = new JSONObject(fileContent);
+        return new JSONObject(fileContent);
     }
 
     /**
      * Verifies the validity of the config file.
+     * @param json the key-value pairs of the file as {@link JSONObject}
      * @throws IllegalStateException if a required key-value pair is missing
      */
-    private void verifyFile() throws IllegalStateException{
+    private void verifyFile(JSONObject json) throws IllegalStateException{
         // iterate through the required keys
         for (ConfigKey key : this.requiredKeys) {
             // check if a required key-value pair is missing
@@ -81,24 +105,94 @@ public class ConfigFile {
      * @return the requested value as {@code String}
      */
     public String getValue(ConfigKey cfgKey) {
-        String value;
-        if (json.has(cfgKey.getKey())) {
-            // the config file has the specified key,
-            // so get its value from the JSON object
-            value = json.getString(cfgKey.getKey());
-            if (value.equals("")) {
-                // the value is an empty String,
-                // which means that the user didn't
-                // specify a value, so get the default
-                // value of the requested key
-                value = cfgKey.getDefaultValue();
+        return snapshot.getValue(cfgKey);
+    }
+
+    /**
+     * Subscribes a listener to the reloads of the config file.
+     * @param listener the listener as {@link Listener}
+     */
+    public void subscribe(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Starts watching the config file for changes on a background thread.
+     * A change that leaves the file unreadable or without a required key is logged and ignored,
+     * and the previous values stay in use.
+     * @throws IOException if the directory of the file can't be watched
+     */
+    public void watch() throws IOException {
+        Path file = cfgFile.getAbsoluteFile().toPath();
+        WatchService watcher = file.getFileSystem().newWatchService();
+        // editors often replace the file instead of writing to it, so watch the whole directory
+        file.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+        Thread thread = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = watcher.take();
+                    boolean changed = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        changed |= file.getFileName().equals(event.context());
+                    }
+                    key.reset();
+                    if (changed) {
+                        // a single save often fires several events, let them settle and reload once
+                        Thread.sleep(100);
+                        WatchKey settled;
+                        while ((settled = watcher.poll()) != null) {
+                            // the reload reads the file as it is now, so these events add nothing,
+                            // but a key that isn't reset is never signalled again
+                            settled.pollEvents();
+                            settled.reset();
+                        }
+                        reload();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "config-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        LOGGER.info("Watching config file for changes");
+    }
+
+    /**
+     * Reads and verifies the config file again, and swaps in its values if they're valid and changed.
+     */
+    private void reload() {
+        Snapshot current;
+        try {
+            JSONObject json = readFile();
+            verifyFile(json);
+            current = new Snapshot(json);
+        } catch (IOException | JSONException | IllegalStateException e) {
+            LOGGER.warn("Ignoring the changes to the config file: {}", e.getMessage());
+            return;
+        }
+
+        Snapshot previous = snapshot;
+        List<String> changed = new ArrayList<>();
+        for (ConfigKey key : ConfigKey.values()) {
+            if (!previous.getValue(key).equals(current.getValue(key))) {
+                changed.add(key.getKey());
+            }
+        }
+        if (changed.isEmpty()) {
+            return;
+        }
+
+        snapshot = current;
+        LOGGER.info("Reloaded config file, changed keys: {}", changed);
+        for (Listener listener : listeners) {
+            try {
+                listener.onConfigReload(previous, current);
+            } catch (RuntimeException e) {
+                LOGGER.error("Could not apply the reloaded config: {}", e.getMessage());
             }
-        } else {
-            // the speified key is missing from the file,
-            // so get its default value
-            value = cfgKey.getDefaultValue();
         }
-        return value;
     }
 
     /**
@@ -117,4 +211,46 @@ public class ConfigFile {
         // using the path of the cfgFile object
         Files.write(this.cfgFile.toPath(), json.toString(2).getBytes());
     }
+
+    /**
+     * Holds the values of every config key at one point in time.
+     */
+    public static final class Snapshot {
+        // the value of each config key, indexed by its ordinal
+        private final String[] values;
+
+        private Snapshot(JSONObject json) {
+            ConfigKey[] keys = ConfigKey.values();
+            this.values = new String[keys.length];
+            for (ConfigKey cfgKey : keys) {
+                String value;
+                if (json.has(cfgKey.getKey())) {
+                    // the config file has the specified key,
+                    // so get its value from the JSON object
+                    value = json.getString(cfgKey.getKey());
+                    if (value.equals("")) {
+                        // the value is an empty String,
+                        // which means that the user didn't
+                        // specify a value, so get the default
+                        // value of the requested key
+                        value = cfgKey.getDefaultValue();
+                    }
+                } else {
+                    // the specified key is missing from the file,
+                    // so get its default value
+                    value = cfgKey.getDefaultValue();
+                }
+                values[cfgKey.ordinal()] = value;
+            }
+        }
+
+        /**
+         * Returns the value that corresponds to a config key
+         * @param cfgKey the key which we want the value of as {@code ConfigKey}
+         * @return the requested value as {@code String}
+         */
+        public String getValue(ConfigKey cfgKey) {
+            return values[cfgKey.ordinal()];
+        }
+    }
 }
@@ -8,7 +8,24 @@ public enum ConfigKey {
     PREFIX("prefix", "-"),
     DEV_ID("dev_id", ""),
     GIPHY_KEY("giphy_key", ""),
-    GOOGLE_API_KEY("google_key", "");
+    GOOGLE_API_KEY("google_key", ""),
+    EXECUTOR_VIRTUAL_THREADS("executor_virtual_threads", "true"),
+    EXECUTOR_PLATFORM_THREADS("executor_platform_threads", "16"),
+    EXECUTOR_QUEUE_CAPACITY("executor_queue_capacity", "256"),
+    OVERLOADED_MESSAGE("overloaded_message", "I'm a bit overwhelmed right now, try again in a moment!"),
+    METRICS_PORT("metrics_port", "9091"),
+    SHARD_COUNT("shard_count", "-1"),
+    RUNTIME_PROFILE("runtime_profile", "default"),
+    DB_URL("db_url", "jdbc:mariadb://localhost:3306"),
+    DB_POOL_SIZE("db_pool_size", "8"),
+    CALENDAR_CACHE_SIZE("calendar_cache_size", "10000"),
+    STORAGE("storage", "mariadb"),
+    EMBEDDED_PATH("embedded_path", "./data/bot"),
+    CALENDAR_SYNC_INTERVAL("calendar_sync_minutes", "5"),
+    CALENDAR_SYNC_PARALLELISM("calendar_sync_parallelism", "2"),
+    REMINDER_LEAD("reminder_minutes", "0"),
+    POLL_SINGLE_VOTE("poll_single_vote", "false"),
+    EVENT_INDEX_PATH("event_index_path", "./data/events");
 
     private final String key;
     private final String defaultValue;
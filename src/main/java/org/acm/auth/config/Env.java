@@ -0,0 +1,25 @@
+package org.acm.auth.config;
+
+import io.github.cdimascio.dotenv.Dotenv;
+
+/**
+ * Gives access to the variables of the {@code .env} file (e.g. the database credentials).
+ * The file is read once, the first time a variable is requested.
+ */
+public final class Env {
+    private Env() {
+    }
+
+    private static final class Holder {
+        private static final Dotenv ENV = Dotenv.configure().ignoreIfMissing().load();
+    }
+
+    /**
+     * Returns the value of an environment variable, looking in the {@code .env} file too.
+     * @param key the name of the variable as {@code String}
+     * @return the value as {@code String}, or {@code null} if it's not set
+     */
+    public static String get(String key) {
+        return Holder.ENV.get(key);
+    }
+}
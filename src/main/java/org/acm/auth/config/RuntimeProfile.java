@@ -0,0 +1,67 @@
+package org.acm.auth.config;
+
+import net.dv8tion.jda.api.requests.GatewayIntent;
+import net.dv8tion.jda.api.sharding.DefaultShardManagerBuilder;
+import net.dv8tion.jda.api.utils.ChunkingFilter;
+import net.dv8tion.jda.api.utils.MemberCachePolicy;
+import net.dv8tion.jda.api.utils.cache.CacheFlag;
+
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Represents how much gateway traffic and guild state the bot asks Discord and JDA for,
+ * selected with {@link ConfigKey#RUNTIME_PROFILE}.
+ */
+public enum RuntimeProfile {
+    /**
+     * JDA's defaults: every non-privileged intent, and the caches that go with them.
+     */
+    DEFAULT {
+        @Override
+        public DefaultShardManagerBuilder createBuilder(String token, Set<GatewayIntent> intents) {
+            return DefaultShardManagerBuilder.createDefault(token);
+        }
+    },
+
+    /**
+     * Only the intents the registered commands need, and no member, emote, voice or presence caches.
+     * <p>
+     * Members are never cached or chunked: every message carries its author's member, roles included,
+     * and the self-member is always kept by JDA, so permission checks keep working.
+     * The role and channel caches, including the member overrides, stay enabled for the same reason.
+     * The intents come from the commands that declare them ({@link org.acm.auth.commands.Command#getIntents}),
+     * e.g. the poll command asks for the reaction intents, since its votes are tallied from the reaction events.
+     * A command that starts listening to new gateway events has to declare their intent,
+     * or this profile never receives them.
+     */
+    LEAN {
+        @Override
+        public DefaultShardManagerBuilder createBuilder(String token, Set<GatewayIntent> intents) {
+            return DefaultShardManagerBuilder.create(token, intents)
+                    .setMemberCachePolicy(MemberCachePolicy.NONE)
+                    .setChunkingFilter(ChunkingFilter.NONE)
+                    .disableCache(EnumSet.allOf(CacheFlag.class))
+                    .enableCache(CacheFlag.MEMBER_OVERRIDES)
+                    .setLargeThreshold(50); // the smallest value Discord allows, the offline members aren't needed
+        }
+    };
+
+    /**
+     * Creates a shard manager builder configured for this profile.
+     * @param token the bot's token as {@code String}
+     * @param intents the intents the registered commands need as {@link Set} of {@link GatewayIntent}
+     * @return the builder as {@link DefaultShardManagerBuilder}
+     */
+    public abstract DefaultShardManagerBuilder createBuilder(String token, Set<GatewayIntent> intents);
+
+    /**
+     * Returns the profile selected in a config file.
+     * @param config the config file as {@link ConfigFile}
+     * @return the profile as {@link RuntimeProfile}
+     */
+    public static RuntimeProfile fromConfig(ConfigFile config) {
+        return valueOf(config.getValue(ConfigKey.RUNTIME_PROFILE).toUpperCase(Locale.ROOT));
+    }
+}
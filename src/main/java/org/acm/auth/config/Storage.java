@@ -0,0 +1,52 @@
+package org.acm.auth.config;
+
+import org.acm.auth.repositories.EmbeddedGuildRepository;
+import org.acm.auth.repositories.GuildRepository;
+import org.acm.auth.repositories.MariaDbGuildRepository;
+
+import java.util.Locale;
+
+/**
+ * Represents where the guild data is stored, selected with {@link ConfigKey#STORAGE}.
+ */
+public enum Storage {
+    /**
+     * The MariaDB server of {@code docker-compose.yml}, reached through the shared connection pool.
+     */
+    MARIADB {
+        @Override
+        public GuildRepository createRepository(ConfigFile config) {
+            MariaDbGuildRepository repository = new MariaDbGuildRepository();
+            repository.createMissingTables();
+            return repository;
+        }
+    },
+
+    /**
+     * An H2 database file inside the bot's process, at {@link ConfigKey#EMBEDDED_PATH}.
+     * It holds all the guild data, the prefixes included, so the bot doesn't need a MariaDB server at all.
+     * No server to run and no network round trip, but only one bot process can open the file.
+     */
+    EMBEDDED {
+        @Override
+        public GuildRepository createRepository(ConfigFile config) {
+            return new EmbeddedGuildRepository(config.getValue(ConfigKey.EMBEDDED_PATH));
+        }
+    };
+
+    /**
+     * Creates the repository of the guild data for this storage.
+     * @param config the config file as {@link ConfigFile}
+     * @return the repository as {@link GuildRepository}
+     */
+    public abstract GuildRepository createRepository(ConfigFile config);
+
+    /**
+     * Returns the storage selected in a config file.
+     * @param config the config file as {@link ConfigFile}
+     * @return the storage as {@link Storage}
+     */
+    public static Storage fromConfig(ConfigFile config) {
+        return valueOf(config.getValue(ConfigKey.STORAGE).toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,252 @@
+package org.acm.auth.execution;
+
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import org.acm.auth.commands.Command;
+import org.acm.auth.config.ConfigFile;
+import org.acm.auth.config.ConfigKey;
+import org.acm.auth.metrics.Counter;
+import org.acm.auth.metrics.LatencyHistogram;
+import org.acm.auth.metrics.Metrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs command invocations off the gateway thread, on virtual threads when the runtime supports them
+ * and on a fixed pool of platform threads otherwise.
+ * <p>
+ * Every invocation first has to be admitted into a bounded queue; when the queue is full the invocation
+ * is shed and the user gets the configured overload reply. Admitted invocations then wait (without holding
+ * a thread) until their command has a free concurrency slot, and are aborted once they exceed the
+ * command's timeout.
+ */
+public class BoundedCommandExecutor implements CommandExecutor {
+    private static final Logger LOGGER = LogManager.getLogger(BoundedCommandExecutor.class);
+    private static final Counter SHED = Metrics.counter(Metrics.COMMAND_REJECTIONS, "reason", "overloaded");
+
+    private final ExecutorService workers;                  // runs the invocations themselves
+    private final ScheduledExecutorService watchdog;        // aborts invocations that exceed their timeout
+    private final Semaphore admission;                      // bounds the amount of queued and running invocations
+    private final Map<Command, Lane> lanes;                 // the pending invocations and free slots of each command
+    private final String overloadedMessage;                 // the reply sent when an invocation gets shed
+
+    /**
+     * Constructs an executor using the limits of a config file.
+     * @param config the config file to read the limits from as {@link ConfigFile}
+     */
+    public BoundedCommandExecutor(ConfigFile config) {
+        this(
+                Boolean.parseBoolean(config.getValue(ConfigKey.EXECUTOR_VIRTUAL_THREADS)),
+                Integer.parseInt(config.getValue(ConfigKey.EXECUTOR_PLATFORM_THREADS)),
+                Integer.parseInt(config.getValue(ConfigKey.EXECUTOR_QUEUE_CAPACITY)),
+                config.getValue(ConfigKey.OVERLOADED_MESSAGE)
+        );
+    }
+
+    /**
+     * Constructs an executor.
+     * @param preferVirtual whether virtual threads should be used if available as {@code boolean}
+     * @param platformThreads the amount of platform threads to use when virtual threads are not used as {@code int}
+     * @param queueCapacity the maximum amount of admitted (queued and running) invocations as {@code int}
+     * @param overloadedMessage the reply sent when an invocation gets shed as {@code String}
+     */
+    public BoundedCommandExecutor(boolean preferVirtual, int platformThreads, int queueCapacity, String overloadedMessage) {
+        this.workers = createWorkers(preferVirtual, platformThreads);
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("command-watchdog"));
+        this.admission = new Semaphore(queueCapacity);
+        this.lanes = new ConcurrentHashMap<>();
+        this.overloadedMessage = overloadedMessage;
+    }
+
+    /**
+     * Creates the executor that runs the invocations.
+     * Virtual threads are looked up reflectively, so that the bot still runs on runtimes without them.
+     */
+    private static ExecutorService createWorkers(boolean preferVirtual, int platformThreads) {
+        if (preferVirtual) {
+            try {
+                ExecutorService virtual = (ExecutorService) Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor")
+                        .invoke(null);
+                LOGGER.info("Running commands on virtual threads");
+                return virtual;
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // either the method doesn't exist (pre-21 runtime) or it's a preview feature that isn't enabled
+                LOGGER.info("Virtual threads are unavailable, falling back to {} platform threads", platformThreads);
+            }
+        }
+        return Executors.newFixedThreadPool(platformThreads, daemonThreadFactory("command-worker"));
+    }
+
+    private static ThreadFactory daemonThreadFactory(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @Override
+    public void execute(Command cmd, MessageReceivedEvent event, String[] args) {
+        if (!admission.tryAcquire()) {
+            // the queue is full - shed the invocation instead of piling up even more work
+            LOGGER.warn("Shedding {} invocation, the command queue is full", cmd.getName());
+            SHED.increment();
+            event.getChannel().sendMessage(overloadedMessage).queue();
+            return;
+        }
+
+        Lane lane = lanes.computeIfAbsent(cmd, Lane::new);
+        lane.pending.offer(new Invocation(cmd, event, args, lane));
+        drain(lane);
+    }
+
+    /**
+     * Hands pending invocations of a command to the workers for as long as the command has free slots.
+     * Called both when an invocation gets queued and when one finishes, so that no invocation is left behind.
+     */
+    private void drain(Lane lane) {
+        while (!lane.pending.isEmpty() && lane.slots.tryAcquire()) {
+            Invocation invocation = lane.pending.poll();
+            if (invocation == null) {
+                // another thread took the invocation first - give back the slot and check again
+                lane.slots.release();
+                continue;
+            }
+            try {
+                workers.execute(invocation);
+            } catch (RejectedExecutionException e) {
+                // we're shutting down
+                lane.slots.release();
+                admission.release();
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        workers.shutdown();
+        watchdog.shutdownNow();
+    }
+
+    /**
+     * The invocations of a single command that are waiting for a slot, the command's free slots,
+     * and the command's metrics.
+     */
+    private static final class Lane {
+        private final Queue<Invocation> pending = new ConcurrentLinkedQueue<>();
+        private final Semaphore slots;
+        private final LatencyHistogram queueTime;
+        private final LatencyHistogram success;
+        private final LatencyHistogram error;
+        private final LatencyHistogram timeout;
+
+        private Lane(Command cmd) {
+            this.slots = new Semaphore(cmd.getMaxConcurrency());
+            this.queueTime = Metrics.histogram(Metrics.COMMAND_QUEUE_TIME, "command", cmd.getName());
+            this.success = latency(cmd, "success");
+            this.error = latency(cmd, "error");
+            this.timeout = latency(cmd, "timeout");
+        }
+
+        private static LatencyHistogram latency(Command cmd, String outcome) {
+            return Metrics.histogram(Metrics.COMMAND_LATENCY, "command", cmd.getName(), "outcome", outcome);
+        }
+    }
+
+    /**
+     * A single admitted command invocation.
+     * It holds its slot until the command's {@link Command#invokeAsync completion stage} completes,
+     * which may be long after the worker thread has been released.
+     */
+    private final class Invocation implements Runnable {
+        private final Command cmd;
+        private final MessageReceivedEvent event;
+        private final String[] args;
+        private final Lane lane;
+        private final long admittedAt;  // when the invocation was admitted into the queue
+
+        private Thread runner;                  // the thread currently running the invocation
+        private CompletableFuture<?> pending;   // the completion of the invocation, once it has been started
+        private boolean finished;               // whether the invocation has completed (guarded by this)
+        private boolean aborted;                // whether the invocation was aborted for exceeding its timeout (guarded by this)
+
+        private Invocation(Command cmd, MessageReceivedEvent event, String[] args, Lane lane) {
+            this.cmd = cmd;
+            this.event = event;
+            this.args = args;
+            this.lane = lane;
+            this.admittedAt = System.nanoTime();
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                runner = Thread.currentThread();
+            }
+            long start = System.nanoTime();
+            lane.queueTime.record(start - admittedAt);
+            ScheduledFuture<?> timeout = watchdog.schedule(this::abort, cmd.getTimeout(), TimeUnit.MILLISECONDS);
+            CompletableFuture<?> completion;
+            try {
+                completion = cmd.invokeAsync(event, args).toCompletableFuture();
+            } catch (RuntimeException e) {
+                completion = new CompletableFuture<>();
+                completion.completeExceptionally(e);
+            }
+            synchronized (this) {
+                runner = null;
+                pending = completion;
+                if (aborted) {
+                    // the timeout expired while the command was still starting
+                    completion.cancel(true);
+                }
+            }
+            // clear an interrupt that may have been raised by abort(),
+            // so that it doesn't leak into the next task of a pooled thread
+            Thread.interrupted();
+            completion.whenComplete((result, e) -> finish(start, timeout, e));
+        }
+
+        private void finish(long start, ScheduledFuture<?> timeout, Throwable e) {
+            timeout.cancel(false);
+            LatencyHistogram outcome = lane.success;
+            synchronized (this) {
+                finished = true;
+                if (aborted) {
+                    outcome = lane.timeout;
+                } else if (e != null) {
+                    LOGGER.error("Command {} failed", cmd.getName(), e instanceof CompletionException ? e.getCause() : e);
+                    outcome = lane.error;
+                }
+            }
+            outcome.recordSince(start);
+            lane.slots.release();
+            admission.release();
+            drain(lane);
+        }
+
+        /**
+         * Interrupts the invocation, or cancels what it's waiting on, if it's still running after its timeout.
+         */
+        private synchronized void abort() {
+            if (finished) {
+                return;
+            }
+            LOGGER.warn("Aborting {} after {}ms", cmd.getName(), cmd.getTimeout());
+            aborted = true;
+            if (runner != null) {
+                runner.interrupt();
+            }
+            if (pending != null) {
+                pending.cancel(true);
+            }
+            event.getChannel().sendMessage("That took too long, try again later!").queue();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package org.acm.auth.execution;
+
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import org.acm.auth.commands.Command;
+
+/**
+ * Runs command invocations on behalf of the {@link org.acm.auth.managers.CommandManager CommandManager}.
+ */
+public interface CommandExecutor {
+    /**
+     * Schedules a command invocation. Implementations must not block the calling (gateway) thread.
+     * @param cmd the command to invoke as {@link Command}
+     * @param event the event that triggered the command as {@link MessageReceivedEvent}
+     * @param args the command's arguments as {@code String[]}
+     */
+    void execute(Command cmd, MessageReceivedEvent event, String[] args);
+
+    /**
+     * Stops accepting new invocations and releases the executor's threads.
+     */
+    void shutdown();
+}
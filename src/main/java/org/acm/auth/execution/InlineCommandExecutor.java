@@ -0,0 +1,21 @@
+package org.acm.auth.execution;
+
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import org.acm.auth.commands.Command;
+
+/**
+ * Invokes commands directly on the calling thread, without any limits.
+ * Only meant for benchmarks and debugging, since a blocking command stalls the gateway.
+ */
+public class InlineCommandExecutor implements CommandExecutor {
+    @Override
+    public void execute(Command cmd, MessageReceivedEvent event, String[] args) {
+        // wait for asynchronous commands too, so that they're measured as a whole
+        cmd.invokeAsync(event, args).toCompletableFuture().join();
+    }
+
+    @Override
+    public void shutdown() {
+        // nothing to release
+    }
+}
@@ -0,0 +1,105 @@
+package org.acm.auth.managers;
+
+import net.dv8tion.jda.api.events.guild.GuildLeaveEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import org.acm.auth.metrics.Counter;
+import org.acm.auth.metrics.Metrics;
+import org.acm.auth.repositories.GuildRepository;
+import org.acm.auth.utils.LruCache;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves the Google calendar of each guild.
+ * <p>
+ * The calendar ids are stored in the database (through a {@link GuildRepository}),
+ * but lookups are answered from a bounded in-memory cache,
+ * which is preloaded at startup and updated write-through whenever a guild sets its calendar.
+ * Guilds without a calendar are cached too, so that asking again doesn't query the database either.
+ * Entries expire after {@link #TTL} hours, in case the table was edited behind the bot's back.
+ */
+public class CalendarManager extends ListenerAdapter {
+    private static final Logger LOGGER = LogManager.getLogger(CalendarManager.class);
+
+    private static final String NO_CALENDAR = "";  // cached for guilds without a calendar
+    private static final long TTL = 6;             // hours an entry is trusted for
+
+    private static final Counter HITS = Metrics.counter(Metrics.CACHE_LOOKUPS, "cache", "guild_calendar", "result", "hit");
+    private static final Counter MISSES = Metrics.counter(Metrics.CACHE_LOOKUPS, "cache", "guild_calendar", "result", "miss");
+
+    private final GuildRepository repository;
+    private final int capacity;
+    // guild id -> calendar id, or NO_CALENDAR
+    private final LruCache<Long, String> calendars;
+
+    /**
+     * Constructs a calendar manager.
+     * @param repository the repository the calendars are stored in as {@link GuildRepository}
+     * @param capacity the maximum amount of guilds kept in memory as {@code int}
+     */
+    public CalendarManager(GuildRepository repository, int capacity) {
+        this.repository = repository;
+        this.capacity = capacity;
+        this.calendars = new LruCache<>(capacity, TTL, TimeUnit.HOURS);
+    }
+
+    /**
+     * Loads the calendar ids from the database, as many as fit in the cache.
+     * If the database can't be reached, each guild's calendar is loaded the first time it's looked up.
+     */
+    public void load() {
+        int loaded;
+        try {
+            // a calendar set while we were loading is newer than the row we read
+            loaded = repository.forEachCalendar(capacity, calendars::putIfAbsent).toCompletableFuture().join();
+        } catch (CompletionException e) {
+            LOGGER.error("Could not load the guild calendars: {}", e.getCause().getMessage());
+            return;
+        }
+        LOGGER.info("Loaded {} guild calendars", loaded);
+    }
+
+    /**
+     * Returns the calendar id of a guild, querying the database only if the guild isn't cached.
+     * @param guildId the id of the guild as {@code long}
+     * @return the calendar id as {@link CompletionStage}, already completed if the guild was cached,
+     * and completed with {@code null} if the guild hasn't set a calendar
+     */
+    public CompletionStage<String> getCalendarId(long guildId) {
+        String cached = calendars.get(guildId);
+        if (cached != null) {
+            HITS.increment();
+            return CompletableFuture.completedFuture(cached.equals(NO_CALENDAR) ? null : cached);
+        }
+        MISSES.increment();
+
+        return repository.findCalendarId(guildId).thenApply(calendarId -> {
+            // don't overwrite a calendar that was set while we were querying
+            calendars.putIfAbsent(guildId, calendarId == null ? NO_CALENDAR : calendarId);
+            return calendarId;
+        });
+    }
+
+    /**
+     * Stores the calendar id of a guild, first in the database and then in memory.
+     * @param guildId the id of the guild as {@code long}
+     * @param calendarId the calendar id as {@code String}
+     * @return the completion of the write as {@link CompletionStage}
+     */
+    public CompletionStage<Void> setCalendarId(long guildId, String calendarId) {
+        return repository.saveCalendarId(guildId, calendarId)
+                .thenRun(() -> calendars.put(guildId, calendarId));
+    }
+
+    @Override
+    public void onGuildLeave(@NotNull GuildLeaveEvent event) {
+        // keep the row in case the bot gets invited back, but stop holding it in memory
+        calendars.invalidate(event.getGuild().getIdLong());
+    }
+}
@@ -1,51 +1,89 @@
 package org.acm.auth.managers;
 
-import net.dv8tion.jda.api.Permission;
-import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.entities.MessageChannel;
-import net.dv8tion.jda.api.entities.TextChannel;
+import net.dv8tion.jda.api.events.ShutdownEvent;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import net.dv8tion.jda.api.requests.GatewayIntent;
+import net.dv8tion.jda.api.sharding.ShardManager;
 import org.acm.auth.commands.*;
 import org.acm.auth.config.ConfigFile;
 import org.acm.auth.config.ConfigKey;
+import org.acm.auth.execution.BoundedCommandExecutor;
+import org.acm.auth.execution.CommandExecutor;
+import org.acm.auth.metrics.Counter;
+import org.acm.auth.metrics.Metrics;
+import org.acm.auth.services.Database;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
 
 public class CommandManager extends ListenerAdapter  {
     private static final Logger LOGGER = LogManager.getLogger(CommandManager.class);
 
-    private final String prefix;
-    private final String devId;
+    // how often each check rejects a message that matched a command
+    private static final Counter REJECTED_GUILD_ONLY = rejections("guild_only");
+    private static final Counter REJECTED_MIN_ARGS = rejections("insufficient_args");
+    private static final Counter REJECTED_MAX_ARGS = rejections("too_many_args");
+    private static final Counter REJECTED_BOT_PERMS = rejections("bot_missing_perms");
+    private static final Counter REJECTED_USR_PERMS = rejections("user_missing_perms");
+    private static final Counter REJECTED_DEV_ONLY = rejections("dev_only");
+    private static final Counter REJECTED_RATE_LIMIT = rejections("rate_limited");
+
+    private final PrefixManager prefixes;
+    private final PermissionCache permissions;
+    private volatile String devId;
     private final Map<String, Command> commands;
+    private final CommandTrie labels;
+    private final CommandExecutor executor;
+    private final RateLimiter rateLimiter;
+
+    public CommandManager(ConfigFile config, PrefixManager prefixes, CalendarManager calendars, EventSyncManager events, PollManager polls, PermissionCache permissions, ShardMonitor shards) {
+        this(config, prefixes, calendars, events, polls, permissions, shards, new BoundedCommandExecutor(config));
+    }
 
-    public CommandManager(ConfigFile config) {
-        this.prefix = config.getValue(ConfigKey.PREFIX);
+    public CommandManager(ConfigFile config, PrefixManager prefixes, CalendarManager calendars, EventSyncManager events, PollManager polls, PermissionCache permissions, ShardMonitor shards, CommandExecutor executor) {
+        this.prefixes = prefixes;
+        this.permissions = permissions;
         this.devId = config.getValue(ConfigKey.DEV_ID);
         this.commands = new HashMap<>();
-        loadCommands(config);
+        this.executor = executor;
+        this.rateLimiter = new RateLimiter();
+        loadCommands(config, calendars, events, polls, shards);
+        this.labels = new CommandTrie(commands);
+        config.subscribe(this::onConfigReload);
     }
 
-    private void loadCommands(ConfigFile config) {
+    private void loadCommands(ConfigFile config, CalendarManager calendars, EventSyncManager events, PollManager polls, ShardMonitor shards) {
         // register all possible cmds
         Command[] cmdArr = {
                 new HiCommand(),
                 new ByeCommand(),
                 new LoggerCommand(),
                 new GifCommand(config.getValue(ConfigKey.GIPHY_KEY)),
-                new PollCommand(),
+                new PollCommand(polls),
                 new CointossCommand(),
-                new CalendarViewCommand(),
-                new CalendarSetCommand(),
+                new CalendarViewCommand(calendars),
+                new CalendarSetCommand(calendars),
+                new UpcomingCommand(calendars, events),
+                new PrefixCommand(prefixes),
+                new StatsCommand(),
+                new ShardsCommand(shards),
+                new CircuitsCommand(),
         };
 
         // for each command
         for (Command cmd : cmdArr) {
+            if (cmd instanceof ConfigFile.Listener) {
+                // the command keeps some config values of its own
+                config.subscribe((ConfigFile.Listener) cmd);
+            }
+
             // add its label to the map
             String name = cmd.getName();
             LOGGER.info("Loading command {}", name);
@@ -59,14 +97,29 @@ public class CommandManager extends ListenerAdapter  {
         }
     }
 
-    private boolean isMissingPerms(Member member, Permission[] permissions, TextChannel tc) {
-        return !Arrays.stream(permissions)
-                .allMatch(p -> { // check if the following condition is TRUE for ALL items in the array
-                    return p.isChannel()                    // is the permission a channel-level one?
-                            ? member.hasPermission(tc, p)   // if so (e.g. MANAGE_MESSAGES), does the user have it in
-                                                            //                               this exact text channel?
-                            : member.hasPermission(p);      // if not (e.g. BAN_MEMBERS), does the user have it globally?
-                });
+    /**
+     * Applies the values of a reloaded config file that take effect without a restart.
+     */
+    private void onConfigReload(ConfigFile.Snapshot previous, ConfigFile.Snapshot current) {
+        this.devId = current.getValue(ConfigKey.DEV_ID);
+        prefixes.setDefaultPrefix(current.getValue(ConfigKey.PREFIX));
+    }
+
+    /**
+     * Returns the gateway intents the registered commands need: the messages of the channels they can be invoked in,
+     * plus whatever each command asks for on its own.
+     * @return the intents as {@link EnumSet} of {@link GatewayIntent}
+     */
+    public EnumSet<GatewayIntent> getIntents() {
+        EnumSet<GatewayIntent> intents = EnumSet.of(GatewayIntent.GUILD_MESSAGES);
+        for (Command cmd : commands.values()) {
+            if (!cmd.isGuildOnly()) {
+                // the command can be invoked in private messages too
+                intents.add(GatewayIntent.DIRECT_MESSAGES);
+            }
+            intents.addAll(cmd.getIntents());
+        }
+        return intents;
     }
 
     @Override
@@ -77,35 +130,39 @@ public class CommandManager extends ListenerAdapter  {
         }
 
         String message = event.getMessage().getContentRaw();
-        if (!message.toLowerCase().startsWith(prefix)) {
+        String prefix = prefixes.getPrefix(event); // the guild's own prefix, or the default one
+        if (!message.regionMatches(true, 0, prefix, 0, prefix.length())) {
             // message doesn't start with our prefix - ignore
+            // (compared in place, so the vast majority of messages are rejected without allocating anything)
             return;
         }
 
-        String[] tokens = message.split("\\s+"); // split on any space char (whitespace, tab, newlines)
-        String label = tokens[0].substring(prefix.length()).toLowerCase(); // the label is the first token if we remove the prefix
-        Command cmd = commands.get(label); // find the corresponding command in the map
+        int labelEnd = skipToken(message, prefix.length()); // the label is the first token if we remove the prefix
+        Command cmd = labels.find(message, prefix.length(), labelEnd); // find the corresponding command in the trie
 
         if (cmd == null) {
             // unknown command - ignore
             return;
         }
 
-        int argCount = tokens.length - 1;
+        int argCount = countTokens(message, labelEnd);
         MessageChannel channel = event.getChannel();
         if (cmd.isGuildOnly() && !event.isFromGuild()) {
             // command is designated as guild-only
             // but this event didn't occur in a guild
+            REJECTED_GUILD_ONLY.increment();
             channel.sendMessage("This is a server-only command!").queue();
             return;
         }
         if (argCount < cmd.getMinArgs()) {
             // user supplied less arguments than required
+            REJECTED_MIN_ARGS.increment();
             channel.sendMessage("Insufficient arguments!").queue();
             return;
         }
         if (argCount > cmd.getMaxArgs()) {
             // user supplied more arguments than allowed
+            REJECTED_MAX_ARGS.increment();
             channel.sendMessage("Too many arguments!").queue();
             return;
         }
@@ -113,25 +170,122 @@ public class CommandManager extends ListenerAdapter  {
             // permissions could only be missing in guild events,
             // since the permissions in private message events
             // are always the same and known in advance
-            if (isMissingPerms(event.getGuild().getSelfMember(), cmd.getBotPerms(), event.getTextChannel())) {
+            if (cmd.getBotPermsRaw() != 0 && !permissions.selfHas(event.getTextChannel(), cmd.getBotPermsRaw())) {
                 // the bot (self-member) is missing at least one of the required bot perms
+                REJECTED_BOT_PERMS.increment();
                 channel.sendMessage("Bot is missing permissions!").queue();
                 return;
             }
-            if (isMissingPerms(event.getMember(), cmd.getUsrPerms(), event.getTextChannel())) {
+            if (cmd.getUsrPermsRaw() != 0
+                    && !PermissionCache.has(event.getMember(), event.getTextChannel(), cmd.getUsrPermsRaw())) {
                 // the command author (member) is missing at least one of the required user perms
+                REJECTED_USR_PERMS.increment();
                 channel.sendMessage("You are missing permissions!").queue();
                 return;
             }
         }
         if (cmd.isDevOnly() && !event.getAuthor().getId().equals(this.devId)) {
             LOGGER.warn("{} tried to access {}", event.getAuthor().getAsTag(), cmd.getName());
+            REJECTED_DEV_ONLY.increment();
             return;
         }
 
-        // we don't need to supply the first token (which is the cmd label)
-        String[] args = Arrays.copyOfRange(tokens, 1, tokens.length);
+        RateLimiter.Verdict verdict = rateLimiter.tryAcquire(cmd, event.getAuthor().getIdLong(),
+                event.isFromGuild() ? event.getGuild().getIdLong() : 0);
+        if (verdict != RateLimiter.Verdict.ALLOWED) {
+            // the user or the guild is using this command too often
+            REJECTED_RATE_LIMIT.increment();
+            if (verdict != RateLimiter.Verdict.SILENT) {
+                // only the first rejection of a cooldown gets a reply, so that spamming doesn't cost us REST calls
+                long seconds = (verdict.getWait() + 999) / 1000;
+                channel.sendMessage(verdict.isGuild()
+                        ? String.format("**%s** is being used a lot in this server, it can be used again in %ds.",
+                                cmd.getName(), seconds)
+                        : String.format("Slow down! You can use **%s** again in %ds.", cmd.getName(), seconds)).queue();
+            }
+            return;
+        }
+
+        // only now that we know the command will run, split the arguments
+        // (we don't need to supply the first token, which is the cmd label)
+        String[] args = tokenize(message, labelEnd, argCount);
         LOGGER.trace("Executing {} with args \"{}\"", cmd.getName(), String.join("", args));
-        cmd.invoke(event, args); // execute the command!
+        executor.execute(cmd, event, args); // execute the command, off the gateway thread!
+    }
+
+    private static Counter rejections(String reason) {
+        return Metrics.counter(Metrics.COMMAND_REJECTIONS, "reason", reason);
+    }
+
+    /**
+     * Checks whether a character is a whitespace character, as matched by the regex {@code \s}
+     * (whitespace, tab, newlines).
+     */
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000B';
+    }
+
+    /**
+     * Returns the index right after the token that starts at the given index.
+     */
+    private static int skipToken(String message, int from) {
+        int i = from;
+        while (i < message.length() && !isSpace(message.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Returns the index of the first non-whitespace character at or after the given index.
+     */
+    private static int skipSpace(String message, int from) {
+        int i = from;
+        while (i < message.length() && isSpace(message.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Counts the whitespace-separated tokens of a message, starting from the given index.
+     */
+    private static int countTokens(String message, int from) {
+        int count = 0;
+        int i = skipSpace(message, from);
+        while (i < message.length()) {
+            count++;
+            i = skipSpace(message, skipToken(message, i));
+        }
+        return count;
+    }
+
+    /**
+     * Splits a message into its whitespace-separated tokens, starting from the given index.
+     * @param message the message to split as {@code String}
+     * @param from the index to start from as {@code int}
+     * @param count the amount of tokens, as returned by {@link #countTokens(String, int)}, as {@code int}
+     * @return the tokens as {@code String[]}
+     */
+    private static String[] tokenize(String message, int from, int count) {
+        String[] tokens = new String[count];
+        int i = skipSpace(message, from);
+        for (int t = 0; t < count; t++) {
+            int end = skipToken(message, i);
+            tokens[t] = message.substring(i, end);
+            i = skipSpace(message, end);
+        }
+        return tokens;
+    }
+
+    @Override
+    public void onShutdown(@NotNull ShutdownEvent event) {
+        // this manager is shared by every shard, so only stop the executor and close the database once the last shard is gone
+        ShardManager shardManager = event.getJDA().getShardManager();
+        if (shardManager == null || shardManager.getShards().stream()
+                .allMatch(jda -> jda.getStatus() == JDA.Status.SHUTDOWN)) {
+            executor.shutdown();
+            Database.close();
+        }
     }
 }
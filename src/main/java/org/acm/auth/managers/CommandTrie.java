@@ -0,0 +1,90 @@
+package org.acm.auth.managers;
+
+import org.acm.auth.commands.Command;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * An immutable, case-insensitive trie that maps command labels (names and aliases) to their commands.
+ * Lookups walk the characters of the message in place, so resolving a label allocates nothing.
+ */
+class CommandTrie {
+    private static final char[] NO_KEYS = {};
+    private static final Node[] NO_NODES = {};
+
+    private final Node root;
+
+    /**
+     * Builds a trie out of a label-to-command map.
+     * @param commands the commands keyed by each of their (lower case) labels as {@code Map<String, Command>}
+     */
+    CommandTrie(Map<String, Command> commands) {
+        this.root = new Node();
+        for (Map.Entry<String, Command> entry : commands.entrySet()) {
+            Node node = root;
+            String label = entry.getKey();
+            for (int i = 0; i < label.length(); i++) {
+                node = node.getOrAddChild(fold(label.charAt(i)));
+            }
+            node.cmd = entry.getValue();
+        }
+    }
+
+    /**
+     * Finds the command whose label is exactly the given region of a string, ignoring case.
+     * @param text the string containing the label as {@code String}
+     * @param start the index of the label's first character (inclusive) as {@code int}
+     * @param end the index right after the label's last character (exclusive) as {@code int}
+     * @return the matching command as {@link Command}, or {@code null} if there is none
+     */
+    Command find(String text, int start, int end) {
+        Node node = root;
+        for (int i = start; i < end && node != null; i++) {
+            node = node.getChild(fold(text.charAt(i)));
+        }
+        return node == null ? null : node.cmd;
+    }
+
+    /**
+     * Lower cases a single character, with a fast path for ASCII since all of our labels are ASCII.
+     */
+    private static char fold(char c) {
+        if (c < 128) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        return Character.toLowerCase(c);
+    }
+
+    private static final class Node {
+        private char[] keys = NO_KEYS;      // the characters leading to each child, sorted
+        private Node[] children = NO_NODES; // the children, in the same order as their keys
+        private Command cmd;                // the command whose label ends at this node, if any
+
+        private Node getChild(char key) {
+            int index = Arrays.binarySearch(keys, key);
+            return index < 0 ? null : children[index];
+        }
+
+        private Node getOrAddChild(char key) {
+            int index = Arrays.binarySearch(keys, key);
+            if (index >= 0) {
+                return children[index];
+            }
+
+            // insert the new child at its sorted position (only happens while building the trie)
+            int insertAt = -index - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insertAt);
+            System.arraycopy(children, 0, newChildren, 0, insertAt);
+            System.arraycopy(keys, insertAt, newKeys, insertAt + 1, keys.length - insertAt);
+            System.arraycopy(children, insertAt, newChildren, insertAt + 1, children.length - insertAt);
+            newKeys[insertAt] = key;
+            newChildren[insertAt] = new Node();
+            keys = newKeys;
+            children = newChildren;
+            return newChildren[insertAt];
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package org.acm.auth.managers;
+
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.services.calendar.model.Event;
+import com.google.api.services.calendar.model.Events;
+import org.acm.auth.calendar.CalendarEvent;
+import org.acm.auth.calendar.EventIndex;
+import org.acm.auth.calendar.EventIndexStore;
+import org.acm.auth.metrics.Counter;
+import org.acm.auth.metrics.LatencyHistogram;
+import org.acm.auth.metrics.Metrics;
+import org.acm.auth.repositories.GuildRepository;
+import org.acm.auth.resilience.DependencyUnavailableException;
+import org.acm.auth.services.GoogleCalendar;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps an {@link EventIndex} of every calendar a guild has set, so that the upcoming events are answered
+ * from memory instead of calling the Events API on every command.
+ * <p>
+ * Every few minutes each calendar is synced incrementally: the Events API only returns what changed since the
+ * sync token of the previous sync. When Google invalidates a token (410 Gone), and once every {@link #FULL_RESYNC}
+ * hours regardless, the calendar is fully synced again. A full sync only lists the events from the last
+ * {@link #PAST_MARGIN} minutes to {@link #HORIZON} days ahead, rather than the calendar's whole history,
+ * and the incremental syncs that follow it drop whatever changes fall outside that window.
+ * The indexes are saved after every sync, so that a restart resumes from the saved tokens.
+ * <p>
+ * A round doesn't call the API once per calendar: the pages of up to {@link #BATCH_SIZE} calendars are requested
+ * in a single batch request, and a calendar with more pages goes back in line for a later batch.
+ * A bounded amount of batches is sent at once, each after a random delay, so that a round with many calendars
+ * doesn't hit Google (and its quota) in one burst. A calendar is only ever in one batch at a time.
+ */
+public class EventSyncManager {
+    private static final Logger LOGGER = LogManager.getLogger(EventSyncManager.class);
+
+    private static final long HORIZON = 366;      // days ahead events are indexed for
+    private static final long PAST_MARGIN = 60;   // minutes back a full sync starts, in case our clock is ahead of Google's
+    private static final long FULL_RESYNC = 24;   // hours between two full syncs of a calendar
+    private static final int GONE = 410;          // the sync token is no longer valid
+    private static final int BATCH_SIZE = 50;     // requests per batch, the most Google recommends
+    private static final long BATCH_JITTER = 500; // maximum milliseconds a batch waits before it's sent
+
+    private static final Counter FULL_SYNCS = syncs("full", "ok");
+    private static final Counter INCREMENTAL_SYNCS = syncs("incremental", "ok");
+    private static final Counter INVALIDATED_SYNCS = syncs("incremental", "gone");
+    private static final Counter FAILED_SYNCS = syncs("any", "error");
+    private static final Counter BATCHES = Metrics.counter(Metrics.CALENDAR_SYNC_BATCHES);
+    private static final LatencyHistogram ROUNDS = Metrics.histogram(Metrics.CALENDAR_SYNC_ROUND);
+
+    private final GuildRepository repository;
+    private final EventIndexStore store;
+    private final long interval;
+    private final int parallelism;
+    // calendar id -> its events
+    private final Map<String, EventIndex> indexes = new ConcurrentHashMap<>();
+    // calendar id -> the guilds that set it, as of the last round
+    private volatile Map<String, List<Long>> guilds = Collections.emptyMap();
+    // calendars being synced right now, by a round or on request
+    private final Set<String> syncing = ConcurrentHashMap.newKeySet();
+    // calendars synced per second during the last round
+    private volatile long refreshRate;
+
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService senders;
+
+    /**
+     * Constructs an event sync manager. Nothing is synced until it's {@link #start started}.
+     * @param repository the repository the guilds' calendars are stored in as {@link GuildRepository}
+     * @param store where the indexes are saved as {@link EventIndexStore}
+     * @param interval the minutes between two syncs of every calendar as {@code long}
+     * @param parallelism the maximum amount of batches sent at once as {@code int}
+     */
+    public EventSyncManager(GuildRepository repository, EventIndexStore store, long interval, int parallelism) {
+        this.repository = repository;
+        this.store = store;
+        this.interval = interval;
+        this.parallelism = parallelism;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "calendar-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger count = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "calendar-sync-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Metrics.gauge(Metrics.CALENDAR_INDEX_SIZE, indexes::size, "of", "calendars");
+        Metrics.gauge(Metrics.CALENDAR_INDEX_SIZE, () -> {
+            long events = 0;
+            for (EventIndex index : indexes.values()) {
+                events += index.size();
+            }
+            return events;
+        }, "of", "events");
+        Metrics.gauge(Metrics.CALENDAR_REFRESH_RATE, () -> refreshRate);
+    }
+
+    private static Counter syncs(String type, String outcome) {
+        return Metrics.counter(Metrics.CALENDAR_SYNCS, "type", type, "outcome", outcome);
+    }
+
+    /**
+     * Loads the saved indexes and starts syncing every calendar.
+     */
+    public void start() {
+        for (EventIndex index : store.loadAll()) {
+            indexes.put(index.getCalendarId(), index);
+        }
+        LOGGER.info("Loaded the saved events of {} calendars", indexes.size());
+        // a random first delay, so that instances started together don't sync in lockstep
+        long jitter = ThreadLocalRandom.current().nextLong(TimeUnit.MINUTES.toMillis(interval) / 10 + 1);
+        scheduler.scheduleWithFixedDelay(this::syncAll, jitter, TimeUnit.MINUTES.toMillis(interval), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the index of a calendar.
+     * @param calendarId the id of the calendar as {@code String}
+     * @return the index as {@link EventIndex}, or {@code null} if the calendar hasn't been synced yet
+     */
+    public EventIndex getIndex(String calendarId) {
+        EventIndex index = indexes.get(calendarId);
+        // an index whose first full sync is still running (or failed) has nothing to show yet
+        return index == null || index.getSyncedAt() == 0 ? null : index;
+    }
+
+    /**
+     * Returns which guilds set each calendar, as of the last round.
+     * @return the guild ids by calendar id as {@link Map}
+     */
+    public Map<String, List<Long>> getGuildsByCalendar() {
+        return guilds;
+    }
+
+    /**
+     * Syncs a calendar ahead of the next round, e.g. because a guild just set it.
+     * Requesting a calendar that's already being synced does nothing.
+     * @param calendarId the id of the calendar as {@code String}
+     */
+    public void requestSync(String calendarId) {
+        SyncJob job = newJob(calendarId);
+        if (job != null) {
+            Queue<SyncJob> jobs = new ConcurrentLinkedQueue<>(Collections.singletonList(job));
+            senders.execute(() -> sendBatches(jobs));
+        }
+    }
+
+    private void syncAll() {
+        Map<String, List<Long>> calendars = new HashMap<>();
+        try {
+            repository.forEachCalendar(Integer.MAX_VALUE, (guildId, calendarId) ->
+                    calendars.computeIfAbsent(calendarId, id -> new ArrayList<>(1)).add(guildId))
+                    .toCompletableFuture().join();
+        } catch (CompletionException e) {
+            LOGGER.error("Could not load the guild calendars to sync: {}", e.getCause().getMessage());
+            return;
+        }
+        guilds = Collections.unmodifiableMap(calendars);
+
+        // forget the calendars no guild uses anymore
+        for (String calendarId : indexes.keySet()) {
+            if (!calendars.containsKey(calendarId)) {
+                indexes.remove(calendarId);
+                try {
+                    store.delete(calendarId);
+                } catch (IOException exception) {
+                    LOGGER.warn("Could not delete the saved events of {}: {}", calendarId, exception.getMessage());
+                }
+            }
+        }
+
+        long start = System.nanoTime();
+        long synced = FULL_SYNCS.get() + INCREMENTAL_SYNCS.get();
+        Queue<SyncJob> jobs = new ConcurrentLinkedQueue<>();
+        for (String calendarId : calendars.keySet()) {
+            SyncJob job = newJob(calendarId);
+            if (job != null) {
+                jobs.add(job);
+            }
+        }
+        int total = jobs.size();
+
+        // each sender keeps sending batches until no calendar is left, including the ones another sender put back
+        CompletableFuture<?>[] running = new CompletableFuture<?>[Math.min(parallelism, (total + BATCH_SIZE - 1) / BATCH_SIZE)];
+        for (int i = 0; i < running.length; i++) {
+            running[i] = CompletableFuture.runAsync(() -> sendBatches(jobs), senders);
+        }
+        CompletableFuture.allOf(running).join();
+
+        long elapsed = System.nanoTime() - start;
+        synced = FULL_SYNCS.get() + INCREMENTAL_SYNCS.get() - synced;
+        ROUNDS.record(elapsed);
+        refreshRate = synced * TimeUnit.SECONDS.toNanos(1) / Math.max(elapsed, 1);
+        LOGGER.debug("Synced {} of {} calendars in {} ms", synced, total, TimeUnit.NANOSECONDS.toMillis(elapsed));
+    }
+
+    private SyncJob newJob(String calendarId) {
+        if (!syncing.add(calendarId)) {
+            // still being synced since the previous round, or on request
+            return null;
+        }
+        EventIndex index = indexes.computeIfAbsent(calendarId, EventIndex::new);
+        long now = System.currentTimeMillis();
+        boolean full = index.getSyncToken() == null
+                || now - index.getFullSyncAt() > TimeUnit.HOURS.toMillis(FULL_RESYNC);
+        return new SyncJob(index, full, now);
+    }
+
+    private void sendBatches(Queue<SyncJob> jobs) {
+        List<SyncJob> batched = new ArrayList<>(BATCH_SIZE);
+        while (true) {
+            batched.clear();
+            SyncJob job;
+            while (batched.size() < BATCH_SIZE && (job = jobs.poll()) != null) {
+                batched.add(job);
+            }
+            if (batched.isEmpty()) {
+                return;
+            }
+
+            try {
+                Thread.sleep(ThreadLocalRandom.current().nextLong(BATCH_JITTER + 1));
+            } catch (InterruptedException e) {
+                // shutting down
+                Thread.currentThread().interrupt();
+                batched.forEach(SyncJob::fail);
+                return;
+            }
+            try {
+                send(batched, jobs);
+            } catch (RuntimeException exception) {
+                // an exception escaping a scheduled task would cancel every following round
+                LOGGER.error("Could not send a batch of {} calendars", batched.size(), exception);
+                batched.forEach(SyncJob::failIfPending);
+            }
+        }
+    }
+
+    private void send(List<SyncJob> batched, Queue<SyncJob> jobs) {
+        for (SyncJob job : batched) {
+            // until its callback answers for it, a job fails along with the batch
+            job.pending = true;
+        }
+        try {
+            BatchRequest batch = GoogleCalendar.newBatch();
+            for (SyncJob job : batched) {
+                job.queue(batch, jobs);
+            }
+            BATCHES.increment();
+            GoogleCalendar.execute(batch);
+        } catch (IOException exception) {
+            LOGGER.warn("Could not send a batch of {} calendars: {}", batched.size(), exception.getMessage());
+            batched.forEach(SyncJob::failIfPending);
+        } catch (DependencyUnavailableException exception) {
+            // Google has been failing, the next round will try again
+            batched.forEach(SyncJob::failIfPending);
+        }
+    }
+
+    /**
+     * The sync of one calendar, which spans as many batches as the calendar has pages.
+     */
+    private final class SyncJob extends JsonBatchCallback<Events> {
+        private final EventIndex index;
+        private final long now;
+        private final long from;
+        private final long horizon;
+        private boolean full;
+        private String pageToken;
+        private boolean pending;     // in a batch that hasn't answered for it yet
+        private Queue<SyncJob> jobs; // where the job goes back if it has more pages
+
+        private SyncJob(EventIndex index, boolean full, long now) {
+            this.index = index;
+            this.full = full;
+            this.now = now;
+            this.from = now - TimeUnit.MINUTES.toMillis(PAST_MARGIN);
+            this.horizon = now + TimeUnit.DAYS.toMillis(HORIZON);
+            if (full) {
+                index.clear();
+            }
+        }
+
+        private void queue(BatchRequest batch, Queue<SyncJob> jobs) throws IOException {
+            this.jobs = jobs;
+            GoogleCalendar.listEventsRequest(index.getCalendarId(), index.getSyncToken(), pageToken, from, horizon)
+                    .queue(batch, this);
+        }
+
+        @Override
+        public void onSuccess(Events page, HttpHeaders responseHeaders) {
+            pending = false;
+            // a page without changes has no items at all
+            for (Event event : page.getItems() == null ? Collections.<Event>emptyList() : page.getItems()) {
+                CalendarEvent converted = "cancelled".equals(event.getStatus()) ? null : CalendarEvent.from(event);
+                if (converted == null || converted.getStart() > horizon || converted.getEnd() <= from) {
+                    // deleted, (moved) too far ahead, which the next full sync will pick up once it gets closer,
+                    // or (moved) into the past, outside the window of the full sync
+                    index.remove(event.getId());
+                } else {
+                    index.put(converted);
+                }
+            }
+
+            pageToken = page.getNextPageToken();
+            if (pageToken != null) {
+                // the rest of the calendar goes in a later batch
+                jobs.add(this);
+                return;
+            }
+            index.publish(page.getNextSyncToken(), full, now);
+            (full ? FULL_SYNCS : INCREMENTAL_SYNCS).increment();
+            syncing.remove(index.getCalendarId());
+
+            try {
+                store.save(index);
+            } catch (IOException exception) {
+                // the index is still up to date in memory, it's only the restart that will sync it fully
+                LOGGER.warn("Could not save the events of {}: {}", index.getCalendarId(), exception.getMessage());
+            }
+        }
+
+        @Override
+        public void onFailure(GoogleJsonError error, HttpHeaders responseHeaders) {
+            pending = false;
+            if (error.getCode() == GONE && !full) {
+                // the token expired or Google invalidated it, so start over in a later batch
+                INVALIDATED_SYNCS.increment();
+                LOGGER.info("The sync token of {} was invalidated, syncing it fully", index.getCalendarId());
+                full = true;
+                pageToken = null;
+                index.clear();
+                jobs.add(this);
+                return;
+            }
+            LOGGER.warn("Could not sync the events of {}: {} {}", index.getCalendarId(), error.getCode(), error.getMessage());
+            fail();
+        }
+
+        private void failIfPending() {
+            if (pending) {
+                pending = false;
+                fail();
+            }
+        }
+
+        private void fail() {
+            // whatever was applied is kept but not published, the next round syncs the calendar again
+            FAILED_SYNCS.increment();
+            syncing.remove(index.getCalendarId());
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package org.acm.auth.managers;
+
+import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.TextChannel;
+import net.dv8tion.jda.api.events.channel.text.TextChannelDeleteEvent;
+import net.dv8tion.jda.api.events.channel.text.update.TextChannelUpdatePermissionsEvent;
+import net.dv8tion.jda.api.events.guild.GuildLeaveEvent;
+import net.dv8tion.jda.api.events.guild.member.GuildMemberRoleAddEvent;
+import net.dv8tion.jda.api.events.guild.member.GuildMemberRoleRemoveEvent;
+import net.dv8tion.jda.api.events.role.GenericRoleEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the bot's own effective permissions in each text channel as a raw bitmask,
+ * so that checking a command's required bot permissions is a single bitwise AND.
+ * <p>
+ * The cached masks are dropped whenever something that affects them changes: a role of the guild,
+ * the permission overrides of a channel, or the roles of the bot itself.
+ */
+public class PermissionCache extends ListenerAdapter {
+    // all the permissions that can be granted or denied per channel
+    private static final long CHANNEL_PERMS;
+
+    static {
+        long mask = 0;
+        for (Permission permission : Permission.values()) {
+            if (permission.isChannel()) {
+                mask |= permission.getRawValue();
+            }
+        }
+        CHANNEL_PERMS = mask;
+    }
+
+    // text channel id -> the bot's effective permissions in it
+    private final Map<Long, Long> selfPerms = new ConcurrentHashMap<>();
+
+    /**
+     * Checks whether the bot has all of the given permissions in a text channel.
+     * @param tc the text channel as {@link TextChannel}
+     * @param required the required permissions as a raw bitmask as {@code long}
+     * @return whether the bot has all the permissions as {@code boolean}
+     */
+    public boolean selfHas(TextChannel tc, long required) {
+        Long perms = selfPerms.get(tc.getIdLong());
+        if (perms == null) {
+            // computed while the map holds the channel's entry locked, so an invalidation that arrives meanwhile
+            // waits for the mask to be stored and then drops it, instead of being overwritten by a stale mask
+            perms = selfPerms.computeIfAbsent(tc.getIdLong(), id -> effectivePerms(tc.getGuild().getSelfMember(), tc));
+        }
+        return (perms & required) == required;
+    }
+
+    /**
+     * Checks whether a member has all of the given permissions in a text channel, without caching.
+     * @param member the member as {@link Member}
+     * @param tc the text channel as {@link TextChannel}
+     * @param required the required permissions as a raw bitmask as {@code long}
+     * @return whether the member has all the permissions as {@code boolean}
+     */
+    public static boolean has(Member member, TextChannel tc, long required) {
+        return (effectivePerms(member, tc) & required) == required;
+    }
+
+    /**
+     * Computes the permissions of a member the same way the commands expect them to be checked:
+     * channel-level permissions (e.g. MANAGE_MESSAGES) in this exact text channel,
+     * and every other permission (e.g. BAN_MEMBERS) globally.
+     */
+    private static long effectivePerms(Member member, TextChannel tc) {
+        return (Permission.getRaw(member.getPermissions(tc)) & CHANNEL_PERMS)
+                | (Permission.getRaw(member.getPermissions()) & ~CHANNEL_PERMS);
+    }
+
+    /**
+     * Drops the cached permissions of every text channel of a guild.
+     */
+    private void invalidate(Guild guild) {
+        for (TextChannel tc : guild.getTextChannels()) {
+            selfPerms.remove(tc.getIdLong());
+        }
+    }
+
+    @Override
+    public void onGenericRole(@NotNull GenericRoleEvent event) {
+        // a role was created, deleted, moved or had its permissions changed
+        invalidate(event.getGuild());
+    }
+
+    @Override
+    public void onTextChannelUpdatePermissions(@NotNull TextChannelUpdatePermissionsEvent event) {
+        selfPerms.remove(event.getChannel().getIdLong());
+    }
+
+    @Override
+    public void onTextChannelDelete(@NotNull TextChannelDeleteEvent event) {
+        selfPerms.remove(event.getChannel().getIdLong());
+    }
+
+    @Override
+    public void onGuildMemberRoleAdd(@NotNull GuildMemberRoleAddEvent event) {
+        if (event.getMember().equals(event.getGuild().getSelfMember())) {
+            invalidate(event.getGuild());
+        }
+    }
+
+    @Override
+    public void onGuildMemberRoleRemove(@NotNull GuildMemberRoleRemoveEvent event) {
+        if (event.getMember().equals(event.getGuild().getSelfMember())) {
+            invalidate(event.getGuild());
+        }
+    }
+
+    @Override
+    public void onGuildLeave(@NotNull GuildLeaveEvent event) {
+        invalidate(event.getGuild());
+    }
+}
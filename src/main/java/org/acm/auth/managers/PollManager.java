@@ -0,0 +1,315 @@
+package org.acm.auth.managers;
+
+import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.entities.MessageReaction;
+import net.dv8tion.jda.api.entities.TextChannel;
+import net.dv8tion.jda.api.events.message.guild.GuildMessageDeleteEvent;
+import net.dv8tion.jda.api.events.message.guild.react.GuildMessageReactionAddEvent;
+import net.dv8tion.jda.api.events.message.guild.react.GuildMessageReactionRemoveEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import org.acm.auth.config.ConfigFile;
+import org.acm.auth.config.ConfigKey;
+import org.acm.auth.metrics.Counter;
+import org.acm.auth.metrics.Metrics;
+import org.acm.auth.utils.Emoji;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tallies the votes of the polls posted by the poll command, from the reactions added to and removed from them,
+ * and keeps each poll's embed showing its current totals.
+ * <p>
+ * The tallies live in memory, keyed by the poll's message id, so showing them never fetches the reactions back.
+ * Each poll is guarded by one of {@link #STRIPES} locks picked by its message id, so votes on different polls
+ * (usually on different shards' threads) rarely wait for each other.
+ * <p>
+ * Embeds aren't edited on every vote: the first vote after an edit schedules the next one {@link #EDIT_DELAY}
+ * seconds later, and every vote until then is shown by that single edit. A burst of hundreds of votes thus costs
+ * one edit every few seconds, well within Discord's per-channel rate limit.
+ * <p>
+ * When {@link ConfigKey#POLL_SINGLE_VOTE} is enabled, a member who votes for another option has their previous
+ * reaction removed and their vote moved. Polls are tracked for {@link #TTL} days, and not across restarts.
+ */
+public class PollManager extends ListenerAdapter implements ConfigFile.Listener {
+    private static final Logger LOGGER = LogManager.getLogger(PollManager.class);
+
+    private static final int STRIPES = 64;     // locks the polls are spread over, a power of two
+    private static final long EDIT_DELAY = 2;  // seconds a poll's votes are collected before its embed is edited
+    private static final long TTL = 7;         // days a poll is tallied for
+    private static final long SWEEP = 1;       // hours between two sweeps of the expired polls
+    private static final int NO_VOTE = -1;
+
+    private static final Counter ADDED = votes("added");
+    private static final Counter REMOVED = votes("removed");
+    private static final Counter MOVED = votes("moved");
+    private static final Counter IGNORED = votes("ignored");
+    private static final Counter EDITS = Metrics.counter(Metrics.POLL_EDITS, "outcome", "ok");
+    private static final Counter FAILED_EDITS = Metrics.counter(Metrics.POLL_EDITS, "outcome", "error");
+
+    private final Object[] stripes = new Object[STRIPES];
+    // message id -> its poll
+    private final Map<Long, Poll> polls = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService editor;
+    private volatile boolean singleVote;
+
+    /**
+     * Constructs a poll manager.
+     * @param singleVote whether new polls allow a single vote per member as {@code boolean}
+     */
+    public PollManager(boolean singleVote) {
+        this.singleVote = singleVote;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+        this.editor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "poll-edits");
+            thread.setDaemon(true);
+            return thread;
+        });
+        editor.scheduleAtFixedRate(this::sweep, SWEEP, SWEEP, TimeUnit.HOURS);
+        Metrics.gauge(Metrics.POLLS_TRACKED, polls::size);
+    }
+
+    private static Counter votes(String change) {
+        return Metrics.counter(Metrics.POLL_VOTES, "change", change);
+    }
+
+    @Override
+    public void onConfigReload(ConfigFile.Snapshot previous, ConfigFile.Snapshot current) {
+        // polls that were already posted keep the rule they were posted with
+        this.singleVote = Boolean.parseBoolean(current.getValue(ConfigKey.POLL_SINGLE_VOTE));
+    }
+
+    /**
+     * Starts tallying the votes of a poll that was just posted.
+     * @param message the poll's message as {@link Message}
+     * @param question the poll's question as {@code String}
+     * @param options the poll's options as {@code String[]}, one per regional indicator
+     * @param singleVote whether members have a single vote as {@code boolean}, as the poll's embed says
+     */
+    public void track(Message message, String question, String[] options, boolean singleVote) {
+        polls.put(message.getIdLong(), new Poll(message.getIdLong(), message.getTextChannel(), question,
+                options, singleVote));
+    }
+
+    /**
+     * Returns whether new polls allow a single vote per member.
+     * @return whether votes are exclusive as {@code boolean}
+     */
+    public boolean isSingleVote() {
+        return singleVote;
+    }
+
+    @Override
+    public void onGuildMessageReactionAdd(@NotNull GuildMessageReactionAddEvent event) {
+        Poll poll = polls.get(event.getMessageIdLong());
+        if (poll == null || event.getUserIdLong() == event.getJDA().getSelfUser().getIdLong()) {
+            // not a poll, or one of the reactions we added to let members vote
+            return;
+        }
+        int option = poll.optionOf(event.getReactionEmote());
+        if (option == NO_VOTE) {
+            IGNORED.increment();
+            return;
+        }
+
+        int previous;
+        boolean counted;
+        synchronized (stripeOf(poll.messageId)) {
+            previous = poll.singleVote ? poll.choices.getOrDefault(event.getUserIdLong(), NO_VOTE) : NO_VOTE;
+            counted = previous != option;
+            if (counted) {
+                poll.counts[option]++;
+                if (previous != NO_VOTE) {
+                    poll.counts[previous]--;
+                }
+                if (poll.singleVote) {
+                    poll.choices.put(event.getUserIdLong(), option);
+                }
+            }
+            poll.channel = event.getChannel();
+        }
+
+        if (!counted) {
+            IGNORED.increment();
+            return;
+        }
+        if (previous != NO_VOTE) {
+            // the removal event that follows is ignored, since the member's vote has already moved
+            MOVED.increment();
+            event.getChannel().removeReactionById(poll.messageId, Emoji.REGIONAL_INDICATORS[previous], event.getUser())
+                    .queue(null, failure -> LOGGER.debug("Could not remove a moved vote: {}", failure.getMessage()));
+        } else {
+            ADDED.increment();
+        }
+        scheduleEdit(poll);
+    }
+
+    @Override
+    public void onGuildMessageReactionRemove(@NotNull GuildMessageReactionRemoveEvent event) {
+        Poll poll = polls.get(event.getMessageIdLong());
+        if (poll == null || event.getUserIdLong() == event.getJDA().getSelfUser().getIdLong()) {
+            return;
+        }
+        int option = poll.optionOf(event.getReactionEmote());
+        if (option == NO_VOTE) {
+            return;
+        }
+
+        boolean counted;
+        synchronized (stripeOf(poll.messageId)) {
+            if (poll.singleVote) {
+                // only the reaction of the member's current vote counts
+                counted = poll.choices.remove(event.getUserIdLong(), option);
+            } else {
+                counted = poll.counts[option] > 0;
+            }
+            if (counted) {
+                poll.counts[option]--;
+            }
+            poll.channel = event.getChannel();
+        }
+
+        if (!counted) {
+            IGNORED.increment();
+            return;
+        }
+        REMOVED.increment();
+        scheduleEdit(poll);
+    }
+
+    @Override
+    public void onGuildMessageDelete(@NotNull GuildMessageDeleteEvent event) {
+        polls.remove(event.getMessageIdLong());
+    }
+
+    private Object stripeOf(long messageId) {
+        // the low bits of a snowflake are an increment, so mix in the high ones too
+        return stripes[(int) (messageId ^ (messageId >>> 32)) & (STRIPES - 1)];
+    }
+
+    private void scheduleEdit(Poll poll) {
+        synchronized (stripeOf(poll.messageId)) {
+            if (poll.editScheduled) {
+                // the scheduled edit will show this vote too
+                return;
+            }
+            poll.editScheduled = true;
+        }
+        editor.schedule(() -> edit(poll), EDIT_DELAY, TimeUnit.SECONDS);
+    }
+
+    private void edit(Poll poll) {
+        int[] counts;
+        TextChannel channel;
+        synchronized (stripeOf(poll.messageId)) {
+            // a vote from now on schedules another edit
+            poll.editScheduled = false;
+            counts = poll.counts.clone();
+            channel = poll.channel;
+        }
+        if (!polls.containsKey(poll.messageId)) {
+            // deleted or expired in the meantime
+            return;
+        }
+
+        try {
+            channel.editMessageById(poll.messageId, buildEmbed(poll.question, poll.options, counts, poll.singleVote))
+                    .queue(message -> EDITS.increment(), failure -> {
+                        FAILED_EDITS.increment();
+                        LOGGER.debug("Could not edit poll {}: {}", poll.messageId, failure.getMessage());
+                    });
+        } catch (RuntimeException exception) {
+            // e.g. we lost access to the channel, an exception escaping would only be swallowed by the executor
+            FAILED_EDITS.increment();
+            LOGGER.debug("Could not edit poll {}: {}", poll.messageId, exception.getMessage());
+        }
+    }
+
+    private void sweep() {
+        long expired = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(TTL);
+        polls.values().removeIf(poll -> poll.created < expired);
+    }
+
+    /**
+     * Builds a poll's embed, with each option's votes.
+     * @param question the poll's question as {@code String}
+     * @param options the poll's options as {@code String[]}
+     * @param counts the votes of each option as {@code int[]}
+     * @param singleVote whether members have a single vote as {@code boolean}
+     * @return the embed as {@link MessageEmbed}
+     */
+    public static MessageEmbed buildEmbed(String question, String[] options, int[] counts, boolean singleVote) {
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+
+        // REGIONAL_INDICATORS[i] is the reaction that votes for options[i]
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < options.length; i++) {
+            sb.append(Emoji.REGIONAL_INDICATORS[i]).append("\t").append(options[i]);
+            if (total > 0) {
+                sb.append("\t**").append(counts[i]).append("** (").append(counts[i] * 100 / total).append("%)");
+            }
+            sb.append("\n");
+        }
+
+        return new EmbedBuilder()
+                .setTitle(question, null)
+                .setColor(Color.CYAN)
+                .setDescription(sb.toString())
+                .setFooter(total + (total == 1 ? " vote" : " votes") + (singleVote ? " - one vote per member" : ""))
+                .build();
+    }
+
+    /**
+     * The tally of one poll, guarded by its stripe.
+     */
+    private static final class Poll {
+        private final long messageId;
+        private final String question;
+        private final String[] options;
+        private final boolean singleVote;
+        private final long created = System.currentTimeMillis();
+        private final int[] counts;
+        // member id -> the option they voted for, only for single vote polls
+        private final Map<Long, Integer> choices;
+        private TextChannel channel;     // refreshed on every vote, so that edits never use a stale entity
+        private boolean editScheduled;
+
+        private Poll(long messageId, TextChannel channel, String question, String[] options, boolean singleVote) {
+            this.messageId = messageId;
+            this.channel = channel;
+            this.question = question;
+            this.options = options;
+            this.singleVote = singleVote;
+            this.counts = new int[options.length];
+            this.choices = singleVote ? new HashMap<>() : null;
+        }
+
+        /**
+         * Returns the option a reaction votes for.
+         */
+        private int optionOf(MessageReaction.ReactionEmote emote) {
+            if (!emote.isEmoji()) {
+                return NO_VOTE;
+            }
+            // regional indicators are consecutive code points, starting at A
+            String emoji = emote.getEmoji();
+            int option = emoji.length() == 2 ? emoji.codePointAt(0) - Emoji.REGIONAL_INDICATORS[0].codePointAt(0) : NO_VOTE;
+            return option >= 0 && option < options.length ? option : NO_VOTE;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package org.acm.auth.managers;
+
+import net.dv8tion.jda.api.events.guild.GuildJoinEvent;
+import net.dv8tion.jda.api.events.guild.GuildLeaveEvent;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import org.acm.auth.repositories.GuildRepository;
+import org.acm.auth.utils.LongObjectMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Resolves the command prefix of each guild.
+ * <p>
+ * The custom prefixes are stored in the database (through a {@link GuildRepository}, next to the calendars),
+ * but all lookups are answered from an in-memory snapshot, which is preloaded at startup and updated
+ * write-through whenever a prefix changes.
+ * Only guilds with a custom prefix take up memory; every other guild (and every private channel)
+ * falls back to the default prefix.
+ */
+public class PrefixManager extends ListenerAdapter {
+    private static final Logger LOGGER = LogManager.getLogger(PrefixManager.class);
+
+    public static final int MAX_PREFIX_LENGTH = 5;
+
+    private final GuildRepository repository;
+    private volatile String defaultPrefix;
+    // guild id -> custom prefix, replaced as a whole on every write so that reads need no locking
+    private volatile LongObjectMap<String> prefixes;
+    // guilds whose prefix was set, reset or loaded while the preload was running, guarded by this
+    // (their entries are newer than the preload's rows), or null when no preload is running
+    private Set<Long> changedWhileLoading;
+
+    /**
+     * Constructs a prefix manager.
+     * @param repository the repository the prefixes are stored in as {@link GuildRepository}
+     * @param defaultPrefix the prefix of guilds without a custom one as {@code String}
+     */
+    public PrefixManager(GuildRepository repository, String defaultPrefix) {
+        this.repository = repository;
+        this.defaultPrefix = defaultPrefix;
+        this.prefixes = LongObjectMap.empty();
+        // the preload runs alongside the login, so prefixes may already change before it starts
+        this.changedWhileLoading = new HashSet<>();
+    }
+
+    /**
+     * Loads all the custom prefixes from the database, keeping the prefixes that changed in the meantime.
+     * If the database can't be reached, every guild uses the default prefix until it's set again.
+     */
+    public void load() {
+        synchronized (this) {
+            if (changedWhileLoading == null) {
+                changedWhileLoading = new HashSet<>();
+            }
+        }
+        LongObjectMap.Builder<String> loaded = new LongObjectMap.Builder<>();
+        // stream the rows instead of materializing the whole table at once
+        // (most guilds pick one of a handful of prefixes, so share the String instances)
+        try {
+            repository.forEachPrefix((guildId, prefix) -> loaded.put(guildId, prefix.intern()))
+                    .toCompletableFuture().join();
+        } catch (CompletionException e) {
+            LOGGER.error("Could not load the guild prefixes: {}", e.getCause().getMessage());
+            synchronized (this) {
+                changedWhileLoading = null;
+            }
+            return;
+        }
+
+        synchronized (this) {
+            // a prefix that changed while we were reading is newer than its row, so it wins over it
+            // (only a handful change during the startup, so copying the map for each of them is cheap)
+            LongObjectMap<String> merged = loaded.build();
+            for (long guildId : changedWhileLoading) {
+                String prefix = prefixes.get(guildId);
+                merged = prefix == null ? merged.without(guildId) : merged.with(guildId, prefix);
+            }
+            prefixes = merged;
+            changedWhileLoading = null;
+        }
+        LOGGER.info("Loaded {} custom prefixes", prefixes.size());
+    }
+
+    /**
+     * Returns the prefix that applies to a message.
+     * @param event the event of the received message as {@link MessageReceivedEvent}
+     * @return the prefix as {@code String}
+     */
+    public String getPrefix(MessageReceivedEvent event) {
+        return event.isFromGuild() ? getPrefix(event.getGuild().getIdLong()) : defaultPrefix;
+    }
+
+    /**
+     * Returns the prefix of a guild.
+     * @param guildId the id of the guild as {@code long}
+     * @return the prefix as {@code String}
+     */
+    public String getPrefix(long guildId) {
+        String prefix = prefixes.get(guildId);
+        return prefix == null ? defaultPrefix : prefix;
+    }
+
+    /**
+     * Returns the prefix that is used when a guild hasn't set its own.
+     * @return the default prefix as {@code String}
+     */
+    public String getDefaultPrefix() {
+        return defaultPrefix;
+    }
+
+    /**
+     * Changes the prefix that is used when a guild hasn't set its own, e.g. after the config file was reloaded.
+     * @param defaultPrefix the new default prefix as {@code String}
+     */
+    public void setDefaultPrefix(String defaultPrefix) {
+        this.defaultPrefix = defaultPrefix;
+    }
+
+    /**
+     * Stores the custom prefix of a guild, first in the database and then in memory.
+     * @param guildId the id of the guild as {@code long}
+     * @param prefix the new prefix as {@code String}
+     * @return the completion of the write as {@link CompletionStage}, failed if it couldn't be stored
+     */
+    public CompletionStage<Void> setPrefix(long guildId, String prefix) {
+        if (prefix.equals(defaultPrefix)) {
+            // no need to store the default prefix
+            return resetPrefix(guildId);
+        }
+
+        return repository.savePrefix(guildId, prefix).thenRun(() -> {
+            synchronized (this) {
+                prefixes = prefixes.with(guildId, prefix.intern());
+                changed(guildId);
+            }
+        });
+    }
+
+    /**
+     * Removes the custom prefix of a guild, first from the database and then from memory.
+     * @param guildId the id of the guild as {@code long}
+     * @return the completion of the write as {@link CompletionStage}, failed if it couldn't be removed
+     */
+    public CompletionStage<Void> resetPrefix(long guildId) {
+        return repository.deletePrefix(guildId).thenRun(() -> {
+            synchronized (this) {
+                prefixes = prefixes.without(guildId);
+                changed(guildId);
+            }
+        });
+    }
+
+    @Override
+    public void onGuildJoin(@NotNull GuildJoinEvent event) {
+        // the bot may be rejoining a guild that had already set a prefix
+        // (the lookup doesn't block the gateway thread, the prefix is applied once it's read)
+        long guildId = event.getGuild().getIdLong();
+        repository.findPrefix(guildId).whenComplete((prefix, e) -> loadPrefix(guildId, prefix, e));
+    }
+
+    @Override
+    public void onGuildLeave(@NotNull GuildLeaveEvent event) {
+        // keep the row in case the bot gets invited back, but stop holding it in memory
+        long guildId = event.getGuild().getIdLong();
+        synchronized (this) {
+            prefixes = prefixes.without(guildId);
+            changed(guildId);
+        }
+    }
+
+    /**
+     * Loads the custom prefix of a single guild into memory, if it has one.
+     */
+    private void loadPrefix(long guildId, String prefix, Throwable e) {
+        if (e != null) {
+            Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+            LOGGER.error("Could not load the prefix of guild {}: {}", guildId, cause.getMessage());
+            return;
+        }
+
+        if (prefix != null) {
+            synchronized (this) {
+                prefixes = prefixes.with(guildId, prefix.intern());
+                changed(guildId);
+            }
+        }
+    }
+
+    /**
+     * Records that a guild's prefix changed, while the preload is running. Must be called while holding this.
+     */
+    private void changed(long guildId) {
+        if (changedWhileLoading != null) {
+            changedWhileLoading.add(guildId);
+        }
+    }
+}
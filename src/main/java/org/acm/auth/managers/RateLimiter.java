@@ -0,0 +1,213 @@
+package org.acm.auth.managers;
+
+import org.acm.auth.commands.Command;
+import org.acm.auth.commands.RateLimit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Enforces the {@link RateLimit} of each command, per user and per guild.
+ * <p>
+ * Every bucket is a single {@link AtomicLong} updated with compare-and-set (the GCRA form of a token bucket),
+ * and the buckets live in concurrent maps, so acquiring never takes a lock. Buckets that have fully refilled
+ * are dropped periodically, so memory only grows with the users and guilds that are currently active.
+ */
+class RateLimiter {
+    private static final Logger LOGGER = LogManager.getLogger(RateLimiter.class);
+
+    private static final long SWEEP_INTERVAL = 60;  // how often (in seconds) idle buckets are dropped
+
+    private final Map<Command, Buckets> buckets;
+
+    RateLimiter() {
+        this.buckets = new ConcurrentHashMap<>();
+        ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rate-limit-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, SWEEP_INTERVAL, SWEEP_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Takes a token for an invocation of a command from both the user's and the guild's bucket.
+     * Both buckets are checked before either is drawn from, so an invocation the guild's bucket rejects
+     * doesn't cost the user a token.
+     * @param cmd the invoked command as {@link Command}
+     * @param userId the id of the invoking user as {@code long}
+     * @param guildId the id of the guild the command was invoked in as {@code long}, or 0 in private channels
+     * @return {@link Verdict#ALLOWED} if the invocation may proceed, {@link Verdict#SILENT} if it's limited and
+     *         the user was already notified, otherwise which bucket limited it and for how long (the user should be notified)
+     */
+    Verdict tryAcquire(Command cmd, long userId, long guildId) {
+        RateLimit limit = cmd.getRateLimit();
+        if (limit.isUnlimited()) {
+            return Verdict.ALLOWED;
+        }
+
+        long now = System.nanoTime();
+        Buckets cmdBuckets = buckets.computeIfAbsent(cmd, c -> new Buckets(c.getRateLimit()));
+        Bucket user = limit.getUserLimit() > 0
+                ? cmdBuckets.perUser.computeIfAbsent(userId, id -> new Bucket(now)) : null;
+        Bucket guild = limit.getGuildLimit() > 0 && guildId != 0
+                ? cmdBuckets.perGuild.computeIfAbsent(guildId, id -> new Bucket(now)) : null;
+
+        while (true) {
+            // look at both buckets first, the user's is reported first since it's the one they can do something about
+            if (user != null) {
+                long wait = user.waitFor(now, cmdBuckets.userBurst);
+                if (wait > 0) {
+                    return user.notify(now, wait, false);
+                }
+            }
+            if (guild != null) {
+                long wait = guild.waitFor(now, cmdBuckets.guildBurst);
+                if (wait > 0) {
+                    return guild.notify(now, wait, true);
+                }
+            }
+
+            // both have a token, but another invocation may take it first, in which case we look again
+            if (user != null && !user.take(now, cmdBuckets.userInterval, cmdBuckets.userBurst)) {
+                continue;
+            }
+            if (guild != null && !guild.take(now, cmdBuckets.guildInterval, cmdBuckets.guildBurst)) {
+                if (user != null) {
+                    // the guild ran out in the meantime, so the user's token goes back
+                    user.giveBack(cmdBuckets.userInterval);
+                }
+                continue;
+            }
+            return Verdict.ALLOWED;
+        }
+    }
+
+    /**
+     * Drops the buckets that have fully refilled, since they're equivalent to a fresh bucket.
+     */
+    private void sweep() {
+        long now = System.nanoTime();
+        int before = 0;
+        int after = 0;
+        for (Buckets cmdBuckets : buckets.values()) {
+            before += cmdBuckets.perUser.size() + cmdBuckets.perGuild.size();
+            cmdBuckets.perUser.values().removeIf(bucket -> bucket.isIdle(now));
+            cmdBuckets.perGuild.values().removeIf(bucket -> bucket.isIdle(now));
+            after += cmdBuckets.perUser.size() + cmdBuckets.perGuild.size();
+        }
+        LOGGER.trace("Dropped {} idle rate limit buckets, {} remain", before - after, after);
+    }
+
+    /**
+     * The buckets of a single command.
+     */
+    private static final class Buckets {
+        private final Map<Long, Bucket> perUser = new ConcurrentHashMap<>();
+        private final Map<Long, Bucket> perGuild = new ConcurrentHashMap<>();
+        private final long userInterval;    // nanoseconds between two invocations at the sustained pace
+        private final long guildInterval;
+        private final long userBurst;       // nanoseconds a bucket may be ahead of now, i.e. the burst minus one
+        private final long guildBurst;
+
+        private Buckets(RateLimit limit) {
+            long window = TimeUnit.MILLISECONDS.toNanos(limit.getWindow());
+            this.userInterval = limit.getUserLimit() > 0 ? window / limit.getUserLimit() : 0;
+            this.guildInterval = limit.getGuildLimit() > 0 ? window / limit.getGuildLimit() : 0;
+            this.userBurst = window - userInterval;
+            this.guildBurst = window - guildInterval;
+        }
+    }
+
+    /**
+     * A token bucket, stored as the time at which it will be full again.
+     */
+    private static final class Bucket {
+        private final AtomicLong fullAt;        // when the bucket is full again (System.nanoTime based)
+        private final AtomicLong notifiedUntil; // until when the user already knows they're limited
+
+        private Bucket(long now) {
+            this.fullAt = new AtomicLong(now);
+            this.notifiedUntil = new AtomicLong(now);
+        }
+
+        /**
+         * Returns how long until the bucket has a token, without taking it.
+         */
+        private long waitFor(long now, long burst) {
+            long current = fullAt.get();
+            long start = current - now > 0 ? current : now; // nanoTime values may only be compared by subtraction
+            return start - now > burst ? start - now - burst : 0;
+        }
+
+        /**
+         * Takes a token, unless the bucket is empty.
+         */
+        private boolean take(long now, long interval, long burst) {
+            while (true) {
+                long current = fullAt.get();
+                long start = current - now > 0 ? current : now;
+                if (start - now > burst) {
+                    return false;
+                }
+                if (fullAt.compareAndSet(current, start + interval)) {
+                    return true;
+                }
+                // another invocation took a token at the same time, try again
+            }
+        }
+
+        /**
+         * Returns a token taken by {@link #take}.
+         */
+        private void giveBack(long interval) {
+            // a bucket that ends up full before now is simply full, see waitFor
+            fullAt.addAndGet(-interval);
+        }
+
+        /**
+         * Makes sure that only the first rejection of a cooldown leads to a reply.
+         */
+        private Verdict notify(long now, long wait, boolean guild) {
+            long until = notifiedUntil.get();
+            if (until - now < 0 && notifiedUntil.compareAndSet(until, now + wait)) {
+                return new Verdict(Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)), guild);
+            }
+            return Verdict.SILENT;
+        }
+
+        private boolean isIdle(long now) {
+            return fullAt.get() - now <= 0;
+        }
+    }
+
+    /**
+     * The outcome of {@link #tryAcquire}.
+     */
+    static final class Verdict {
+        static final Verdict ALLOWED = new Verdict(0, false); // the invocation may proceed
+        static final Verdict SILENT = new Verdict(0, false);  // the invocation is limited and the user has already been told so
+
+        private final long wait;        // milliseconds until the invocation would be allowed
+        private final boolean guild;    // whether the guild's bucket limited it, rather than the user's
+
+        private Verdict(long wait, boolean guild) {
+            this.wait = wait;
+            this.guild = guild;
+        }
+
+        long getWait() {
+            return wait;
+        }
+
+        boolean isGuild() {
+            return guild;
+        }
+    }
+}
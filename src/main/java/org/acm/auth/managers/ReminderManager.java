@@ -0,0 +1,185 @@
+package org.acm.auth.managers;
+
+import com.vdurmont.emoji.EmojiParser;
+import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.entities.TextChannel;
+import net.dv8tion.jda.api.sharding.ShardManager;
+import org.acm.auth.calendar.CalendarEvent;
+import org.acm.auth.calendar.EventIndex;
+import org.acm.auth.metrics.Counter;
+import org.acm.auth.metrics.LatencyHistogram;
+import org.acm.auth.metrics.Metrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.awt.*;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reminds each guild of its calendar's events a few minutes before they start,
+ * in the guild's system channel (the one Discord posts its welcome messages in).
+ * <p>
+ * Every {@link #TICK} seconds the events that start within the next window are read from the event indexes,
+ * and each guild gets a single message for all of them. The messages aren't sent all at once: they go out in
+ * waves of {@link #WAVE_SIZE} per second, which leaves most of the bot's global rate limit to the commands,
+ * however many guilds share a popular calendar.
+ * <p>
+ * Reminders are opt-in: since they post in a channel no guild chose for them, they're only sent when
+ * {@link org.acm.auth.config.ConfigKey#REMINDER_LEAD} is set above 0 in the config file.
+ */
+public class ReminderManager {
+    private static final Logger LOGGER = LogManager.getLogger(ReminderManager.class);
+
+    private static final long TICK = 30;           // seconds between two reads of the indexes
+    private static final int WAVE_SIZE = 20;       // reminders sent per wave, out of Discord's 50 requests per second
+    private static final long WAVE_INTERVAL = 1;   // seconds between two waves
+    private static final int MAX_EVENTS = 10;      // events listed in a single reminder
+
+    private static final Counter SENT = reminders("sent");
+    private static final Counter FAILED = reminders("failed");
+    private static final Counter SKIPPED = reminders("skipped");
+    private static final LatencyHistogram LAG = Metrics.histogram(Metrics.CALENDAR_REMINDER_LAG);
+
+    private final EventSyncManager events;
+    private final long lead;
+    private final ScheduledExecutorService scheduler;
+
+    private final Queue<Reminder> pending = new ConcurrentLinkedQueue<>();
+    // only touched by the scheduler's thread
+    private long remindedUntil; // events that start before this time plus the lead, in epoch millis, were reminded
+    private ShardManager shards;
+
+    /**
+     * Constructs a reminder manager. Nothing is sent until it's {@link #start started}.
+     * @param events the event sync manager the events are read from as {@link EventSyncManager}
+     * @param lead the minutes before an event starts its reminder is sent as {@code long}
+     */
+    public ReminderManager(EventSyncManager events, long lead) {
+        this.events = events;
+        this.lead = TimeUnit.MINUTES.toMillis(lead);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "calendar-reminders");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Metrics.gauge(Metrics.CALENDAR_REMINDERS_PENDING, pending::size);
+    }
+
+    private static Counter reminders(String outcome) {
+        return Metrics.counter(Metrics.CALENDAR_REMINDERS, "outcome", outcome);
+    }
+
+    /**
+     * Starts reminding the guilds of the events that start from now on (plus the lead).
+     * Events that were about to start when the bot restarted aren't reminded of again.
+     * @param shards the shards the guilds are on as {@link ShardManager}
+     */
+    public void start(ShardManager shards) {
+        scheduler.execute(() -> {
+            this.shards = shards;
+            this.remindedUntil = System.currentTimeMillis();
+        });
+        scheduler.scheduleWithFixedDelay(this::tick, TICK, TICK, TimeUnit.SECONDS);
+        scheduler.scheduleWithFixedDelay(this::sendWave, WAVE_INTERVAL, WAVE_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    private void tick() {
+        long now = System.currentTimeMillis();
+        try {
+            for (Map.Entry<String, List<Long>> calendar : events.getGuildsByCalendar().entrySet()) {
+                EventIndex index = events.getIndex(calendar.getKey());
+                if (index == null) {
+                    continue;
+                }
+                List<CalendarEvent> starting = index.startingBetween(remindedUntil + lead, now + lead);
+                // all-day events start at midnight UTC, which isn't when anyone needs a reminder
+                starting.removeIf(CalendarEvent::isAllDay);
+                if (starting.isEmpty()) {
+                    continue;
+                }
+                // due when the first of them had to be reminded of
+                long due = starting.get(0).getStart() - lead;
+                MessageEmbed message = buildMessageEmbed(starting.subList(0, Math.min(starting.size(), MAX_EVENTS)));
+                for (long guildId : calendar.getValue()) {
+                    pending.add(new Reminder(guildId, message, due));
+                }
+            }
+        } catch (RuntimeException exception) {
+            // an exception escaping a scheduled task would cancel every following tick
+            LOGGER.error("Could not read the events to remind of", exception);
+        }
+        remindedUntil = now;
+    }
+
+    private void sendWave() {
+        for (int i = 0; i < WAVE_SIZE && !pending.isEmpty(); i++) {
+            Reminder reminder = pending.poll();
+            Guild guild = shards.getGuildById(reminder.guildId);
+            TextChannel channel = guild == null ? null : guild.getSystemChannel();
+            if (channel == null || !channel.canTalk()) {
+                // the bot left the guild, or has nowhere to post
+                SKIPPED.increment();
+                continue;
+            }
+            try {
+                channel.sendMessage(reminder.message).queue(
+                        message -> {
+                            SENT.increment();
+                            LAG.record(TimeUnit.MILLISECONDS.toNanos(Math.max(System.currentTimeMillis() - reminder.due, 0)));
+                        },
+                        failure -> {
+                            FAILED.increment();
+                            LOGGER.warn("Could not remind guild {}: {}", reminder.guildId, failure.getMessage());
+                        });
+            } catch (RuntimeException exception) {
+                // e.g. the permissions changed since we checked
+                FAILED.increment();
+                LOGGER.warn("Could not remind guild {}: {}", reminder.guildId, exception.getMessage());
+            }
+        }
+    }
+
+    private static MessageEmbed buildMessageEmbed(List<CalendarEvent> starting) {
+        EmbedBuilder embed = new EmbedBuilder()
+                .setTitle(EmojiParser.parseToUnicode(":alarm_clock:") + " Starting Soon "
+                        + EmojiParser.parseToUnicode(":alarm_clock:"))
+                .setFooter(EmojiParser.parseToUnicode(":robot_face:") +
+                        " Powered by ACM Auth Bot Development team " +
+                        EmojiParser.parseToUnicode(":robot_face:"))
+                .setColor(Color.decode("#309ECF"));
+        for (CalendarEvent event : starting) {
+            String title = event.getSummary() == null ? "(no title)" : event.getSummary();
+            StringBuilder value = new StringBuilder(String.format("<t:%d:t> (<t:%d:R>)",
+                    TimeUnit.MILLISECONDS.toSeconds(event.getStart()), TimeUnit.MILLISECONDS.toSeconds(event.getStart())));
+            if (event.getLocation() != null) {
+                value.append("\n").append(EmojiParser.parseToUnicode(":round_pushpin:")).append(' ')
+                        .append(event.getLocation());
+            }
+            embed.addField(new MessageEmbed.Field(title, value.toString(), false, true));
+        }
+        return embed.build();
+    }
+
+    /**
+     * A reminder waiting for its wave.
+     */
+    private static final class Reminder {
+        private final long guildId;
+        private final MessageEmbed message;
+        private final long due; // epoch millis
+
+        private Reminder(long guildId, MessageEmbed message, long due) {
+            this.guildId = guildId;
+            this.message = message;
+            this.due = due;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.acm.auth.managers;
+
+import net.dv8tion.jda.api.events.GenericEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import org.acm.auth.metrics.Counter;
+import org.acm.auth.metrics.Metrics;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts the gateway events each shard delivers, and keeps the recent event rate of each shard.
+ */
+public class ShardMonitor extends ListenerAdapter {
+    private static final long SAMPLE_INTERVAL = 10; // seconds between two rate samples
+
+    private final Map<Integer, ShardStats> shards = new ConcurrentHashMap<>();
+
+    public ShardMonitor() {
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "shard-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleAtFixedRate(this::sample, SAMPLE_INTERVAL, SAMPLE_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void onGenericEvent(@NotNull GenericEvent event) {
+        shards.computeIfAbsent(event.getJDA().getShardInfo().getShardId(), ShardStats::new).events.increment();
+    }
+
+    /**
+     * Returns the events per second a shard delivered during the last sample interval.
+     * @param shardId the id of the shard as {@code int}
+     * @return the event rate as {@code double}
+     */
+    public double getEventRate(int shardId) {
+        ShardStats stats = shards.get(shardId);
+        return stats == null ? 0 : stats.rate;
+    }
+
+    /**
+     * Returns the amount of events a shard delivered since the bot started.
+     * @param shardId the id of the shard as {@code int}
+     * @return the event count as {@code long}
+     */
+    public long getEventCount(int shardId) {
+        ShardStats stats = shards.get(shardId);
+        return stats == null ? 0 : stats.events.get();
+    }
+
+    private void sample() {
+        for (ShardStats stats : shards.values()) {
+            long count = stats.events.get();
+            stats.rate = (count - stats.lastCount) / (double) SAMPLE_INTERVAL;
+            stats.lastCount = count;
+        }
+    }
+
+    private static final class ShardStats {
+        private final Counter events;
+        private long lastCount;         // only touched by the sampler
+        private volatile double rate;
+
+        private ShardStats(int shardId) {
+            this.events = Metrics.counter("gateway_events_total", "shard", Integer.toString(shardId));
+        }
+    }
+}
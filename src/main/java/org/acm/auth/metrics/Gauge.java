@@ -0,0 +1,23 @@
+package org.acm.auth.metrics;
+
+import java.util.function.LongSupplier;
+
+/**
+ * A value that is read when the metrics are rendered, e.g. the size of a pool.
+ */
+public final class Gauge extends Metric {
+    private volatile LongSupplier value;
+
+    Gauge(String name, String labels, LongSupplier value) {
+        super(name, labels);
+        this.value = value;
+    }
+
+    void set(LongSupplier value) {
+        this.value = value;
+    }
+
+    public long get() {
+        return value.getAsLong();
+    }
+}
@@ -0,0 +1,117 @@
+package org.acm.auth.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free latency histogram with log-linear buckets.
+ * <p>
+ * Latencies are recorded in microseconds into buckets that split every power of two into 8 equal parts,
+ * so any percentile is accurate to within 12.5% while the whole histogram stays a few kilobytes.
+ * Recording is a handful of atomic increments and never allocates.
+ */
+public final class LatencyHistogram extends Metric {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();                          // in microseconds
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);  // in microseconds
+
+    LatencyHistogram(String name, String labels) {
+        super(name, labels);
+    }
+
+    /**
+     * Records a latency.
+     * @param nanos the latency in nanoseconds as {@code long}
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        counts.incrementAndGet(indexOf(micros));
+        count.increment();
+        sum.add(micros);
+        max.accumulate(micros);
+    }
+
+    /**
+     * Records the time elapsed since a {@link System#nanoTime()} reading.
+     * @param startNanos the reading taken when the measured operation started as {@code long}
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the sum of all recorded latencies.
+     * @return the sum in microseconds as {@code long}
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * Returns the highest recorded latency.
+     * @return the maximum in microseconds as {@code long}
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Estimates a percentile of the recorded latencies.
+     * Concurrent recordings may or may not be taken into account.
+     * @param percentile the percentile between 0 and 1 as {@code double}
+     * @return the estimated latency in microseconds as {@code long}, or 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                // report the middle of the bucket, but never more than the highest value we've seen
+                long lower = lowerBoundOf(i);
+                long upper = lowerBoundOf(i + 1);
+                return Math.min(lower + (upper - lower) / 2, getMax());
+            }
+        }
+        return getMax();
+    }
+
+    private static int indexOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long lowerBoundOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+}
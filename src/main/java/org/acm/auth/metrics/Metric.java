@@ -0,0 +1,44 @@
+package org.acm.auth.metrics;
+
+/**
+ * The common identity of every metric: a name and its (already rendered) labels,
+ * e.g. {@code command_latency_seconds} and {@code command="gif",outcome="success"}.
+ */
+public abstract class Metric {
+    private final String name;
+    private final String labels;
+
+    Metric(String name, String labels) {
+        this.name = name;
+        this.labels = labels;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getLabels() {
+        return labels;
+    }
+
+    /**
+     * Returns the value of a single label.
+     * @param label the label's name as {@code String}
+     * @return the label's value as {@code String}, or {@code null} if the metric doesn't have it
+     */
+    public String getLabel(String label) {
+        String start = label + "=\"";
+        int from;
+        if (labels.startsWith(start)) {
+            from = 0;
+        } else {
+            int comma = labels.indexOf("," + start);
+            if (comma < 0) {
+                return null;
+            }
+            from = comma + 1;
+        }
+        int valueStart = from + start.length();
+        return labels.substring(valueStart, labels.indexOf('"', valueStart));
+    }
+}
@@ -0,0 +1,188 @@
+package org.acm.auth.metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * The registry of all the bot's metrics.
+ * <p>
+ * Metrics are created on first use and then live for the whole run. Looking a metric up builds its key,
+ * so hot paths should look their metrics up once and keep them in a field.
+ */
+public final class Metrics {
+    // latency of each command invocation, by command and outcome (success, error, timeout)
+    public static final String COMMAND_LATENCY = "command_latency_seconds";
+    // time spent waiting in the executor's queue before an invocation started
+    public static final String COMMAND_QUEUE_TIME = "command_queue_seconds";
+    // messages that matched a command but were rejected, by reason
+    public static final String COMMAND_REJECTIONS = "command_rejections_total";
+    // latency of each call to an upstream service, by upstream and outcome (ok, error)
+    public static final String UPSTREAM_LATENCY = "upstream_latency_seconds";
+    // lookups in the in-memory caches in front of upstream services, by cache and result (hit, miss)
+    public static final String CACHE_LOOKUPS = "cache_lookups_total";
+    // upstream calls that were served by an identical call already in flight, by call
+    public static final String COLLAPSED_CALLS = "collapsed_calls_total";
+    // transitions of the upstream services' circuit breakers, by dependency and the state entered
+    public static final String CIRCUIT_TRANSITIONS = "circuit_transitions_total";
+    // upstream calls rejected without being made, by dependency and reason (circuit_open, bulkhead_full)
+    public static final String DEPENDENCY_REJECTIONS = "dependency_rejections_total";
+    // connections of the database pool, by state (active, idle, total, max) and threads waiting for one
+    public static final String DB_POOL_CONNECTIONS = "db_pool_connections";
+    public static final String DB_POOL_PENDING = "db_pool_pending_threads";
+    // time spent waiting for a pooled connection, and time each connection was held before being returned
+    public static final String DB_CONNECTION_ACQUIRE = "db_connection_acquire_seconds";
+    public static final String DB_CONNECTION_USAGE = "db_connection_usage_seconds";
+    // time spent opening a new physical connection
+    public static final String DB_CONNECTION_CREATE = "db_connection_create_seconds";
+    // requests for a connection that gave up because the pool stayed exhausted
+    public static final String DB_CONNECTION_TIMEOUTS = "db_connection_timeouts_total";
+    // syncs of the guilds' calendar events, by type (full, incremental) and outcome (ok, gone, error)
+    public static final String CALENDAR_SYNCS = "calendar_syncs_total";
+    // calendars and events held in the event indexes
+    public static final String CALENDAR_INDEX_SIZE = "calendar_index_size";
+    // batch requests sent by the syncs, time each sync round took, and calendars synced per second in the last round
+    public static final String CALENDAR_SYNC_BATCHES = "calendar_sync_batches_total";
+    public static final String CALENDAR_SYNC_ROUND = "calendar_sync_round_seconds";
+    public static final String CALENDAR_REFRESH_RATE = "calendar_refresh_per_second";
+    // calendar reminders, by outcome (sent, failed, skipped), and the time between when they were due and when
+    // Discord accepted them
+    public static final String CALENDAR_REMINDERS = "calendar_reminders_total";
+    public static final String CALENDAR_REMINDER_LAG = "calendar_reminder_lag_seconds";
+    // reminders waiting for their wave
+    public static final String CALENDAR_REMINDERS_PENDING = "calendar_reminders_pending";
+    // poll votes read from reactions, by change (added, removed, moved, ignored), and the polls being tallied
+    public static final String POLL_VOTES = "poll_votes_total";
+    public static final String POLLS_TRACKED = "polls_tracked";
+    // edits of the polls' embeds, by outcome (ok, error)
+    public static final String POLL_EDITS = "poll_edits_total";
+
+    private static final Map<String, Metric> METRICS = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * Returns the counter with the given name and labels, creating it if needed.
+     * @param name the metric's name as {@code String}
+     * @param labels alternating label names and values as {@code String...}
+     * @return the counter as {@link Counter}
+     */
+    public static Counter counter(String name, String... labels) {
+        String rendered = renderLabels(labels);
+        return (Counter) METRICS.computeIfAbsent(name + "{" + rendered + "}", key -> new Counter(name, rendered));
+    }
+
+    /**
+     * Returns the latency histogram with the given name and labels, creating it if needed.
+     * @param name the metric's name as {@code String}
+     * @param labels alternating label names and values as {@code String...}
+     * @return the histogram as {@link LatencyHistogram}
+     */
+    public static LatencyHistogram histogram(String name, String... labels) {
+        String rendered = renderLabels(labels);
+        return (LatencyHistogram) METRICS.computeIfAbsent(name + "{" + rendered + "}",
+                key -> new LatencyHistogram(name, rendered));
+    }
+
+    /**
+     * Registers a gauge with the given name and labels, replacing the supplier of an existing one.
+     * @param name the metric's name as {@code String}
+     * @param value supplies the gauge's current value as {@link LongSupplier}
+     * @param labels alternating label names and values as {@code String...}
+     * @return the gauge as {@link Gauge}
+     */
+    public static Gauge gauge(String name, LongSupplier value, String... labels) {
+        String rendered = renderLabels(labels);
+        Gauge gauge = (Gauge) METRICS.computeIfAbsent(name + "{" + rendered + "}", key -> new Gauge(name, rendered, value));
+        gauge.set(value);
+        return gauge;
+    }
+
+    /**
+     * Returns all the metrics with the given name, sorted by their labels.
+     * @param name the metrics' name as {@code String}
+     * @return the metrics as {@code List<Metric>}
+     */
+    public static List<Metric> named(String name) {
+        List<Metric> named = new ArrayList<>();
+        for (Metric metric : METRICS.values()) {
+            if (metric.getName().equals(name)) {
+                named.add(metric);
+            }
+        }
+        named.sort(Comparator.comparing(Metric::getLabels));
+        return named;
+    }
+
+    /**
+     * Renders every metric in the Prometheus text exposition format.
+     * Histograms are exposed as summaries with a few fixed quantiles.
+     * @return the rendered metrics as {@code String}
+     */
+    public static String renderPrometheus() {
+        List<Metric> all = new ArrayList<>(METRICS.values());
+        all.sort(Comparator.comparing(Metric::getName).thenComparing(Metric::getLabels));
+
+        StringBuilder sb = new StringBuilder();
+        String previous = null;
+        for (Metric metric : all) {
+            String name = metric.getName();
+            String labels = metric.getLabels();
+            if (!name.equals(previous)) {
+                String type = metric instanceof Counter ? " counter" : metric instanceof Gauge ? " gauge" : " summary";
+                sb.append("# TYPE ").append(name).append(type).append('\n');
+                previous = name;
+            }
+
+            if (metric instanceof Counter) {
+                appendSample(sb, name, labels, null, Long.toString(((Counter) metric).get()));
+            } else if (metric instanceof Gauge) {
+                appendSample(sb, name, labels, null, Long.toString(((Gauge) metric).get()));
+            } else {
+                LatencyHistogram histogram = (LatencyHistogram) metric;
+                for (String quantile : new String[]{"0.5", "0.9", "0.99"}) {
+                    long micros = histogram.getPercentile(Double.parseDouble(quantile));
+                    appendSample(sb, name, labels, "quantile=\"" + quantile + "\"", seconds(micros));
+                }
+                appendSample(sb, name + "_sum", labels, null, seconds(histogram.getSum()));
+                appendSample(sb, name + "_count", labels, null, Long.toString(histogram.getCount()));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void appendSample(StringBuilder sb, String name, String labels, String extraLabel, String value) {
+        sb.append(name);
+        if (!labels.isEmpty() || extraLabel != null) {
+            sb.append('{').append(labels);
+            if (extraLabel != null) {
+                sb.append(labels.isEmpty() ? "" : ",").append(extraLabel);
+            }
+            sb.append('}');
+        }
+        sb.append(' ').append(value).append('\n');
+    }
+
+    private static String seconds(long micros) {
+        return Double.toString(micros / 1_000_000.0);
+    }
+
+    private static String renderLabels(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be given as name-value pairs");
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            String value = labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+            sb.append(labels[i]).append("=\"").append(value).append('"');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,51 @@
+package org.acm.auth.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the bot's metrics in the Prometheus text format on {@code /metrics}.
+ * The server only listens on the loopback interface, so it has to be scraped from the same host.
+ */
+public class MetricsServer {
+    private static final Logger LOGGER = LogManager.getLogger(MetricsServer.class);
+
+    private final HttpServer server;
+
+    /**
+     * Starts a metrics server.
+     * @param port the local port to listen on as {@code int}
+     * @throws IOException if the server can't bind to the port
+     */
+    public MetricsServer(int port) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.server.createContext("/metrics", exchange -> {
+            byte[] body = Metrics.renderPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        // scrapes are rare, a single thread is plenty
+        this.server.setExecutor(Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-server");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        this.server.start();
+        LOGGER.info("Serving metrics on http://localhost:{}/metrics", port);
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,109 @@
+package org.acm.auth.repositories;
+
+import org.acm.auth.db.Tables;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.jooq.DSLContext;
+import org.jooq.SQLDialect;
+import org.jooq.conf.Settings;
+import org.jooq.impl.DSL;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Stores the guild data in an H2 database embedded in the bot's process, for single-node deployments
+ * that don't want to run a MariaDB server next to the bot.
+ * <p>
+ * The database is a single file, created with its tables on first use. Queries never leave the process,
+ * so they run on the caller's thread and the returned stages are already complete.
+ * H2 closes the database by itself when the JVM exits.
+ */
+public class EmbeddedGuildRepository implements GuildRepository {
+    private static final Logger LOGGER = LogManager.getLogger(EmbeddedGuildRepository.class);
+
+    // the generated tables are qualified with MariaDB's schema, which the embedded database doesn't have
+    private static final Settings SETTINGS = new Settings().withRenderSchema(false);
+    private static final GuildQueries CALENDARS = new GuildQueries(SQLDialect.H2, SETTINGS,
+            Tables.CALENDARS, Tables.CALENDARS.GUILD_ID, Tables.CALENDARS.CALENDAR_ID);
+    private static final GuildQueries PREFIXES = new GuildQueries(SQLDialect.H2, SETTINGS,
+            Tables.PREFIXES, Tables.PREFIXES.GUILD_ID, Tables.PREFIXES.PREFIX);
+
+    private final DSLContext dsl;
+
+    /**
+     * Opens the embedded database, creating it if it doesn't exist.
+     * @param path the path of the database file, without its extension, as {@code String}
+     */
+    public EmbeddedGuildRepository(String path) {
+        this.dsl = DSL.using(JdbcConnectionPool.create("jdbc:h2:" + path, "", ""), SQLDialect.H2, SETTINGS);
+
+        Schema.createMissingTables(dsl);
+        LOGGER.info("Opened the embedded database at {}", path);
+    }
+
+    @Override
+    public CompletionStage<String> findCalendarId(long guildId) {
+        return run(() -> CALENDARS.find(dsl, guildId));
+    }
+
+    @Override
+    public CompletionStage<Void> saveCalendarId(long guildId, String calendarId) {
+        return run(() -> {
+            CALENDARS.save(dsl, guildId, calendarId);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletionStage<Void> deleteCalendarId(long guildId) {
+        return run(() -> {
+            CALENDARS.delete(dsl, guildId);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletionStage<Integer> forEachCalendar(int limit, BiConsumer<Long, String> consumer) {
+        return run(() -> CALENDARS.forEach(dsl, limit, consumer));
+    }
+
+    @Override
+    public CompletionStage<String> findPrefix(long guildId) {
+        return run(() -> PREFIXES.find(dsl, guildId));
+    }
+
+    @Override
+    public CompletionStage<Void> savePrefix(long guildId, String prefix) {
+        return run(() -> {
+            PREFIXES.save(dsl, guildId, prefix);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletionStage<Void> deletePrefix(long guildId) {
+        return run(() -> {
+            PREFIXES.delete(dsl, guildId);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletionStage<Integer> forEachPrefix(BiConsumer<Long, String> consumer) {
+        return run(() -> PREFIXES.forEach(dsl, Integer.MAX_VALUE, consumer));
+    }
+
+    private static <T> CompletionStage<T> run(Supplier<T> query) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            result.complete(query.get());
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,101 @@
+package org.acm.auth.repositories;
+
+import org.jooq.Cursor;
+import org.jooq.DSLContext;
+import org.jooq.Param;
+import org.jooq.Query;
+import org.jooq.Record;
+import org.jooq.SQLDialect;
+import org.jooq.Table;
+import org.jooq.TableField;
+import org.jooq.conf.Settings;
+import org.jooq.impl.DSL;
+
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * The queries on a table that stores one value per guild (e.g. the calendars or the prefixes table),
+ * rendered once for a SQL dialect.
+ * Each query then always runs with the same text, so that each connection reuses the prepared statement
+ * it cached for it.
+ */
+final class GuildQueries {
+    // named after themselves, so that the rendered queries tell which value goes to which placeholder
+    private static final Param<String> GUILD_ID = DSL.param("guild_id", "guild_id");
+    private static final Param<String> VALUE = DSL.param("value", "value");
+
+    private final String select;
+    private final String upsert;
+    // the order of the upsert's bind values, which depends on how the dialect emulates it
+    private final boolean[] upsertBindsGuildId;
+    private final String delete;
+    private final String selectAll;
+
+    /**
+     * Renders the queries.
+     * @param dialect the dialect of the database as {@link SQLDialect}
+     * @param settings how to render the queries, e.g. without the schema, as {@link Settings}
+     * @param table the table as {@link Table}
+     * @param guildId the table's primary key, the id of the guild, as {@link TableField}
+     * @param value the value the table stores for each guild as {@link TableField}
+     */
+    <R extends Record> GuildQueries(SQLDialect dialect, Settings settings, Table<R> table,
+                                    TableField<R, String> guildId, TableField<R, String> value) {
+        DSLContext create = DSL.using(dialect, settings);
+        select = create.render(create
+                .select(value)
+                .from(table)
+                .where(guildId.eq((String) null)));
+        // if the guild id already exists update the corresponding value
+        // (ON DUPLICATE KEY UPDATE on MariaDB, a MERGE on H2)
+        Query upsertQuery = create
+                .insertInto(table, guildId, value)
+                .values(GUILD_ID, VALUE)
+                .onConflict(guildId)
+                .doUpdate()
+                .set(value, VALUE);
+        upsert = create.render(upsertQuery);
+        List<Object> binds = create.extractBindValues(upsertQuery);
+        upsertBindsGuildId = new boolean[binds.size()];
+        for (int i = 0; i < upsertBindsGuildId.length; i++) {
+            upsertBindsGuildId[i] = GUILD_ID.getName().equals(binds.get(i));
+        }
+        delete = create.render(create
+                .deleteFrom(table)
+                .where(guildId.eq((String) null)));
+        selectAll = create.render(create
+                .select(guildId, value)
+                .from(table));
+    }
+
+    String find(DSLContext dsl, long guildId) {
+        return dsl.resultQuery(select, Long.toUnsignedString(guildId))
+                .fetchOptional(0, String.class)
+                .orElse(null);
+    }
+
+    void save(DSLContext dsl, long guildId, String value) {
+        Object[] binds = new Object[upsertBindsGuildId.length];
+        for (int i = 0; i < binds.length; i++) {
+            binds[i] = upsertBindsGuildId[i] ? Long.toUnsignedString(guildId) : value;
+        }
+        dsl.query(upsert, binds).execute();
+    }
+
+    void delete(DSLContext dsl, long guildId) {
+        dsl.query(delete, Long.toUnsignedString(guildId)).execute();
+    }
+
+    int forEach(DSLContext dsl, int limit, BiConsumer<Long, String> consumer) {
+        int streamed = 0;
+        try (Cursor<Record> cursor = dsl.resultQuery(selectAll).fetchLazy()) {
+            while (streamed < limit && cursor.hasNext()) {
+                Record record = cursor.fetchNext();
+                consumer.accept(Long.parseUnsignedLong(record.get(0, String.class)), record.get(1, String.class));
+                streamed++;
+            }
+        }
+        return streamed;
+    }
+}
@@ -0,0 +1,73 @@
+package org.acm.auth.repositories;
+
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiConsumer;
+
+/**
+ * Reads and writes the data the bot stores for each guild: its calendar and its custom command prefix.
+ * <p>
+ * Implementations never block their caller on a remote call: the returned stages either complete
+ * on a thread of the implementation, or are already complete if the storage is local.
+ * Callers therefore shouldn't block in the stages' callbacks.
+ * The backend is selected with {@link org.acm.auth.config.ConfigKey#STORAGE}.
+ */
+public interface GuildRepository {
+    /**
+     * Returns the calendar id of a guild.
+     * @param guildId the id of the guild as {@code long}
+     * @return the calendar id as {@link CompletionStage}, completed with {@code null} if the guild hasn't set one
+     */
+    CompletionStage<String> findCalendarId(long guildId);
+
+    /**
+     * Stores the calendar id of a guild, replacing any previous one.
+     * @param guildId the id of the guild as {@code long}
+     * @param calendarId the calendar id as {@code String}
+     * @return the completion of the write as {@link CompletionStage}
+     */
+    CompletionStage<Void> saveCalendarId(long guildId, String calendarId);
+
+    /**
+     * Removes the calendar id of a guild, if it has one.
+     * @param guildId the id of the guild as {@code long}
+     * @return the completion of the write as {@link CompletionStage}
+     */
+    CompletionStage<Void> deleteCalendarId(long guildId);
+
+    /**
+     * Streams the calendar of every guild that has set one, without materializing all of them at once.
+     * @param limit the maximum amount of calendars to stream as {@code int}
+     * @param consumer receives each guild id and its calendar id as {@link BiConsumer}
+     * @return the amount of calendars streamed as {@link CompletionStage}
+     */
+    CompletionStage<Integer> forEachCalendar(int limit, BiConsumer<Long, String> consumer);
+
+    /**
+     * Returns the custom command prefix of a guild.
+     * @param guildId the id of the guild as {@code long}
+     * @return the prefix as {@link CompletionStage}, completed with {@code null} if the guild uses the default one
+     */
+    CompletionStage<String> findPrefix(long guildId);
+
+    /**
+     * Stores the custom command prefix of a guild, replacing any previous one.
+     * @param guildId the id of the guild as {@code long}
+     * @param prefix the prefix as {@code String}
+     * @return the completion of the write as {@link CompletionStage}
+     */
+    CompletionStage<Void> savePrefix(long guildId, String prefix);
+
+    /**
+     * Removes the custom command prefix of a guild, if it has one.
+     * @param guildId the id of the guild as {@code long}
+     * @return the completion of the write as {@link CompletionStage}
+     */
+    CompletionStage<Void> deletePrefix(long guildId);
+
+    /**
+     * Streams the custom prefix of every guild that has set one, without materializing all of them at once.
+     * @param consumer receives each guild id and its prefix as {@link BiConsumer}
+     * @return the amount of prefixes streamed as {@link CompletionStage}
+     */
+    CompletionStage<Integer> forEachPrefix(BiConsumer<Long, String> consumer);
+}
@@ -0,0 +1,110 @@
+package org.acm.auth.repositories;
+
+import org.acm.auth.db.Tables;
+import org.acm.auth.resilience.Dependency;
+import org.acm.auth.resilience.DependencyUnavailableException;
+import org.acm.auth.services.Database;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jooq.SQLDialect;
+import org.jooq.conf.Settings;
+import org.jooq.exception.DataAccessException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Stores the guild data in the MariaDB server of {@link Database}.
+ * <p>
+ * Every query runs on {@link Database#executor()} rather than on the caller's thread, and returns
+ * a {@link CompletionStage} that completes on a database thread.
+ * Lookups and writes go through {@link Dependency#DATABASE}, so they fail fast with a
+ * {@link DependencyUnavailableException} while the server is down.
+ */
+public class MariaDbGuildRepository implements GuildRepository {
+    private static final Logger LOGGER = LogManager.getLogger(MariaDbGuildRepository.class);
+
+    private static final GuildQueries CALENDARS = new GuildQueries(SQLDialect.MARIADB, new Settings(),
+            Tables.CALENDARS, Tables.CALENDARS.GUILD_ID, Tables.CALENDARS.CALENDAR_ID);
+    private static final GuildQueries PREFIXES = new GuildQueries(SQLDialect.MARIADB, new Settings(),
+            Tables.PREFIXES, Tables.PREFIXES.GUILD_ID, Tables.PREFIXES.PREFIX);
+
+    /**
+     * Creates the tables that don't exist yet. MariaDB only runs {@code db/init} on an empty volume,
+     * so this is what adds the tables of newer versions (e.g. the prefixes) to an existing database.
+     * If the server can't be reached, the tables are checked again on the next startup.
+     */
+    public void createMissingTables() {
+        try {
+            Schema.createMissingTables(Database.dsl());
+        } catch (DataAccessException e) {
+            LOGGER.error("Could not create the missing tables: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public CompletionStage<String> findCalendarId(long guildId) {
+        return Dependency.DATABASE.executeAsync(() -> submit(() -> CALENDARS.find(Database.dsl(), guildId)));
+    }
+
+    @Override
+    public CompletionStage<Void> saveCalendarId(long guildId, String calendarId) {
+        return Dependency.DATABASE.executeAsync(() -> submit(() -> {
+            CALENDARS.save(Database.dsl(), guildId, calendarId);
+            return null;
+        }));
+    }
+
+    @Override
+    public CompletionStage<Void> deleteCalendarId(long guildId) {
+        return Dependency.DATABASE.executeAsync(() -> submit(() -> {
+            CALENDARS.delete(Database.dsl(), guildId);
+            return null;
+        }));
+    }
+
+    @Override
+    public CompletionStage<Integer> forEachCalendar(int limit, BiConsumer<Long, String> consumer) {
+        return submit(() -> CALENDARS.forEach(Database.dsl(), limit, consumer));
+    }
+
+    @Override
+    public CompletionStage<String> findPrefix(long guildId) {
+        return Dependency.DATABASE.executeAsync(() -> submit(() -> PREFIXES.find(Database.dsl(), guildId)));
+    }
+
+    @Override
+    public CompletionStage<Void> savePrefix(long guildId, String prefix) {
+        return Dependency.DATABASE.executeAsync(() -> submit(() -> {
+            PREFIXES.save(Database.dsl(), guildId, prefix);
+            return null;
+        }));
+    }
+
+    @Override
+    public CompletionStage<Void> deletePrefix(long guildId) {
+        return Dependency.DATABASE.executeAsync(() -> submit(() -> {
+            PREFIXES.delete(Database.dsl(), guildId);
+            return null;
+        }));
+    }
+
+    @Override
+    public CompletionStage<Integer> forEachPrefix(BiConsumer<Long, String> consumer) {
+        return submit(() -> PREFIXES.forEach(Database.dsl(), Integer.MAX_VALUE, consumer));
+    }
+
+    private static <T> CompletableFuture<T> submit(Supplier<T> query) {
+        try {
+            return CompletableFuture.supplyAsync(query, Database.executor());
+        } catch (RejectedExecutionException e) {
+            // every database thread is busy and the queue is full
+            CompletableFuture<T> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(e);
+            return rejected;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package org.acm.auth.repositories;
+
+import org.acm.auth.db.Tables;
+import org.jooq.DSLContext;
+import org.jooq.impl.DSL;
+
+/**
+ * The tables of the guild data, the same as {@code db/init/01-schema.sql}.
+ */
+final class Schema {
+    private Schema() {
+    }
+
+    /**
+     * Creates the tables that don't exist yet, leaving the existing ones (and their rows) alone.
+     * @param dsl the context of the database as {@link DSLContext}
+     */
+    static void createMissingTables(DSLContext dsl) {
+        dsl.createTableIfNotExists(Tables.CALENDARS)
+                .columns(Tables.CALENDARS.GUILD_ID, Tables.CALENDARS.CALENDAR_ID)
+                .constraint(DSL.primaryKey(Tables.CALENDARS.GUILD_ID))
+                .execute();
+        dsl.createTableIfNotExists(Tables.PREFIXES)
+                .columns(Tables.PREFIXES.GUILD_ID, Tables.PREFIXES.PREFIX)
+                .constraint(DSL.primaryKey(Tables.PREFIXES.GUILD_ID))
+                .execute();
+    }
+}
@@ -0,0 +1,74 @@
+package org.acm.auth.resilience;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Bounds the number of calls in flight to a dependency, so that a slow dependency can't hold on to
+ * every command thread and starve the commands that don't use it.
+ * Calls beyond the bound are rejected straight away rather than queued.
+ */
+public class Bulkhead {
+    private volatile int maxConcurrent;
+    private final Permits permits;
+
+    /**
+     * Constructs a bulkhead.
+     * @param maxConcurrent the maximum amount of calls in flight as {@code int}
+     */
+    public Bulkhead(int maxConcurrent) {
+        this.maxConcurrent = maxConcurrent;
+        this.permits = new Permits(maxConcurrent);
+    }
+
+    /**
+     * Takes a slot for a call, if there is one free.
+     * @return true if the call may be made, false otherwise as {@code boolean}
+     */
+    public boolean tryAcquire() {
+        return permits.tryAcquire();
+    }
+
+    /**
+     * Frees the slot of a call that completed.
+     */
+    public void release() {
+        permits.release();
+    }
+
+    /**
+     * Changes the bound, e.g. once the limits of the dependency are known. Calls already in flight keep their slots,
+     * so after shrinking, new calls are rejected until enough of them complete.
+     * @param maxConcurrent the new maximum amount of calls in flight as {@code int}
+     */
+    public synchronized void resize(int maxConcurrent) {
+        int delta = maxConcurrent - this.maxConcurrent;
+        if (delta > 0) {
+            permits.release(delta);
+        } else if (delta < 0) {
+            permits.reducePermits(-delta);
+        }
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public int getInFlight() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    // a semaphore whose permits can be taken away without waiting for them
+    private static final class Permits extends Semaphore {
+        private static final long serialVersionUID = 1L;
+
+        private Permits(int permits) {
+            super(permits);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
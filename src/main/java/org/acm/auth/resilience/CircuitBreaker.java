@@ -0,0 +1,226 @@
+package org.acm.auth.resilience;
+
+import org.acm.auth.metrics.Metrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops calling a dependency that keeps failing or responding slowly, so that callers fail fast instead of
+ * waiting for it, and lets a few probe calls through after a while to find out whether it has recovered.
+ * <p>
+ * While closed, the outcomes of the last calls are kept in a sliding window, and the circuit opens once
+ * too many of them failed or were slow. While open, every call is rejected. Once the open duration has passed
+ * the circuit is half-open: a few probe calls are let through, and it closes again only if all of them succeed.
+ */
+public class CircuitBreaker {
+    private static final Logger LOGGER = LogManager.getLogger(CircuitBreaker.class);
+
+    /**
+     * The state of a circuit.
+     */
+    public enum State {
+        CLOSED,     // calls go through and their outcomes are recorded
+        OPEN,       // calls are rejected
+        HALF_OPEN   // a few probe calls go through, the rest are rejected
+    }
+
+    /**
+     * Returned by {@link #acquire()} when a call isn't permitted.
+     */
+    public static final long REJECTED = -1;
+
+    private final String name;
+    private final int minCalls;
+    private final int failureRateThreshold;
+    private final long slowCallNanos;
+    private final int slowRateThreshold;
+    private final long openNanos;
+    private final int probes;
+
+    // the outcomes of the last calls while closed, in a ring buffer
+    private final boolean[] failed;
+    private final boolean[] slow;
+    private int next;
+    private int recorded;
+    private int failures;
+    private int slowCalls;
+
+    private State state = State.CLOSED;
+    // bumped on every transition, so that calls started in a previous state don't count towards the current one
+    private long generation;
+    private long openedAt;
+    private int probesStarted;
+    private int probesSucceeded;
+
+    /**
+     * Constructs a closed circuit breaker.
+     * @param name the name of the dependency, used in the logs and metrics, as {@code String}
+     * @param windowSize the number of calls whose outcomes are kept as {@code int}
+     * @param minCalls the number of calls recorded before the circuit may open as {@code int}
+     * @param failureRateThreshold the percentage of failed calls that opens the circuit as {@code int}
+     * @param slowCallMillis the duration after which a call counts as slow as {@code long}
+     * @param slowRateThreshold the percentage of slow calls that opens the circuit as {@code int}
+     * @param openMillis how long the circuit stays open before probing as {@code long}
+     * @param probes the number of probe calls that must succeed to close the circuit as {@code int}
+     */
+    public CircuitBreaker(String name, int windowSize, int minCalls, int failureRateThreshold,
+                          long slowCallMillis, int slowRateThreshold, long openMillis, int probes) {
+        this.name = name;
+        this.minCalls = minCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+        this.slowRateThreshold = slowRateThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.probes = probes;
+        this.failed = new boolean[windowSize];
+        this.slow = new boolean[windowSize];
+    }
+
+    /**
+     * Asks for permission to make a call. Every permitted call must be followed by exactly one of
+     * {@link #onSuccess}, {@link #onFailure} or {@link #onIgnored} with the returned permit.
+     * @return the permit as {@code long}, or {@link #REJECTED} if the call must not be made
+     */
+    public synchronized long acquire() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos) {
+                return REJECTED;
+            }
+            transitionTo(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (probesStarted == probes) {
+                // wait for the probes already in flight
+                return REJECTED;
+            }
+            probesStarted++;
+        }
+        return generation;
+    }
+
+    /**
+     * Records a call that completed successfully.
+     * @param permit the permit returned by {@link #acquire()} as {@code long}
+     * @param durationNanos how long the call took as {@code long}
+     */
+    public synchronized void onSuccess(long permit, long durationNanos) {
+        record(permit, false, durationNanos >= slowCallNanos);
+    }
+
+    /**
+     * Records a call that failed because of the dependency.
+     * @param permit the permit returned by {@link #acquire()} as {@code long}
+     * @param durationNanos how long the call took as {@code long}
+     */
+    public synchronized void onFailure(long permit, long durationNanos) {
+        record(permit, true, durationNanos >= slowCallNanos);
+    }
+
+    /**
+     * Records a call whose outcome says nothing about the dependency's health, e.g. a cancelled one.
+     * @param permit the permit returned by {@link #acquire()} as {@code long}
+     */
+    public synchronized void onIgnored(long permit) {
+        if (permit == generation && state == State.HALF_OPEN) {
+            // give the probe slot to the next call
+            probesStarted--;
+        }
+    }
+
+    private void record(long permit, boolean failure, boolean slowCall) {
+        if (permit != generation) {
+            return;
+        }
+
+        if (state == State.HALF_OPEN) {
+            if (failure || slowCall) {
+                transitionTo(State.OPEN);
+            } else if (++probesSucceeded == probes) {
+                transitionTo(State.CLOSED);
+            }
+            return;
+        }
+
+        if (recorded == failed.length) {
+            // forget the oldest outcome
+            failures -= failed[next] ? 1 : 0;
+            slowCalls -= slow[next] ? 1 : 0;
+        } else {
+            recorded++;
+        }
+        failed[next] = failure;
+        slow[next] = slowCall;
+        failures += failure ? 1 : 0;
+        slowCalls += slowCall ? 1 : 0;
+        next = (next + 1) % failed.length;
+
+        if (recorded >= minCalls
+                && (failures * 100 >= failureRateThreshold * recorded || slowCalls * 100 >= slowRateThreshold * recorded)) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    private void transitionTo(State to) {
+        LOGGER.warn("Circuit {} changed from {} to {} (failed {}%, slow {}% of the last {} calls)",
+                name, state, to, getFailureRate(), getSlowRate(), recorded);
+        state = to;
+        generation++;
+        probesStarted = 0;
+        probesSucceeded = 0;
+        if (to == State.OPEN) {
+            openedAt = System.nanoTime();
+        } else if (to == State.CLOSED) {
+            // start over, the old outcomes are the ones that opened the circuit
+            next = 0;
+            recorded = 0;
+            failures = 0;
+            slowCalls = 0;
+        }
+        Metrics.counter(Metrics.CIRCUIT_TRANSITIONS, "dependency", name, "state", to.name().toLowerCase()).increment();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Returns the percentage of failed calls in the window.
+     * @return the percentage as {@code int}, 0 if no calls were recorded
+     */
+    public synchronized int getFailureRate() {
+        return recorded == 0 ? 0 : failures * 100 / recorded;
+    }
+
+    /**
+     * Returns the percentage of slow calls in the window.
+     * @return the percentage as {@code int}, 0 if no calls were recorded
+     */
+    public synchronized int getSlowRate() {
+        return recorded == 0 ? 0 : slowCalls * 100 / recorded;
+    }
+
+    /**
+     * Returns the number of calls in the window.
+     * @return the number of calls as {@code int}
+     */
+    public synchronized int getRecordedCalls() {
+        return recorded;
+    }
+
+    /**
+     * Returns how long until an open circuit lets probe calls through.
+     * @return the remaining time in milliseconds as {@code long}, 0 if the circuit isn't open
+     */
+    public synchronized long getRemainingOpenMillis() {
+        if (state != State.OPEN) {
+            return 0;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(openNanos - (System.nanoTime() - openedAt)));
+    }
+}
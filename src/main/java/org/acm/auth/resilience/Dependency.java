@@ -0,0 +1,220 @@
+package org.acm.auth.resilience;
+
+import com.google.api.client.http.HttpResponseException;
+import org.acm.auth.metrics.Counter;
+import org.acm.auth.metrics.Metrics;
+import org.acm.auth.services.Database;
+import org.acm.auth.utils.HttpException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * An upstream service the bot depends on, with its own circuit breaker and bulkhead.
+ * Every call to the service goes through {@link #execute} or {@link #executeAsync}, which reject the call
+ * with a {@link DependencyUnavailableException} instead of making it while the service is known to be failing,
+ * or while it already has as many calls in flight as it is allowed to.
+ */
+public class Dependency {
+    // 429s count as failures: backing off is exactly what a rate limited client should do
+    // (other 4xx mean that the request was wrong, e.g. an invalid calendar id, not that the service is unhealthy)
+    public static final Dependency GIPHY = new Dependency(
+            new CircuitBreaker(
+                    "giphy", // name
+                    20, // windowSize
+                    10, // minCalls
+                    50, // failureRateThreshold
+                    2_000, // slowCallMillis
+                    80, // slowRateThreshold
+                    30_000, // openMillis
+                    3), // probes
+            new Bulkhead(16), // as many as HttpUtil keeps connections to a host
+            e -> !(e instanceof HttpException && isClientError(((HttpException) e).getStatusCode())));
+
+    public static final Dependency GOOGLE_CALENDAR = new Dependency(
+            new CircuitBreaker(
+                    "google_calendar", // name
+                    20, // windowSize
+                    10, // minCalls
+                    50, // failureRateThreshold
+                    3_000, // slowCallMillis
+                    80, // slowRateThreshold
+                    30_000, // openMillis
+                    3), // probes
+            new Bulkhead(8),
+            e -> !(e instanceof HttpResponseException && isClientError(((HttpResponseException) e).getStatusCode())));
+
+    public static final Dependency DATABASE = new Dependency(
+            new CircuitBreaker(
+                    "database", // name
+                    20, // windowSize
+                    10, // minCalls
+                    50, // failureRateThreshold
+                    1_000, // slowCallMillis
+                    80, // slowRateThreshold
+                    10_000, // openMillis
+                    2), // probes
+            new Bulkhead(Database.capacity()), // resized by Database.configure, so db_pool_size is the one limit
+            e -> true);
+
+    private static final List<Dependency> ALL =
+            Collections.unmodifiableList(Arrays.asList(GIPHY, GOOGLE_CALENDAR, DATABASE));
+
+    /**
+     * A synchronous call to a dependency, which may fail with a checked exception.
+     */
+    public interface Call<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    private final CircuitBreaker breaker;
+    private final Bulkhead bulkhead;
+    private final Predicate<Throwable> isFailure;
+    private final Counter circuitRejections;
+    private final Counter bulkheadRejections;
+
+    /**
+     * Constructs a dependency.
+     * @param breaker the circuit breaker of the dependency as {@link CircuitBreaker}
+     * @param bulkhead the bulkhead of the dependency as {@link Bulkhead}
+     * @param isFailure tells whether an exception thrown by a call counts against the dependency's health
+     *                  as {@link Predicate}
+     */
+    public Dependency(CircuitBreaker breaker, Bulkhead bulkhead, Predicate<Throwable> isFailure) {
+        this.breaker = breaker;
+        this.bulkhead = bulkhead;
+        this.isFailure = isFailure;
+        this.circuitRejections = Metrics.counter(Metrics.DEPENDENCY_REJECTIONS,
+                "dependency", breaker.getName(), "reason", "circuit_open");
+        this.bulkheadRejections = Metrics.counter(Metrics.DEPENDENCY_REJECTIONS,
+                "dependency", breaker.getName(), "reason", "bulkhead_full");
+    }
+
+    /**
+     * Returns every dependency of the bot.
+     * @return the dependencies as {@code List<Dependency>}
+     */
+    public static List<Dependency> all() {
+        return ALL;
+    }
+
+    /**
+     * Makes a call on the calling thread, unless the dependency is unavailable.
+     * @param call the call as {@link Call}
+     * @return the value returned by the call
+     * @throws E if the call fails
+     * @throws DependencyUnavailableException if the call was rejected without being made
+     */
+    public <T, E extends Exception> T execute(Call<T, E> call) throws E {
+        long permit = acquire();
+        long start = System.nanoTime();
+        try {
+            T value = call.call();
+            breaker.onSuccess(permit, System.nanoTime() - start);
+            return value;
+        } catch (Throwable e) {
+            onError(permit, start, e);
+            throw e;
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    /**
+     * Makes an asynchronous call, unless the dependency is unavailable.
+     * The call counts against the bulkhead until the future it returned completes.
+     * @param call starts the call as {@link Supplier}
+     * @return the future returned by the call as {@link CompletableFuture}, or one that is already completed
+     * with a {@link DependencyUnavailableException} if the call was rejected
+     */
+    public <T> CompletableFuture<T> executeAsync(Supplier<CompletableFuture<T>> call) {
+        long permit;
+        try {
+            permit = acquire();
+        } catch (DependencyUnavailableException e) {
+            CompletableFuture<T> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(e);
+            return rejected;
+        }
+
+        long start = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            onError(permit, start, e);
+            bulkhead.release();
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+        // hand back the call's own future, so that cancelling it still cancels the call
+        future.whenComplete((value, e) -> {
+            if (e == null) {
+                breaker.onSuccess(permit, System.nanoTime() - start);
+            } else {
+                onError(permit, start, e instanceof CompletionException ? e.getCause() : e);
+            }
+            bulkhead.release();
+        });
+        return future;
+    }
+
+    private long acquire() {
+        if (!bulkhead.tryAcquire()) {
+            bulkheadRejections.increment();
+            throw new DependencyUnavailableException(breaker.getName(), DependencyUnavailableException.Reason.BULKHEAD_FULL);
+        }
+        long permit = breaker.acquire();
+        if (permit == CircuitBreaker.REJECTED) {
+            bulkhead.release();
+            circuitRejections.increment();
+            throw new DependencyUnavailableException(breaker.getName(), DependencyUnavailableException.Reason.CIRCUIT_OPEN);
+        }
+        return permit;
+    }
+
+    private void onError(long permit, long start, Throwable e) {
+        if (e instanceof CancellationException) {
+            // the caller gave up, which says nothing about the dependency
+            breaker.onIgnored(permit);
+        } else if (isFailure.test(e)) {
+            breaker.onFailure(permit, System.nanoTime() - start);
+        } else {
+            breaker.onSuccess(permit, System.nanoTime() - start);
+        }
+    }
+
+    private static boolean isClientError(int statusCode) {
+        return statusCode >= 400 && statusCode < 500 && statusCode != 429;
+    }
+
+    public String getName() {
+        return breaker.getName();
+    }
+
+    public CircuitBreaker getBreaker() {
+        return breaker;
+    }
+
+    public Bulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    /**
+     * Returns the number of calls rejected so far.
+     * @param reason why the calls were rejected as {@link DependencyUnavailableException.Reason}
+     * @return the number of calls as {@code long}
+     */
+    public long getRejections(DependencyUnavailableException.Reason reason) {
+        return reason == DependencyUnavailableException.Reason.CIRCUIT_OPEN
+                ? circuitRejections.get()
+                : bulkheadRejections.get();
+    }
+}
@@ -0,0 +1,39 @@
+package org.acm.auth.resilience;
+
+/**
+ * Thrown instead of calling a dependency that is known to be failing, or that already has too many calls in flight.
+ */
+public class DependencyUnavailableException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Why a call was rejected.
+     */
+    public enum Reason {
+        CIRCUIT_OPEN,   // the dependency's circuit is open (or half-open, with its probes in flight)
+        BULKHEAD_FULL   // the dependency already has as many calls in flight as it is allowed to
+    }
+
+    private final String dependency;
+    private final Reason reason;
+
+    /**
+     * Constructs an exception for a rejected call.
+     * @param dependency the name of the dependency as {@code String}
+     * @param reason why the call was rejected as {@link Reason}
+     */
+    public DependencyUnavailableException(String dependency, Reason reason) {
+        // thrown on every rejected call, so skip the stack trace
+        super(dependency + " is unavailable (" + reason + ")", null, false, false);
+        this.dependency = dependency;
+        this.reason = reason;
+    }
+
+    public String getDependency() {
+        return dependency;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+}
@@ -0,0 +1,224 @@
+package org.acm.auth.services;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import org.acm.auth.config.ConfigFile;
+import org.acm.auth.config.ConfigKey;
+import org.acm.auth.config.Env;
+import org.acm.auth.metrics.Counter;
+import org.acm.auth.metrics.LatencyHistogram;
+import org.acm.auth.metrics.Metrics;
+import org.acm.auth.resilience.Dependency;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jooq.DSLContext;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+
+import javax.sql.DataSource;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gives access to the bot's database through a single connection pool and a single jOOQ context on top of it.
+ * <p>
+ * The pool is created the first time the database is used (or warmed up), with the settings of the config file
+ * and the credentials of the {@code .env} file. Connections are validated before they're handed out,
+ * retired after {@link #MAX_LIFETIME} minutes, and keep their prepared statements cached on the server,
+ * so that the same few queries aren't parsed again on every command.
+ * <p>
+ * Queries that shouldn't block their caller run on {@link #executor()}, which has as many threads as the pool
+ * has connections, so {@code db_pool_size} is the one limit on how many queries run at once.
+ * {@link Dependency#DATABASE}'s bulkhead is sized to the threads plus their queue, so it only rejects
+ * the queries the executor would have rejected anyway.
+ */
+public final class Database {
+    private static final Logger LOGGER = LogManager.getLogger(Database.class);
+
+    private static final long MAX_LIFETIME = 30;            // minutes, well below MariaDB's wait_timeout
+    private static final long KEEPALIVE = 5;                // minutes between two pings of an idle connection
+    private static final long CONNECTION_TIMEOUT = 5_000;   // the longest a command waits for a connection
+    private static final int QUEUE_CAPACITY = 256;          // queries waiting for a thread before new ones are rejected
+
+    private static volatile String url = ConfigKey.DB_URL.getDefaultValue();
+    private static volatile int poolSize = Integer.parseInt(ConfigKey.DB_POOL_SIZE.getDefaultValue());
+
+    // our jOOQ context, which will be used for ALL queries
+    // (built on first use, so that connecting doesn't hold up the startup)
+    private static volatile DSLContext DSL_CONTEXT;
+    private static HikariDataSource DATA_SOURCE;
+    private static volatile ThreadPoolExecutor EXECUTOR;
+
+    private Database() {
+    }
+
+    /**
+     * Reads the pool's settings. Must be called before the database is first used for them to apply.
+     * @param config the config file as {@link ConfigFile}
+     */
+    public static void configure(ConfigFile config) {
+        url = config.getValue(ConfigKey.DB_URL);
+        poolSize = Integer.parseInt(config.getValue(ConfigKey.DB_POOL_SIZE));
+        Dependency.DATABASE.getBulkhead().resize(capacity());
+    }
+
+    /**
+     * Returns how many queries may be in flight at once, running on {@link #executor()} or waiting in its queue.
+     * @return the capacity as {@code int}
+     */
+    public static int capacity() {
+        return poolSize + QUEUE_CAPACITY;
+    }
+
+    /**
+     * Replaces the shared context with one on top of another data source, e.g. an in-memory database
+     * for offline harnesses.
+     * @param dataSource the data source as {@link DataSource}
+     * @param dialect the SQL dialect of the data source as {@link SQLDialect}
+     */
+    public static synchronized void useDataSource(DataSource dataSource, SQLDialect dialect) {
+        DSL_CONTEXT = DSL.using(dataSource, dialect);
+    }
+
+    /**
+     * Opens the pool's first connections ahead of the first query.
+     */
+    public static void warmUp() {
+        dsl();
+    }
+
+    /**
+     * Returns the shared jOOQ context. Each query borrows a pooled connection and returns it once it's done,
+     * so the context can be used from any thread.
+     * @return the context as {@link DSLContext}
+     */
+    public static DSLContext dsl() {
+        DSLContext dsl = DSL_CONTEXT;
+        if (dsl == null) {
+            synchronized (Database.class) {
+                dsl = DSL_CONTEXT;
+                if (dsl == null) {
+                    DATA_SOURCE = createDataSource();
+                    dsl = DSL_CONTEXT = DSL.using(DATA_SOURCE, SQLDialect.MARIADB);
+                }
+            }
+        }
+        return dsl;
+    }
+
+    /**
+     * Returns the executor that runs the queries of the repositories, one connection per thread.
+     * Queries submitted while every thread is busy wait in a bounded queue, and are rejected once it's full.
+     * @return the executor as {@link Executor}
+     */
+    public static Executor executor() {
+        ThreadPoolExecutor executor = EXECUTOR;
+        if (executor == null) {
+            synchronized (Database.class) {
+                executor = EXECUTOR;
+                if (executor == null) {
+                    AtomicInteger count = new AtomicInteger();
+                    executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                            new ArrayBlockingQueue<>(QUEUE_CAPACITY), runnable -> {
+                                Thread thread = new Thread(runnable, "database-" + count.incrementAndGet());
+                                thread.setDaemon(true);
+                                return thread;
+                            });
+                    // an idle bot doesn't need to keep the threads around
+                    executor.allowCoreThreadTimeOut(true);
+                    EXECUTOR = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Closes every pooled connection, e.g. once the last shard has shut down.
+     */
+    public static synchronized void close() {
+        if (EXECUTOR != null) {
+            EXECUTOR.shutdown();
+        }
+        if (DATA_SOURCE != null) {
+            DATA_SOURCE.close();
+        }
+    }
+
+    private static HikariDataSource createDataSource() {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("database");
+        config.setJdbcUrl(url);
+        config.setUsername(Env.get("MYSQL_USER"));
+        config.setPassword(Env.get("MYSQL_PASSWORD"));
+
+        // never more connections than this, however many commands run at once
+        config.setMaximumPoolSize(poolSize);
+        config.setMinimumIdle(Math.min(2, poolSize));
+        config.setConnectionTimeout(CONNECTION_TIMEOUT);
+        // connections are validated (Connection.isValid) before being handed out, pinged while idle
+        // and replaced before the server or a firewall drops them
+        config.setValidationTimeout(2_000);
+        config.setKeepaliveTime(TimeUnit.MINUTES.toMillis(KEEPALIVE));
+        config.setMaxLifetime(TimeUnit.MINUTES.toMillis(MAX_LIFETIME));
+        // start even if the database is down, the commands that need it will report it
+        config.setInitializationFailTimeout(-1);
+
+        // cache the prepared statements of each connection, prepared once on the server
+        config.addDataSourceProperty("useServerPrepStmts", "true");
+        config.addDataSourceProperty("cachePrepStmts", "true");
+        config.addDataSourceProperty("prepStmtCacheSize", "250");
+        config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+
+        config.setMetricsTrackerFactory(new PoolMetrics());
+
+        LOGGER.info("Connecting to {} with up to {} connections", url, poolSize);
+        return new HikariDataSource(config);
+    }
+
+    /**
+     * Exports the pool's statistics through {@link Metrics}.
+     */
+    private static final class PoolMetrics implements MetricsTrackerFactory {
+        @Override
+        public IMetricsTracker create(String poolName, PoolStats stats) {
+            Metrics.gauge(Metrics.DB_POOL_CONNECTIONS, stats::getActiveConnections, "state", "active");
+            Metrics.gauge(Metrics.DB_POOL_CONNECTIONS, stats::getIdleConnections, "state", "idle");
+            Metrics.gauge(Metrics.DB_POOL_CONNECTIONS, stats::getTotalConnections, "state", "total");
+            Metrics.gauge(Metrics.DB_POOL_CONNECTIONS, stats::getMaxConnections, "state", "max");
+            Metrics.gauge(Metrics.DB_POOL_PENDING, stats::getPendingThreads);
+
+            LatencyHistogram acquire = Metrics.histogram(Metrics.DB_CONNECTION_ACQUIRE);
+            LatencyHistogram usage = Metrics.histogram(Metrics.DB_CONNECTION_USAGE);
+            LatencyHistogram create = Metrics.histogram(Metrics.DB_CONNECTION_CREATE);
+            Counter timeouts = Metrics.counter(Metrics.DB_CONNECTION_TIMEOUTS);
+            return new IMetricsTracker() {
+                @Override
+                public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                    acquire.record(elapsedAcquiredNanos);
+                }
+
+                @Override
+                public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+                    usage.record(TimeUnit.MILLISECONDS.toNanos(elapsedBorrowedMillis));
+                }
+
+                @Override
+                public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+                    create.record(TimeUnit.MILLISECONDS.toNanos(connectionCreatedMillis));
+                }
+
+                @Override
+                public void recordConnectionTimeout() {
+                    timeouts.increment();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package org.acm.auth.services;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import okhttp3.HttpUrl;
+import org.acm.auth.metrics.Counter;
+import org.acm.auth.metrics.Metrics;
+import org.acm.auth.resilience.Dependency;
+import org.acm.auth.utils.HttpException;
+import org.acm.auth.utils.HttpUtil;
+import org.acm.auth.utils.LruCache;
+import org.acm.auth.utils.SingleFlight;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Looks up GIFs through the GIPHY API.
+ * <p>
+ * Search results are cached by their normalized query, so that popular searches don't cost a request each,
+ * and identical searches that arrive while the first one is still in flight share its request.
+ * Random GIFs are prefetched into a small buffer in the background, so that they're answered from memory;
+ * the buffer only starts filling after the first random GIF was asked for, so an idle bot uses no quota.
+ * Requests go through {@link Dependency#GIPHY}, so they fail fast while GIPHY is down or rate limiting us.
+ */
+public class Giphy {
+    private static final Logger LOGGER = LogManager.getLogger(Giphy.class);
+
+    /**
+     * The embed URL returned for searches without any result.
+     */
+    public static final String NO_RESULTS = "";
+
+    private static final int SEARCH_CACHE_SIZE = 1024;     // distinct queries kept in memory
+    private static final long SEARCH_CACHE_TTL = 60;        // minutes a search result is reused for
+    private static final int RANDOM_BUFFER_SIZE = 16;       // random GIFs kept ready
+    private static final long REFILL_INTERVAL = 30;         // seconds between two checks of the random buffer
+    private static final long REQUEST_TIMEOUT = 8_000;      // the deadline of each request, shorter than the command's timeout
+
+    private static final Counter SEARCH_HITS = Metrics.counter(Metrics.CACHE_LOOKUPS, "cache", "giphy_search", "result", "hit");
+    private static final Counter SEARCH_MISSES = Metrics.counter(Metrics.CACHE_LOOKUPS, "cache", "giphy_search", "result", "miss");
+    private static final Counter RANDOM_HITS = Metrics.counter(Metrics.CACHE_LOOKUPS, "cache", "giphy_random", "result", "hit");
+    private static final Counter RANDOM_MISSES = Metrics.counter(Metrics.CACHE_LOOKUPS, "cache", "giphy_random", "result", "miss");
+
+    private volatile String key; // the key used to query the GIPHY API
+    private final LruCache<String, String> searches;
+    private final SingleFlight<String, String> searchFlights;
+    // the prefetched random GIFs, in a fixed-size ring buffer (which is what an ArrayBlockingQueue is)
+    private final BlockingQueue<String> randoms;
+    private final ScheduledExecutorService prefetcher;
+    private final AtomicBoolean prefetching;
+
+    /**
+     * Constructs a GIPHY client.
+     * @param key the GIPHY API key as {@code String}
+     */
+    public Giphy(String key) {
+        this.key = key;
+        this.searches = new LruCache<>(SEARCH_CACHE_SIZE, SEARCH_CACHE_TTL, TimeUnit.MINUTES);
+        this.searchFlights = new SingleFlight<>("giphy_search");
+        this.randoms = new ArrayBlockingQueue<>(RANDOM_BUFFER_SIZE);
+        this.prefetcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "giphy-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.prefetching = new AtomicBoolean();
+    }
+
+    /**
+     * Changes the GIPHY API key, e.g. after the config file was reloaded.
+     * @param key the new key as {@code String}
+     */
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    /**
+     * Returns the embed URL of the first GIF matching a query.
+     * @param query the search terms as {@code String}
+     * @return the embed URL as {@link CompletableFuture}, completed with {@link #NO_RESULTS} if nothing matched
+     */
+    public CompletableFuture<String> search(String query) {
+        String normalized = normalize(query);
+        String cached = searches.get(normalized);
+        if (cached != null) {
+            SEARCH_HITS.increment();
+            return CompletableFuture.completedFuture(cached);
+        }
+        SEARCH_MISSES.increment();
+
+        // identical searches made while the first one is still in flight share its request
+        HttpUrl url = buildUrl(normalized);
+        return searchFlights.execute(url.toString(), () -> {
+            CompletableFuture<String> request = Dependency.GIPHY.executeAsync(
+                    () -> HttpUtil.getJsonAsync(url, REQUEST_TIMEOUT, Giphy::readEmbedUrl));
+            return HttpUtil.linkCancellation(request.thenApply(embedUrl -> {
+                searches.put(normalized, embedUrl);
+                return embedUrl;
+            }), request);
+        });
+    }
+
+    /**
+     * Returns the embed URL of a random GIF, from the prefetched ones if there are any left.
+     * @return the embed URL as {@link CompletableFuture}
+     */
+    public CompletableFuture<String> random() {
+        if (prefetching.compareAndSet(false, true)) {
+            // someone wants random GIFs, so start keeping some ready
+            prefetcher.scheduleWithFixedDelay(this::refill, 0, REFILL_INTERVAL, TimeUnit.SECONDS);
+        }
+
+        String prefetched = randoms.poll();
+        if (prefetched != null) {
+            RANDOM_HITS.increment();
+            if (randoms.size() < RANDOM_BUFFER_SIZE / 2) {
+                // don't wait for the next scheduled refill if the buffer is running low
+                prefetcher.execute(this::refill);
+            }
+            return CompletableFuture.completedFuture(prefetched);
+        }
+        RANDOM_MISSES.increment();
+        return fetchRandom();
+    }
+
+    private CompletableFuture<String> fetchRandom() {
+        // never collapsed: users asking for random GIFs at the same time should still get different ones
+        HttpUrl url = buildUrl(null);
+        return Dependency.GIPHY.executeAsync(() -> HttpUtil.getJsonAsync(url, REQUEST_TIMEOUT, Giphy::readEmbedUrl));
+    }
+
+    /**
+     * Tops up the random GIF buffer, one request at a time. Runs on the prefetch thread only.
+     */
+    private void refill() {
+        while (randoms.remainingCapacity() > 0) {
+            try {
+                randoms.offer(fetchRandom().join());
+            } catch (CompletionException e) {
+                // most likely the daily quota ran out, try again on the next scheduled refill
+                LOGGER.warn("Could not prefetch a random GIF: {}", e.getCause().getMessage());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Extracts the embed URL of the first GIF out of a GIPHY response, as it streams in.
+     * Everything but {@code data[0].embed_url} (or {@code data.embed_url}) and {@code meta} is skipped
+     * without being materialized, and the rest of the response is ignored once both have been read.
+     * @param parser the parser positioned before the response as {@link JsonParser}
+     * @return the embed URL as {@code String}, or {@link #NO_RESULTS} if the response had no GIF
+     * @throws HttpException if GIPHY reported an error in the response's meta object
+     * @throws IOException if the response is not shaped like a GIPHY response, or couldn't be read
+     */
+    public static String readEmbedUrl(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Expected a JSON object");
+        }
+
+        String embedUrl = null;
+        int statusCode = -1;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (field.equals("data")) {
+                if (value == JsonToken.START_ARRAY) {
+                    // when searching based on a keyword, the API returns an array of responses
+                    // if the array is empty, it means that the query had no results,
+                    // otherwise get the first result and retrieve its embed URL
+                    if (parser.nextToken() == JsonToken.START_OBJECT) {
+                        embedUrl = readResult(parser);
+                        // skip the other results, we don't need them
+                        while (parser.nextToken() != JsonToken.END_ARRAY) {
+                            parser.skipChildren();
+                        }
+                    } else {
+                        embedUrl = NO_RESULTS;
+                    }
+                } else if (value == JsonToken.START_OBJECT) {
+                    // when polling for a random GIF, then we get a single result
+                    // which we can retrieve the embed URL from straight away
+                    embedUrl = readResult(parser);
+                } else {
+                    // if the data object is neither an array nor an object,
+                    // then something must've gone wrong since it's an unexpected type.
+                    throw new JsonParseException(parser, "Expected JSONArray/JSONObject, found: " + value);
+                }
+            } else if (field.equals("meta") && value == JsonToken.START_OBJECT) {
+                statusCode = readStatus(parser);
+            } else {
+                // e.g. pagination, which we don't need
+                parser.skipChildren();
+            }
+
+            if (embedUrl != null && statusCode != -1) {
+                // we have everything we need, don't bother with the rest of the response
+                return embedUrl;
+            }
+        }
+
+        // meta or data was missing
+        throw new JsonParseException(parser, "Expected both meta and data in the GIPHY response");
+    }
+
+    /**
+     * Reads the embed URL of a single result, leaving the parser at the end of the result.
+     */
+    private static String readResult(JsonParser parser) throws IOException {
+        String embedUrl = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (field.equals("embed_url")) {
+                embedUrl = parser.getText();
+            } else {
+                // most of a result is its dozens of image renditions, which we skip over
+                parser.skipChildren();
+            }
+        }
+        if (embedUrl == null) {
+            throw new JsonParseException(parser, "Expected an embed_url in the GIPHY result");
+        }
+        return embedUrl;
+    }
+
+    /**
+     * Reads the status of the meta object, leaving the parser at the end of the object.
+     * @throws HttpException if the status isn't 200, e.g. 429 when we got rate limited
+     */
+    private static int readStatus(JsonParser parser) throws IOException {
+        int statusCode = -1;
+        String msg = "";
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (field.equals("status")) {
+                statusCode = parser.getIntValue();
+            } else if (field.equals("msg")) {
+                msg = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (statusCode != 200) {
+            throw new HttpException(statusCode, msg);
+        }
+        return statusCode;
+    }
+
+    /**
+     * Normalizes a query, so that searches that only differ in case or spacing share a cache entry.
+     * @param query the search terms as {@code String}
+     * @return the normalized query as {@code String}
+     */
+    static String normalize(String query) {
+        return query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private HttpUrl buildUrl(String query) {
+        // build a new HttpUrl according to the following resource:
+        // https://square.github.io/okhttp/4.x/okhttp/okhttp3/-http-url/
+        HttpUrl.Builder builder = new HttpUrl.Builder()
+                .scheme("https")
+                .host("api.giphy.com")
+                .addPathSegment("v1")
+                .addPathSegment("gifs")
+                .addPathSegment(
+                        query == null       // if the user supplied no arguments
+                                ? "random"  // then search for a random GIF
+                                : "search"  // otherwise perform a query search
+                )
+                .addQueryParameter("api_key", key);
+
+        if (query != null) {
+            builder // if we have a query string
+                    // pass it to the URL's query parameters
+                    .addQueryParameter("q", query)
+                    // and limit the results to 1 (we don't need more)
+                    .addQueryParameter("limit", "1");
+        }
+
+        return builder.build();
+    }
+}
@@ -1,44 +1,114 @@
 package org.acm.auth.services;
 
+import com.google.api.client.googleapis.batch.BatchRequest;
 import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpRequest;
 import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpStatusCodes;
 import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.util.DateTime;
 import com.google.api.services.calendar.Calendar;
 import com.google.api.services.calendar.CalendarScopes;
 import com.google.auth.http.HttpCredentialsAdapter;
+import com.google.auth.oauth2.AccessToken;
 import com.google.auth.oauth2.GoogleCredentials;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import org.acm.auth.metrics.Counter;
+import org.acm.auth.metrics.LatencyHistogram;
+import org.acm.auth.metrics.Metrics;
+import org.acm.auth.resilience.Dependency;
+import org.acm.auth.resilience.DependencyUnavailableException;
+import org.acm.auth.utils.LruCache;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.security.GeneralSecurityException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Gives access to the Google Calendar API through a single client.
+ * <p>
+ * Calendar metadata is cached: a calendar fetched less than {@link #FRESHNESS} minutes ago is answered from memory,
+ * and an older one is revalidated with its ETag, so that an unchanged calendar costs an empty 304 response
+ * instead of a full fetch. The service account's access token is refreshed in the background
+ * {@link #REFRESH_MARGIN} minutes before it expires, so that no request waits for a token refresh.
+ */
 public class GoogleCalendar {
-    private static NetHttpTransport HTTP_TRANSPORT = null;
     private static final JsonFactory JSON_FACTORY = GsonFactory.getDefaultInstance();
-    private static HttpRequestInitializer requestInitializer = null;
     private static final Logger LOGGER = LogManager.getLogger(GoogleCalendar.class);
 
-    static {
-        try {
-            HTTP_TRANSPORT = GoogleNetHttpTransport.newTrustedTransport();
-        } catch(GeneralSecurityException | IOException exception) {
-            LOGGER.error(exception.getMessage());
-        }
+    private static final long FRESHNESS = 5;            // minutes a calendar is served without revalidating it
+    private static final int METADATA_CACHE_SIZE = 1024; // calendars kept in memory
+    private static final long METADATA_CACHE_TTL = 24;  // hours a calendar is kept for, revalidated or not
+    private static final long REFRESH_MARGIN = 10;      // minutes before expiry the token is refreshed
+    private static final long REFRESH_CHECK = 1;        // minutes between two checks of the token's expiry
+    private static final int EVENTS_PAGE_SIZE = 250;    // events per page of a sync
+
+    private static final Counter FRESH_HITS = Metrics.counter(Metrics.CACHE_LOOKUPS, "cache", "google_calendar", "result", "hit");
+    private static final Counter REVALIDATED = Metrics.counter(Metrics.CACHE_LOOKUPS, "cache", "google_calendar", "result", "revalidated");
+    private static final Counter MISSES = Metrics.counter(Metrics.CACHE_LOOKUPS, "cache", "google_calendar", "result", "miss");
+    private static final LatencyHistogram CALLS = upstream("google_calendar", "ok");
+    private static final LatencyHistogram FAILED_CALLS = upstream("google_calendar", "error");
+    private static final LatencyHistogram BATCHES = upstream("google_calendar_batch", "ok");
+    private static final LatencyHistogram FAILED_BATCHES = upstream("google_calendar_batch", "error");
 
-        GoogleCredentials credentials = null;
-        try {
-            credentials = getCredentials();
-        }catch (IOException exception) {
-            LOGGER.error(exception.getMessage());
+    // calendar id -> the calendar and when it was last known to be up to date
+    private static final LruCache<String, Cached> METADATA =
+            new LruCache<>(METADATA_CACHE_SIZE, METADATA_CACHE_TTL, TimeUnit.HOURS);
+
+    private static LatencyHistogram upstream(String upstream, String outcome) {
+        return Metrics.histogram(Metrics.UPSTREAM_LATENCY, "upstream", upstream, "outcome", outcome);
+    }
+
+    /**
+     * Holds the transport, the credentials and the client, which are only initialized the first time they're used
+     * (or warmed up), so that loading this class doesn't delay the startup.
+     */
+    private static final class Holder {
+        private static NetHttpTransport HTTP_TRANSPORT = null;
+        private static HttpRequestInitializer requestInitializer = null;
+        private static Calendar CALENDAR = null;
+
+        static {
+            try {
+                HTTP_TRANSPORT = GoogleNetHttpTransport.newTrustedTransport();
+            } catch(GeneralSecurityException | IOException exception) {
+                LOGGER.error(exception.getMessage());
+            }
+
+            GoogleCredentials credentials = null;
+            try {
+                credentials = getCredentials();
+            }catch (IOException exception) {
+                LOGGER.error(exception.getMessage());
+            }
+
+            if(credentials!=null) {
+                requestInitializer = new HttpCredentialsAdapter(credentials);
+                keepTokenFresh(credentials);
+            }
+
+            if(HTTP_TRANSPORT!=null && requestInitializer!=null) {
+                CALENDAR = new Calendar.Builder(HTTP_TRANSPORT, JSON_FACTORY, requestInitializer)
+                        .setApplicationName("ACM Auth Bot")
+                        .build();
+            }
         }
+    }
 
-        if(credentials!=null)
-            requestInitializer = new HttpCredentialsAdapter(credentials);
+    /**
+     * Initializes the transport and loads the credentials ahead of the first calendar command.
+     */
+    public static void warmUp() {
+        LOGGER.debug("Google Calendar transport initialized: {}", Holder.HTTP_TRANSPORT != null);
     }
 
     /**
@@ -53,13 +123,175 @@ public class GoogleCalendar {
     }
 
     /**
-     * Returns a Calendar service.
+     * Refreshes the access token in the background whenever it's about to expire,
+     * before the credentials adapter would have to refresh it in the middle of a request.
+     */
+    private static void keepTokenFresh(GoogleCredentials credentials) {
+        ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "google-token-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(() -> {
+            AccessToken token = credentials.getAccessToken();
+            if (token != null && token.getExpirationTime() != null && token.getExpirationTime().getTime()
+                    - System.currentTimeMillis() > TimeUnit.MINUTES.toMillis(REFRESH_MARGIN)) {
+                return;
+            }
+            try {
+                credentials.refresh();
+                LOGGER.debug("Refreshed the Google access token");
+            } catch (IOException exception) {
+                // the next request will refresh it by itself, and we'll try again on the next check
+                LOGGER.warn("Could not refresh the Google access token: {}", exception.getMessage());
+            }
+        }, 0, REFRESH_CHECK, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Returns the shared Calendar service.
      * @return the calendar service as {@link com.google.api.services.calendar.Calendar}
      */
     public static Calendar getCalendarService() {
-        return new Calendar.Builder(HTTP_TRANSPORT, JSON_FACTORY, requestInitializer)
-                .setApplicationName("ACM Auth Bot")
-                .build();
+        return Holder.CALENDAR;
+    }
+
+    /**
+     * Returns the metadata of a calendar, from memory if it was fetched recently, and otherwise from the API,
+     * revalidating the calendar we already have with its ETag.
+     * Requests go through {@link Dependency#GOOGLE_CALENDAR}, so they fail fast while Google is down.
+     * @param calendarId the id of the calendar as {@code String}
+     * @return the calendar as {@link com.google.api.services.calendar.model.Calendar}
+     * @throws IOException if the calendar couldn't be fetched, e.g. because it doesn't exist or isn't shared with us
+     * @throws DependencyUnavailableException if Google has been failing and wasn't called
+     */
+    public static com.google.api.services.calendar.model.Calendar getCalendar(String calendarId) throws IOException {
+        Cached cached = METADATA.get(calendarId);
+        if (cached != null && System.nanoTime() - cached.validatedAt < TimeUnit.MINUTES.toNanos(FRESHNESS)) {
+            FRESH_HITS.increment();
+            return cached.calendar;
+        }
+
+        return Dependency.GOOGLE_CALENDAR.execute(() -> {
+            long start = System.nanoTime();
+            HttpRequest request = service().calendars().get(calendarId).buildHttpRequest();
+            if (cached != null && cached.calendar.getEtag() != null) {
+                request.getHeaders().setIfNoneMatch(cached.calendar.getEtag());
+            }
+            // a 304 isn't an error for us, so look at the status ourselves
+            request.setThrowExceptionOnExecuteError(false);
+
+            HttpResponse response;
+            try {
+                response = request.execute();
+            } catch (IOException exception) {
+                FAILED_CALLS.recordSince(start);
+                throw exception;
+            }
+            // a 304 is a success too, any other status outside 2xx is an error
+            boolean notModified = response.getStatusCode() == HttpStatusCodes.STATUS_CODE_NOT_MODIFIED;
+            (response.isSuccessStatusCode() || notModified ? CALLS : FAILED_CALLS).recordSince(start);
+
+            if (notModified && cached != null) {
+                // unchanged, keep serving what we have for a while longer
+                response.ignore();
+                REVALIDATED.increment();
+                METADATA.put(calendarId, new Cached(cached.calendar, System.nanoTime()));
+                return cached.calendar;
+            }
+            if (!response.isSuccessStatusCode()) {
+                // the same exception execute() would have thrown
+                throw GoogleJsonResponseException.from(JSON_FACTORY, response);
+            }
+
+            MISSES.increment();
+            com.google.api.services.calendar.model.Calendar calendar =
+                    response.parseAs(com.google.api.services.calendar.model.Calendar.class);
+            METADATA.put(calendarId, new Cached(calendar, System.nanoTime()));
+            return calendar;
+        });
+    }
+
+    /**
+     * Builds the request for a page of the events of a calendar, expanding recurring events into their instances.
+     * Without a sync token, the pages list every event that overlaps a window of time; with one, they only list
+     * what changed since the sync that returned it, including the events that were deleted (as cancelled).
+     * Google doesn't accept a window along with a sync token: an incremental sync keeps the window of the full sync
+     * its token comes from, but may also return changes outside of it, which the caller has to filter out.
+     * The request is meant to be {@link Calendar.Events.List#queue queued} in a {@link #newBatch() batch}.
+     * @param calendarId the id of the calendar as {@code String}
+     * @param syncToken the next sync token of the previous sync as {@code String}, or {@code null} for a full sync
+     * @param pageToken the next page token of the previous page as {@code String}, or {@code null} for the first page
+     * @param from the start of the window of a full sync, in epoch millis, as {@code long}
+     * @param to the end of the window of a full sync, in epoch millis, as {@code long}
+     * @return the request as {@link Calendar.Events.List}, whose last page has a next sync token
+     * @throws IOException if Google Calendar isn't configured
+     */
+    public static Calendar.Events.List listEventsRequest(String calendarId, String syncToken, String pageToken,
+                                                         long from, long to) throws IOException {
+        Calendar.Events.List request = service().events().list(calendarId)
+                .setSingleEvents(true)
+                .setMaxResults(EVENTS_PAGE_SIZE)
+                .setSyncToken(syncToken)
+                .setPageToken(pageToken);
+        if (syncToken == null) {
+            // the events that end after the start of the window and start before its end
+            request.setTimeMin(new DateTime(from)).setTimeMax(new DateTime(to));
+        }
+        return request;
+    }
+
+    /**
+     * Returns an empty batch, which sends the requests queued in it as a single HTTP request.
+     * @return the batch as {@link BatchRequest}
+     * @throws IOException if Google Calendar isn't configured
+     */
+    public static BatchRequest newBatch() throws IOException {
+        return service().batch();
+    }
+
+    /**
+     * Sends a batch, calling back each of its requests with its own response.
+     * The batch goes through {@link Dependency#GOOGLE_CALENDAR} as a single call,
+     * so it fails fast while Google is down, and only fails as a whole if Google couldn't be reached.
+     * @param batch the batch as {@link BatchRequest}
+     * @throws IOException if the batch couldn't be sent
+     * @throws DependencyUnavailableException if Google has been failing and wasn't called
+     */
+    public static void execute(BatchRequest batch) throws IOException {
+        Dependency.GOOGLE_CALENDAR.execute(() -> {
+            long start = System.nanoTime();
+            try {
+                batch.execute();
+                BATCHES.recordSince(start);
+                return null;
+            } catch (IOException exception) {
+                FAILED_BATCHES.recordSince(start);
+                throw exception;
+            }
+        });
+    }
+
+    private static Calendar service() throws IOException {
+        Calendar service = getCalendarService();
+        if (service == null) {
+            // the transport or the credentials failed to load, which was logged back then
+            throw new IOException("Google Calendar is not configured");
+        }
+        return service;
+    }
+
+    /**
+     * A calendar and when it was last fetched or revalidated.
+     */
+    private static final class Cached {
+        private final com.google.api.services.calendar.model.Calendar calendar;
+        private final long validatedAt;
+
+        private Cached(com.google.api.services.calendar.model.Calendar calendar, long validatedAt) {
+            this.calendar = calendar;
+            this.validatedAt = validatedAt;
+        }
     }
 
     /**
@@ -69,7 +301,7 @@ public class GoogleCalendar {
      * @return whether or not the utility objects used in API calls were properly initialized as {@code boolean}
      */
     public static boolean utilityObjectsInitialized(MessageReceivedEvent event, String[] args) {
-        if(HTTP_TRANSPORT==null) {
+        if(Holder.HTTP_TRANSPORT==null) {
             event.getChannel()
                     .sendMessage("There was an error while initializing my Net HTTP Transport. I can't execute" +
                             " the command. Please contact the developer team.")
@@ -77,7 +309,7 @@ public class GoogleCalendar {
             return false;
         }
 
-        if(requestInitializer==null) {
+        if(Holder.requestInitializer==null) {
             // credentials file was not found
             event.getChannel()
                     .sendMessage("There was an error while trying to initialize my Http Request Initializer. " +
@@ -0,0 +1,55 @@
+package org.acm.auth.utils;
+
+/**
+ * Represents a failed HTTP request made through {@link HttpUtil}.
+ */
+public class HttpException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Why a request failed.
+     */
+    public enum Reason {
+        TIMEOUT,    // the request didn't complete within its deadline
+        NETWORK,    // the server couldn't be reached or the connection broke
+        STATUS      // the server replied with a status other than 2xx
+    }
+
+    private final Reason reason;
+    private final int statusCode;
+
+    /**
+     * Constructs an exception for a request that got no response.
+     * @param reason why the request failed as {@link Reason}
+     * @param message the detail message as {@code String}
+     * @param cause the underlying exception as {@link Throwable}
+     */
+    public HttpException(Reason reason, String message, Throwable cause) {
+        super(message, cause);
+        this.reason = reason;
+        this.statusCode = -1;
+    }
+
+    /**
+     * Constructs an exception for a request that got an unsuccessful response.
+     * @param statusCode the status code of the response as {@code int}
+     * @param message the detail message as {@code String}
+     */
+    public HttpException(int statusCode, String message) {
+        super(message);
+        this.reason = Reason.STATUS;
+        this.statusCode = statusCode;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    /**
+     * Returns the status code of the response.
+     * @return the status code as {@code int}, or -1 if there was no response
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
@@ -1,41 +1,193 @@
 package org.acm.auth.utils;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import okhttp3.*;
+import org.acm.auth.metrics.LatencyHistogram;
+import org.acm.auth.metrics.Metrics;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class HttpUtil {
     private static final Logger LOGGER = LogManager.getLogger(HttpUtil.class);
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    // host -> the latency histograms of its calls, {ok, error}, looked up once per host instead of on every call
+    private static final Map<String, LatencyHistogram[]> LATENCY = new ConcurrentHashMap<>();
+    private static final int OK = 0;
+    private static final int ERROR = 1;
 
     // our instance of OkHttpClient, which will be used for ALL http requests
-    private static final OkHttpClient CLIENT = new OkHttpClient();
+    // (built on first use, so that it doesn't hold up the startup)
+    private static volatile OkHttpClient CLIENT;
+
+    // replace the shared client, e.g. with one whose interceptors answer from recorded payloads
+    // so that offline harnesses never reach the network
+    public static void useClient(OkHttpClient client) {
+        CLIENT = client;
+    }
+
+    // build the shared client ahead of the first request
+    public static void warmUp() {
+        client();
+    }
+
+    private static OkHttpClient client() {
+        OkHttpClient client = CLIENT;
+        if (client == null) {
+            synchronized (HttpUtil.class) {
+                client = CLIENT;
+                if (client == null) {
+                    client = CLIENT = newClientBuilder().build();
+                }
+            }
+        }
+        return client;
+    }
+
+    // a builder with the shared client's tuning, e.g. to add interceptors to it
+    public static OkHttpClient.Builder newClientBuilder() {
+        AtomicInteger count = new AtomicInteger();
+        ExecutorService callbacks = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "http-dispatcher-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Dispatcher dispatcher = new Dispatcher(callbacks);
+        dispatcher.setMaxRequests(64);
+        // OkHttp's default of 5 would queue up the gif command's invocations behind each other
+        dispatcher.setMaxRequestsPerHost(16);
+
+        return new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                // keep enough idle connections around for a burst of requests to the same host
+                .connectionPool(new ConnectionPool(16, 5, TimeUnit.MINUTES))
+                .connectTimeout(5, TimeUnit.SECONDS)
+                .readTimeout(10, TimeUnit.SECONDS);
+    }
 
-    // GET a resource from the specified HttpUrl instance
-    public static String get(HttpUrl httpUrl) {
-        // convert the HttpUrl to its string form
-        return get(httpUrl.url().toString());
+    // reads a value out of a response body
+    public interface BodyReader<T> {
+        T read(ResponseBody body) throws IOException;
     }
 
-    // GET a resource from the specified URL String
-    public static String get(String url) {
-        LOGGER.debug("GETing {}", url);
+    // reads a value out of a JSON response, pulling only as many tokens as it needs
+    public interface JsonReader<T> {
+        T read(JsonParser parser) throws IOException;
+    }
+
+    // GET a resource from the specified HttpUrl instance, without blocking the calling thread
+    public static CompletableFuture<String> getAsync(HttpUrl httpUrl, long timeoutMillis) {
+        return getAsync(httpUrl, timeoutMillis, ResponseBody::string);
+    }
+
+    // GET a JSON resource from the specified HttpUrl instance, without blocking the calling thread,
+    // and parse it straight from the response stream instead of buffering it and building a tree first
+    public static <T> CompletableFuture<T> getJsonAsync(HttpUrl httpUrl, long timeoutMillis, JsonReader<T> reader) {
+        return getAsync(httpUrl, timeoutMillis, body -> {
+            try (JsonParser parser = JSON_FACTORY.createParser(body.byteStream())) {
+                // closing the body early is fine: OkHttp discards what's left, to keep the connection reusable
+                return reader.read(parser);
+            }
+        });
+    }
+
+    // GET a resource from the specified HttpUrl instance, without blocking the calling thread,
+    // and read its body with the given reader
+    public static <T> CompletableFuture<T> getAsync(HttpUrl httpUrl, long timeoutMillis, BodyReader<T> reader) {
         // build a new request with the specified URL
         Request request = new Request.Builder()
-                .url(url)
+                .url(httpUrl)
                 .build();
+        LOGGER.debug("GETing {}", httpUrl);
 
-        // execute a new call with the OkHttpClient
-        try (Response response = CLIENT.newCall(request).execute()) {
-            ResponseBody body = response.body();            // get the response's body/payload.
-            return body == null                             // if it's null (server returned no response?),
-                    ? null                                  // then return null to the user as well (no data),
-                    : body.string();                        // otherwise convert it to a string and return.
-        } catch (IOException e) {                           // if something went wrong while contacting the server,
-            System.err.println("Error during GET " + url);  // log the URL which caused the GET request to fail,
-            System.err.println(e.getMessage());             // log the error message itself
-            return null;                                    // and return null to the user, since we fetched no data.
-        }
+        // the deadline covers the whole call: connecting, waiting for the response and reading its body
+        Call call = client().newCall(request);
+        call.timeout().timeout(timeoutMillis, TimeUnit.MILLISECONDS);
+
+        CompletableFuture<T> future = new CompletableFuture<>();
+        // cancelling the future (e.g. when the command gets aborted) cancels the call too
+        future.whenComplete((content, e) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+
+        long start = System.nanoTime();
+        String host = httpUrl.host();
+        call.enqueue(new Callback() {
+            @Override
+            public void onResponse(@NotNull Call call, @NotNull Response response) {
+                try (ResponseBody body = response.body()) {
+                    if (body == null || !response.isSuccessful()) {
+                        // keep the body, some APIs explain the error in it
+                        String content = body == null ? "" : body.string();
+                        latency(host, ERROR).recordSince(start);
+                        future.completeExceptionally(new HttpException(response.code(), content));
+                        return;
+                    }
+                    T value = reader.read(body);
+                    latency(host, OK).recordSince(start);
+                    future.complete(value);
+                } catch (JsonProcessingException | RuntimeException e) {
+                    // the body arrived, but isn't what the reader expected (or reports an error itself)
+                    latency(host, ERROR).recordSince(start);
+                    future.completeExceptionally(e);
+                } catch (IOException e) {
+                    // the connection broke while reading the body
+                    onFailure(call, e);
+                }
+            }
+
+            @Override
+            public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                latency(host, ERROR).recordSince(start);
+                if (call.isCanceled()) {
+                    // the future was cancelled, which is what cancelled the call
+                    return;
+                }
+                HttpException.Reason reason = e instanceof InterruptedIOException
+                        ? HttpException.Reason.TIMEOUT      // the deadline or a socket timeout expired
+                        : HttpException.Reason.NETWORK;
+                LOGGER.warn("GET {} failed ({}): {}", host, reason, e.getMessage());
+                future.completeExceptionally(new HttpException(reason, e.getMessage(), e));
+            }
+        });
+        return future;
+    }
+
+    private static LatencyHistogram latency(String host, int outcome) {
+        return LATENCY.computeIfAbsent(host, upstream -> new LatencyHistogram[] {
+                Metrics.histogram(Metrics.UPSTREAM_LATENCY, "upstream", upstream, "outcome", "ok"),
+                Metrics.histogram(Metrics.UPSTREAM_LATENCY, "upstream", upstream, "outcome", "error")})[outcome];
+    }
+
+    // GET a resource from the specified URL String, without blocking the calling thread
+    public static CompletableFuture<String> getAsync(String url, long timeoutMillis) {
+        return getAsync(HttpUrl.get(url), timeoutMillis);
+    }
+
+    // cancel a source future (e.g. a request) whenever a future derived from it gets cancelled,
+    // since cancellation doesn't travel upstream through thenApply and friends on its own
+    public static <T> CompletableFuture<T> linkCancellation(CompletableFuture<T> derived, Future<?> source) {
+        derived.whenComplete((result, e) -> {
+            if (derived.isCancelled()) {
+                source.cancel(true);
+            }
+        });
+        return derived;
     }
 }
@@ -0,0 +1,175 @@
+package org.acm.auth.utils;
+
+import java.util.Arrays;
+
+/**
+ * An immutable hash map keyed by primitive (non-zero) {@code long}s, such as Discord snowflake ids.
+ * <p>
+ * Lookups don't box the key and don't allocate, which makes this map suitable for per-message lookups.
+ * Every modification returns a new copy, so it's only meant for data that is read far more often than
+ * it is written; readers can then share a single instance without any locking.
+ * @param <V> the type of the mapped values
+ */
+public final class LongObjectMap<V> {
+    private static final LongObjectMap<?> EMPTY = new LongObjectMap<>(new long[2], new Object[2], 0);
+
+    private final long[] keys;      // open addressing table, 0 marks an empty slot
+    private final Object[] values;  // the value of each key, at the same index
+    private final int size;         // the amount of mappings
+
+    private LongObjectMap(long[] keys, Object[] values, int size) {
+        this.keys = keys;
+        this.values = values;
+        this.size = size;
+    }
+
+    /**
+     * Returns an empty map.
+     * @param <V> the type of the mapped values
+     * @return the empty map as {@code LongObjectMap<V>}
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> LongObjectMap<V> empty() {
+        return (LongObjectMap<V>) EMPTY;
+    }
+
+    /**
+     * Returns the value mapped to a key.
+     * @param key the key as {@code long}
+     * @return the mapped value, or {@code null} if the key isn't mapped
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int mask = keys.length - 1;
+        for (int i = indexOf(key, mask); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) {
+                return (V) values[i];
+            }
+            if (k == 0) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Returns the amount of mappings.
+     * @return the size of the map as {@code int}
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a copy of this map with an additional (or replaced) mapping.
+     * @param key the key as {@code long}, must not be 0
+     * @param value the value as {@code V}, must not be null
+     * @return the new map as {@code LongObjectMap<V>}
+     */
+    public LongObjectMap<V> with(long key, V value) {
+        if (key == 0 || value == null) {
+            throw new IllegalArgumentException("The key must not be 0 and the value must not be null");
+        }
+        boolean exists = get(key) != null;
+        LongObjectMap<V> copy = resized(exists ? size : size + 1, 0);
+        copy.put(key, value);
+        return copy;
+    }
+
+    /**
+     * Returns a copy of this map without the mapping of a key.
+     * @param key the key to remove as {@code long}
+     * @return the new map as {@code LongObjectMap<V>}, or this map if the key wasn't mapped
+     */
+    public LongObjectMap<V> without(long key) {
+        if (get(key) == null) {
+            return this;
+        }
+        return resized(size - 1, key);
+    }
+
+    /**
+     * Copies all the mappings except for the one of the skipped key into a table that fits the given size.
+     */
+    private LongObjectMap<V> resized(int newSize, long skip) {
+        int capacity = capacityFor(newSize);
+        LongObjectMap<V> copy = new LongObjectMap<>(new long[capacity], new Object[capacity], newSize);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0 && keys[i] != skip) {
+                copy.put(keys[i], values[i]);
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Stores a mapping into this (not yet published) copy.
+     */
+    private void put(long key, Object value) {
+        int mask = keys.length - 1;
+        int i = indexOf(key, mask);
+        while (keys[i] != 0 && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+    }
+
+    /**
+     * Collects mappings in bulk and then builds a map out of them with a single copy.
+     * @param <V> the type of the mapped values
+     */
+    public static final class Builder<V> {
+        private long[] keys = new long[16];
+        private Object[] values = new Object[16];
+        private int count;
+
+        /**
+         * Adds a mapping. If a key is added more than once, its last value wins.
+         * @param key the key as {@code long}, must not be 0
+         * @param value the value as {@code V}, must not be null
+         * @return this builder
+         */
+        public Builder<V> put(long key, V value) {
+            if (key == 0 || value == null) {
+                throw new IllegalArgumentException("The key must not be 0 and the value must not be null");
+            }
+            if (count == keys.length) {
+                keys = Arrays.copyOf(keys, count * 2);
+                values = Arrays.copyOf(values, count * 2);
+            }
+            keys[count] = key;
+            values[count] = value;
+            count++;
+            return this;
+        }
+
+        /**
+         * Builds the map.
+         * @return the map as {@code LongObjectMap<V>}
+         */
+        public LongObjectMap<V> build() {
+            int capacity = capacityFor(count);
+            LongObjectMap<V> map = new LongObjectMap<>(new long[capacity], new Object[capacity], 0);
+            int size = 0;
+            for (int i = 0; i < count; i++) {
+                if (map.get(keys[i]) == null) {
+                    size++;
+                }
+                map.put(keys[i], values[i]);
+            }
+            return new LongObjectMap<>(map.keys, map.values, size);
+        }
+    }
+
+    private static int capacityFor(int size) {
+        // keep the load factor at or below 0.5 so that probe sequences stay short
+        return Integer.highestOneBit(Math.max(2, size) * 2 - 1) << 1;
+    }
+
+    private static int indexOf(long key, int mask) {
+        // the low bits of a snowflake are process/increment counters, so mix all the bits in
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,96 @@
+package org.acm.auth.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded cache whose entries expire a fixed time after they were stored.
+ * When the cache is full, the least recently used entry is evicted to make room.
+ * <p>
+ * All operations are synchronized, which is fine for the small caches in front of remote services,
+ * where a lookup is always much cheaper than the call it saves.
+ */
+public class LruCache<K, V> {
+    private final long ttlNanos;
+    private final LinkedHashMap<K, Stored<V>> entries;
+
+    /**
+     * Constructs a cache.
+     * @param capacity the maximum amount of entries as {@code int}
+     * @param ttl how long an entry stays valid as {@code long}
+     * @param unit the unit of the ttl as {@link TimeUnit}
+     */
+    public LruCache(int capacity, long ttl, TimeUnit unit) {
+        this.ttlNanos = unit.toNanos(ttl);
+        // access order, so that the eldest entry is always the least recently used one
+        this.entries = new LinkedHashMap<K, Stored<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Stored<V>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the value of a key, if it's cached and hasn't expired yet.
+     * @param key the key as {@code K}
+     * @return the value as {@code V}, or {@code null} if there is none
+     */
+    public synchronized V get(K key) {
+        Stored<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.storedAt > ttlNanos) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * Stores the value of a key, replacing any previous one.
+     * @param key the key as {@code K}
+     * @param value the value as {@code V}
+     */
+    public synchronized void put(K key, V value) {
+        entries.put(key, new Stored<>(value, System.nanoTime()));
+    }
+
+    /**
+     * Stores the value of a key, unless it already has one that hasn't expired.
+     * @param key the key as {@code K}
+     * @param value the value as {@code V}
+     * @return true if the value was stored, false otherwise as {@code boolean}
+     */
+    public synchronized boolean putIfAbsent(K key, V value) {
+        if (get(key) != null) {
+            return false;
+        }
+        entries.put(key, new Stored<>(value, System.nanoTime()));
+        return true;
+    }
+
+    /**
+     * Removes the value of a key.
+     * @param key the key as {@code K}
+     */
+    public synchronized void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static final class Stored<V> {
+        private final V value;
+        private final long storedAt;
+
+        private Stored(V value, long storedAt) {
+            this.value = value;
+            this.storedAt = storedAt;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package org.acm.auth.utils;
+
+import org.acm.auth.metrics.Counter;
+import org.acm.auth.metrics.Metrics;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent identical calls into one: while a call for a key is in flight,
+ * every other caller with the same key waits for that call instead of making its own.
+ * <p>
+ * Each caller gets its own future, so cancelling it only stops that caller from waiting.
+ * The shared call itself is only cancelled once every one of its callers has cancelled.
+ * The result isn't kept after the call completes; put a cache in front of this for that.
+ */
+public class SingleFlight<K, V> {
+    private final Map<K, Flight<V>> inFlight = new ConcurrentHashMap<>();
+    private final Counter collapsed;
+
+    /**
+     * Constructs a single-flight group.
+     * @param name the name of the calls, used to label the collapsed calls metric, as {@code String}
+     */
+    public SingleFlight(String name) {
+        this.collapsed = Metrics.counter(Metrics.COLLAPSED_CALLS, "call", name);
+    }
+
+    /**
+     * Returns the result of the call for a key, making the call only if there isn't one in flight already.
+     * @param key the key that identifies identical calls as {@code K}
+     * @param call makes the call as {@link Supplier}; it may also compute the result on the calling thread
+     * @return the result of the call as {@link CompletableFuture}
+     */
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> call) {
+        while (true) {
+            Flight<V> flight = inFlight.get(key);
+            if (flight != null) {
+                if (flight.join()) {
+                    collapsed.increment();
+                    return flight.newWaiter();
+                }
+                // every caller of that flight has given up on it, so it's about to be cancelled
+                inFlight.remove(key, flight);
+                continue;
+            }
+
+            Flight<V> created = new Flight<>();
+            if (inFlight.putIfAbsent(key, created) != null) {
+                // another caller started the same call just now, join it instead
+                continue;
+            }
+            CompletableFuture<V> source;
+            try {
+                source = call.get();
+            } catch (RuntimeException e) {
+                source = new CompletableFuture<>();
+                source.completeExceptionally(e);
+            }
+            created.source = source;
+            source.whenComplete((value, e) -> {
+                // forget the flight first, so that callers arriving after it completed make a fresh call
+                inFlight.remove(key, created);
+                if (e != null) {
+                    created.result.completeExceptionally(e);
+                } else {
+                    created.result.complete(value);
+                }
+            });
+            return created.newWaiter();
+        }
+    }
+
+    /**
+     * A call in flight and the amount of callers still waiting for it.
+     */
+    private static final class Flight<V> {
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+        private final AtomicInteger waiters = new AtomicInteger(1); // the caller that started the flight
+        private volatile Future<?> source;
+
+        /**
+         * Registers another caller, unless every previous caller has already given up.
+         */
+        private boolean join() {
+            int current;
+            do {
+                current = waiters.get();
+                if (current == 0) {
+                    return false;
+                }
+            } while (!waiters.compareAndSet(current, current + 1));
+            return true;
+        }
+
+        private CompletableFuture<V> newWaiter() {
+            CompletableFuture<V> waiter = result.thenApply(value -> value);
+            waiter.whenComplete((value, e) -> {
+                if (waiter.isCancelled() && waiters.decrementAndGet() == 0) {
+                    source.cancel(true);
+                }
+            });
+            return waiter;
+        }
+    }
+}
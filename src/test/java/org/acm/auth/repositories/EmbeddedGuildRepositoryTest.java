@@ -0,0 +1,17 @@
+package org.acm.auth.repositories;
+
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Runs the repository contract against a fresh H2 file for each test.
+ */
+public class EmbeddedGuildRepositoryTest extends GuildRepositoryContractTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Override
+    protected GuildRepository createRepository() throws Exception {
+        return new EmbeddedGuildRepository(folder.newFolder().toPath().resolve("bot").toString());
+    }
+}
@@ -0,0 +1,163 @@
+package org.acm.auth.repositories;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * What every {@link GuildRepository} must do, whatever it stores the guild data in.
+ * Each backend runs these tests through a subclass that creates its repository.
+ * <p>
+ * The guild ids are far above any real guild's, so that the tests never clash with real rows,
+ * and every test writes its own guilds, so the tests don't depend on each other or on what the database
+ * already holds. Every row a test writes is deleted after it, so that a shared database (e.g. the dev one)
+ * isn't left with calendars the event sync would then try to read.
+ */
+public abstract class GuildRepositoryContractTest {
+    private static final long GUILD = Long.MAX_VALUE / 2;
+    private static final long MISSING_GUILD = GUILD - 1; // never written by any test
+
+    protected GuildRepository repository;
+    // the guilds the current test wrote a row for
+    private final Set<Long> calendarGuilds = new HashSet<>();
+    private final Set<Long> prefixGuilds = new HashSet<>();
+
+    /**
+     * Creates the repository under test.
+     * @return the repository as {@link GuildRepository}
+     * @throws Exception if the repository couldn't be created
+     */
+    protected abstract GuildRepository createRepository() throws Exception;
+
+    @Before
+    public void setUp() throws Exception {
+        repository = createRepository();
+    }
+
+    @After
+    public void deleteWrittenRows() {
+        for (long guildId : calendarGuilds) {
+            join(repository.deleteCalendarId(guildId));
+        }
+        for (long guildId : prefixGuilds) {
+            join(repository.deletePrefix(guildId));
+        }
+    }
+
+    @Test
+    public void savedCalendarIsFound() {
+        saveCalendar(GUILD, calendar(0));
+
+        assertEquals(calendar(0), join(repository.findCalendarId(GUILD)));
+    }
+
+    @Test
+    public void savingAgainOverwritesTheCalendar() {
+        saveCalendar(GUILD + 1, calendar(1));
+        saveCalendar(GUILD + 1, calendar(2));
+
+        assertEquals(calendar(2), join(repository.findCalendarId(GUILD + 1)));
+    }
+
+    @Test
+    public void deletedCalendarIsGone() {
+        saveCalendar(GUILD + 2, calendar(0));
+        join(repository.deleteCalendarId(GUILD + 2));
+
+        assertNull(join(repository.findCalendarId(GUILD + 2)));
+    }
+
+    @Test
+    public void missingGuildHasNoCalendar() {
+        assertNull(join(repository.findCalendarId(MISSING_GUILD)));
+        // deleting a calendar that was never set is not an error
+        join(repository.deleteCalendarId(MISSING_GUILD));
+    }
+
+    @Test
+    public void forEachCalendarStopsAtTheLimit() {
+        for (int i = 0; i < 3; i++) {
+            saveCalendar(GUILD + 10 + i, calendar(i));
+        }
+
+        List<Long> streamed = new ArrayList<>();
+        int count = join(repository.forEachCalendar(2, (guildId, calendarId) -> streamed.add(guildId)));
+
+        assertEquals(2, count);
+        assertEquals(2, streamed.size());
+    }
+
+    @Test
+    public void forEachCalendarStreamsEveryCalendar() {
+        for (int i = 0; i < 3; i++) {
+            saveCalendar(GUILD + 20 + i, calendar(i));
+        }
+
+        Map<Long, String> streamed = new HashMap<>();
+        int count = join(repository.forEachCalendar(Integer.MAX_VALUE, streamed::put));
+
+        assertEquals(streamed.size(), count);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(calendar(i), streamed.get(GUILD + 20 + i));
+        }
+    }
+
+    @Test
+    public void savedPrefixIsFoundUntilDeleted() {
+        savePrefix(GUILD + 30, "!");
+        assertEquals("!", join(repository.findPrefix(GUILD + 30)));
+
+        savePrefix(GUILD + 30, "?");
+        assertEquals("?", join(repository.findPrefix(GUILD + 30)));
+
+        join(repository.deletePrefix(GUILD + 30));
+        assertNull(join(repository.findPrefix(GUILD + 30)));
+    }
+
+    @Test
+    public void missingGuildHasNoPrefix() {
+        assertNull(join(repository.findPrefix(MISSING_GUILD)));
+        // deleting a prefix that was never set is not an error
+        join(repository.deletePrefix(MISSING_GUILD));
+    }
+
+    @Test
+    public void forEachPrefixStreamsEveryPrefix() {
+        savePrefix(GUILD + 40, "$");
+
+        Map<Long, String> streamed = new HashMap<>();
+        int count = join(repository.forEachPrefix(streamed::put));
+
+        assertEquals(streamed.size(), count);
+        assertEquals("$", streamed.get(GUILD + 40));
+    }
+
+    private void saveCalendar(long guildId, String calendarId) {
+        calendarGuilds.add(guildId);
+        join(repository.saveCalendarId(guildId, calendarId));
+    }
+
+    private void savePrefix(long guildId, String prefix) {
+        prefixGuilds.add(guildId);
+        join(repository.savePrefix(guildId, prefix));
+    }
+
+    private static String calendar(int i) {
+        return "contract" + i + "@group.calendar.google.com";
+    }
+
+    private static <T> T join(CompletionStage<T> stage) {
+        return stage.toCompletableFuture().join();
+    }
+}
@@ -0,0 +1,49 @@
+package org.acm.auth.repositories;
+
+import org.acm.auth.config.ConfigFile;
+import org.acm.auth.config.ConfigKey;
+import org.acm.auth.services.Database;
+import org.jooq.exception.DataAccessException;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Runs the repository contract against the MariaDB server of {@code docker-compose.yml}
+ * (started with {@code docker-compose up -d}), with the credentials of the {@code .env} file.
+ * Point it elsewhere with {@code ./gradlew test -PmariadbUrl=...}.
+ * <p>
+ * The tests are skipped, not failed, when the server can't be reached.
+ */
+public class MariaDbGuildRepositoryTest extends GuildRepositoryContractTest {
+    @BeforeClass
+    public static void connect() throws IOException {
+        String url = System.getProperty("mariadb.url", ConfigKey.DB_URL.getDefaultValue());
+        Path config = Files.createTempFile("config", ".json");
+        Files.write(config, ("{\"token\": \"test\", \"db_url\": \"" + url + "\"}").getBytes(StandardCharsets.UTF_8));
+        config.toFile().deleteOnExit();
+        Database.configure(new ConfigFile(config.toString()));
+
+        try {
+            Database.dsl().selectOne().fetch();
+        } catch (DataAccessException e) {
+            Database.close();
+            Assume.assumeNoException("No MariaDB server at " + url, e);
+        }
+    }
+
+    @AfterClass
+    public static void disconnect() {
+        Database.close();
+    }
+
+    @Override
+    protected GuildRepository createRepository() {
+        return new MariaDbGuildRepository();
+    }
+}